@@ -0,0 +1,86 @@
+package fa.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fa.dfa.DFA;
+import fa.dfa.DFATable;
+
+/**
+ * Benchmarks of DFA simulation, swap, minimization and construction over
+ * random DFAs. density is passed to Synthetic as the expected number of
+ * successors of a (state, symbol) pair. A DFA keeps at most one of them, so it
+ * is clamped to 1 and is then the chance that a pair has a transition, values
+ * below 1 give partial DFAs.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DFABench {
+
+    @Param({ "64", "4096" })
+    public int states;
+
+    @Param({ "2", "16" })
+    public int alphabet;
+
+    @Param({ "1.0", "0.5" })
+    public double density;
+
+    @Param({ "64", "4096" })
+    public int length;
+
+    private Synthetic synthetic;
+    private DFA dfa;
+    private String input;
+
+    @Setup
+    public void setup() {
+        synthetic = new Synthetic(states, alphabet, Math.min(density, 1), 0, 361);
+        dfa = synthetic.toDFA();
+        input = synthetic.walk(length, 17);
+        // the first accepts compiles the table, keep that out of the measurement
+        dfa.accepts(input);
+    }
+
+    @Benchmark
+    public boolean accepts() {
+        return dfa.accepts(input);
+    }
+
+    @Benchmark
+    public DFA swap() {
+        return dfa.swap(Synthetic.SYMBOLS.charAt(0), Synthetic.SYMBOLS.charAt(1));
+    }
+
+    @Benchmark
+    public DFATable swapView() {
+        return dfa.swapView(Synthetic.SYMBOLS.charAt(0), Synthetic.SYMBOLS.charAt(1));
+    }
+
+    @Benchmark
+    public DFA minimize() {
+        return dfa.minimize();
+    }
+
+    @Benchmark
+    public DFA construct() {
+        return synthetic.toDFA();
+    }
+}
@@ -0,0 +1,93 @@
+package fa.bench;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fa.nfa.NFA;
+import fa.nfa.NFAState;
+
+/**
+ * Benchmarks of NFA simulation, epsilon-closures and construction over random
+ * NFAs. density is the expected number of successors of a (state, symbol)
+ * pair and epsilon the chance that a state has an e transition.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NFABench {
+
+    @Param({ "64", "1024" })
+    public int states;
+
+    @Param({ "2", "8" })
+    public int alphabet;
+
+    @Param({ "1.0", "2.0" })
+    public double density;
+
+    @Param({ "0.0", "0.2" })
+    public double epsilon;
+
+    @Param({ "64", "1024" })
+    public int length;
+
+    private Synthetic synthetic;
+    private NFA nfa;
+    private String input;
+    private NFAState[] closed;
+    private int next;
+
+    @Setup
+    public void setup() {
+        synthetic = new Synthetic(states, alphabet, density, epsilon, 361);
+        nfa = synthetic.toNFA();
+        input = synthetic.walk(length, 17);
+        String[] names = synthetic.stateNames();
+        closed = new NFAState[names.length];
+        for (int i = 0; i < names.length; i++) {
+            closed[i] = nfa.getState(names[i]);
+        }
+        // build the engine and closures outside the measurement
+        nfa.accepts(input);
+    }
+
+    @Benchmark
+    public boolean accepts() {
+        return nfa.accepts(input);
+    }
+
+    @Benchmark
+    public int maxCopies() {
+        return nfa.maxCopies(input);
+    }
+
+    @Benchmark
+    public Set<NFAState> eClosure() {
+        // walk through all states so no single closure dominates
+        NFAState state = closed[next];
+        next = next + 1 == closed.length ? 0 : next + 1;
+        return nfa.eClosure(state);
+    }
+
+    @Benchmark
+    public NFA construct() {
+        return synthetic.toNFA();
+    }
+}
@@ -0,0 +1,170 @@
+package fa.bench;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import fa.dfa.DFA;
+import fa.nfa.NFA;
+
+/**
+ * Random automaton shape shared by the benchmarks. The same seed always gives
+ * the same automaton, so runs with equal parameters measure the same work.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+final class Synthetic {
+
+    /** Symbols used for the alphabet in order, e is never a symbol */
+    static final String SYMBOLS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    private final int stateCount;
+    private final int symbolCount;
+    // targets[state][symbol] are the successors, empty when there are none
+    private final int[][][] targets;
+    // epsilon successors of every state
+    private final int[][] epsilon;
+    private final boolean[] finals;
+
+    /**
+     * @param states   the number of states
+     * @param alphabet the number of symbols, at most SYMBOLS.length()
+     * @param density  expected number of successors of a (state, symbol) pair,
+     *                 values below 1 leave transitions out
+     * @param epsilon  chance that a state has an e transition
+     * @param seed     seed of the generator
+     */
+    Synthetic(int states, int alphabet, double density, double epsilon, long seed) {
+        if (alphabet > SYMBOLS.length()) {
+            throw new IllegalArgumentException("at most " + SYMBOLS.length() + " symbols");
+        }
+        Random random = new Random(seed);
+        this.stateCount = states;
+        this.symbolCount = alphabet;
+        this.targets = new int[states][alphabet][];
+        this.epsilon = new int[states][];
+        this.finals = new boolean[states];
+        for (int q = 0; q < states; q++) {
+            finals[q] = random.nextInt(4) == 0;
+            for (int c = 0; c < alphabet; c++) {
+                // floor(density) successors plus one more with the remaining chance
+                int count = (int) density + (random.nextDouble() < density - (int) density ? 1 : 0);
+                targets[q][c] = distinct(random, count, states);
+            }
+            this.epsilon[q] = distinct(random, random.nextDouble() < epsilon ? 1 : 0, states);
+        }
+    }
+
+    private static int[] distinct(Random random, int count, int bound) {
+        Set<Integer> picked = new HashSet<>();
+        while (picked.size() < Math.min(count, bound)) {
+            picked.add(random.nextInt(bound));
+        }
+        return picked.stream().mapToInt(Integer::intValue).sorted().toArray();
+    }
+
+    private static String name(int q) {
+        return "q" + q;
+    }
+
+    /**
+     * Builds a DFA keeping the first successor of every pair and no e transitions
+     *
+     * @return the DFA
+     */
+    DFA toDFA() {
+        DFA dfa = new DFA();
+        for (int c = 0; c < symbolCount; c++) {
+            dfa.addSigma(SYMBOLS.charAt(c));
+        }
+        for (int q = 0; q < stateCount; q++) {
+            dfa.addState(name(q));
+            if (finals[q]) {
+                dfa.setFinal(name(q));
+            }
+        }
+        dfa.setStart(name(0));
+        for (int q = 0; q < stateCount; q++) {
+            for (int c = 0; c < symbolCount; c++) {
+                if (targets[q][c].length > 0) {
+                    dfa.addTransition(name(q), name(targets[q][c][0]), SYMBOLS.charAt(c));
+                }
+            }
+        }
+        return dfa;
+    }
+
+    /**
+     * Builds an NFA with every successor and e transition
+     *
+     * @return the NFA
+     */
+    NFA toNFA() {
+        NFA nfa = new NFA();
+        for (int c = 0; c < symbolCount; c++) {
+            nfa.addSigma(SYMBOLS.charAt(c));
+        }
+        for (int q = 0; q < stateCount; q++) {
+            nfa.addState(name(q));
+            if (finals[q]) {
+                nfa.setFinal(name(q));
+            }
+        }
+        nfa.setStart(name(0));
+        for (int q = 0; q < stateCount; q++) {
+            for (int c = 0; c < symbolCount; c++) {
+                if (targets[q][c].length > 0) {
+                    nfa.addTransition(name(q), names(targets[q][c]), SYMBOLS.charAt(c));
+                }
+            }
+            if (epsilon[q].length > 0) {
+                nfa.addTransition(name(q), names(epsilon[q]), 'e');
+            }
+        }
+        return nfa;
+    }
+
+    private static Set<String> names(int[] states) {
+        Set<String> names = new HashSet<>();
+        for (int q : states) {
+            names.add(name(q));
+        }
+        return names;
+    }
+
+    /**
+     * Makes an input by walking the first successors from the start state, so
+     * the input is not rejected after a few symbols. A state without successors
+     * gets a random symbol and the walk stays where it is.
+     *
+     * @param length the input length
+     * @param seed   seed of the walk
+     * @return the input
+     */
+    String walk(int length, long seed) {
+        Random random = new Random(seed);
+        char[] input = new char[length];
+        int q = 0;
+        for (int i = 0; i < length; i++) {
+            int c = random.nextInt(symbolCount);
+            for (int tries = 0; tries < symbolCount && targets[q][c].length == 0; tries++) {
+                c = (c + 1) % symbolCount;
+            }
+            input[i] = SYMBOLS.charAt(c);
+            if (targets[q][c].length > 0) {
+                q = targets[q][c][0];
+            }
+        }
+        return new String(input);
+    }
+
+    /**
+     * @return the names of all states in order
+     */
+    String[] stateNames() {
+        String[] names = new String[stateCount];
+        Arrays.setAll(names, Synthetic::name);
+        return names;
+    }
+}
@@ -0,0 +1,196 @@
+package fa;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Partition of an alphabet into equivalence classes. Two symbols are in the
+ * same class when every state does the same thing on both, so a compiled
+ * engine only needs one column per class. Symbols are looked up through a
+ * table indexed by the char itself, sized to the largest symbol, so it holds
+ * at most 64K entries.
+ *
+ * Classes are numbered in the order their first symbol appears in the
+ * alphabet.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+public final class AlphabetClasses {
+
+    /** Class of a symbol outside the alphabet */
+    public static final int NONE = -1;
+
+    private final char[] symbols;
+    // classOf[c] is the class of symbol c, NONE if c is not in the alphabet
+    private final int[] classOf;
+    private final int classCount;
+    // representatives[k] is the first symbol of class k in alphabet order
+    private final char[] representatives;
+
+    private AlphabetClasses(char[] symbols, int[] classOf, int classCount, char[] representatives) {
+        this.symbols = symbols;
+        this.classOf = classOf;
+        this.classCount = classCount;
+        this.representatives = representatives;
+    }
+
+    /**
+     * Gives every symbol a class of its own, for tables whose columns are not
+     * merged
+     *
+     * @param symbols the alphabet
+     * @return the partition into singletons
+     */
+    public static AlphabetClasses singletons(char[] symbols) {
+        Refiner refiner = new Refiner(symbols);
+        for (int i = 0; i < symbols.length; i++) {
+            refiner.move(symbols[i], i);
+        }
+        return refiner.finish();
+    }
+
+    /**
+     * @param c a symbol
+     * @return the class of c, or NONE if c is not in the alphabet
+     */
+    public int classOf(char c) {
+        return c < classOf.length ? classOf[c] : NONE;
+    }
+
+    /**
+     * @return a copy of the lookup table, entry c is the class of symbol c or
+     *         NONE, symbols past its end are not in the alphabet
+     */
+    public int[] lookupTable() {
+        return classOf.clone();
+    }
+
+    /**
+     * @return the number of classes
+     */
+    public int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * @return the number of symbols in the alphabet
+     */
+    public int getSymbolCount() {
+        return symbols.length;
+    }
+
+    /**
+     * @param i an index into the alphabet
+     * @return the symbol at that index
+     */
+    public char symbolAt(int i) {
+        return symbols[i];
+    }
+
+    /**
+     * @param k a class
+     * @return the first symbol of class k in alphabet order
+     */
+    public char representative(int k) {
+        return representatives[k];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{ ");
+        for (int k = 0; k < classCount; k++) {
+            sb.append('[');
+            for (char c : symbols) {
+                if (classOf[c] == k) {
+                    sb.append(c);
+                }
+            }
+            sb.append("] ");
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Splits the alphabet one state at a time. For each state call move with an
+     * action id for every symbol that has a transition there, then nextState.
+     * Symbols that share a class and get equal actions stay together, all
+     * others are split apart, and a symbol with no transition at a state keeps
+     * its class. After the last state two symbols share a class exactly when
+     * every state gave them the same action. The cost is one map operation per
+     * transition.
+     */
+    public static final class Refiner {
+
+        private final char[] symbols;
+        private final int[] classOf;
+        // (class at the start of the state, action) to the class it splits into
+        private final Map<Long, Integer> split = new HashMap<>();
+        private int next = 1;
+
+        /**
+         * @param symbols the alphabet, every symbol starts in one class
+         */
+        public Refiner(char[] symbols) {
+            this.symbols = symbols.clone();
+            int maxSymbol = -1;
+            for (char c : symbols) {
+                maxSymbol = Math.max(maxSymbol, c);
+            }
+            this.classOf = new int[maxSymbol + 1];
+            Arrays.fill(classOf, NONE);
+            for (char c : symbols) {
+                classOf[c] = 0;
+            }
+        }
+
+        /**
+         * Records what the current state does on a symbol. Every symbol may be
+         * moved at most once per state.
+         *
+         * @param symbol a symbol of the alphabet
+         * @param action any id that is equal for equal behaviour at this state
+         */
+        public void move(char symbol, int action) {
+            if (symbol >= classOf.length || classOf[symbol] == NONE) {
+                throw new IllegalArgumentException("symbol " + symbol + " is not in the alphabet");
+            }
+            long key = ((long) classOf[symbol] << 32) | (action & 0xFFFFFFFFL);
+            Integer k = split.get(key);
+            if (k == null) {
+                k = next++;
+                split.put(key, k);
+            }
+            classOf[symbol] = k;
+        }
+
+        /**
+         * Ends the current state
+         */
+        public void nextState() {
+            split.clear();
+        }
+
+        /**
+         * @return the partition, classes numbered by their first symbol
+         */
+        public AlphabetClasses finish() {
+            // class ids grow with every split, renumber them densely
+            Map<Integer, Integer> dense = new HashMap<>();
+            char[] representatives = new char[symbols.length];
+            int[] lookup = new int[classOf.length];
+            Arrays.fill(lookup, NONE);
+            for (char c : symbols) {
+                Integer k = dense.get(classOf[c]);
+                if (k == null) {
+                    k = dense.size();
+                    dense.put(classOf[c], k);
+                    representatives[k] = c;
+                }
+                lookup[c] = k;
+            }
+            split.clear();
+            return new AlphabetClasses(symbols, lookup, dense.size(), Arrays.copyOf(representatives, dense.size()));
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package fa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the parts of an automaton in bulk before it is built with
+ * DFA.from or NFA.from. Every state name is interned once, states are ids in
+ * the order they were first seen and transitions are appended to growable
+ * primitive arrays, so adding a transition allocates nothing but the
+ * occasional array growth.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+public final class AutomatonBuilder {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private final BitSet finals = new BitSet();
+    private final BitSet hasSymbol = new BitSet();
+    private char[] symbols = new char[8];
+    private int symbolCount;
+    private int start = -1;
+
+    // transition i goes from edgeFrom[i] to edgeTo[i] on edgeSymbol[i]
+    private int[] edgeFrom = new int[64];
+    private char[] edgeSymbol = new char[64];
+    private int[] edgeTo = new int[64];
+    private int edgeCount;
+
+    /**
+     * Gets the id of a state, adding the state if it is new
+     *
+     * @param name the state name
+     * @return the id of the state
+     */
+    public int state(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+    /**
+     * Adds a symbol to the alphabet, symbols keep the order they are added in
+     *
+     * @param symbol the symbol
+     */
+    public void addSymbol(char symbol) {
+        if (!hasSymbol.get(symbol)) {
+            hasSymbol.set(symbol);
+            if (symbolCount == symbols.length) {
+                symbols = Arrays.copyOf(symbols, symbolCount * 2);
+            }
+            symbols[symbolCount++] = symbol;
+        }
+    }
+
+    /**
+     * @param symbol a symbol
+     * @return true if the symbol is in the alphabet
+     */
+    public boolean hasSymbol(char symbol) {
+        return hasSymbol.get(symbol);
+    }
+
+    /**
+     * @param id id of the new start state
+     */
+    public void setStart(int id) {
+        checkState(id);
+        start = id;
+    }
+
+    /**
+     * @param id id of a state to make accepting
+     */
+    public void setFinal(int id) {
+        checkState(id);
+        finals.set(id);
+    }
+
+    /**
+     * Appends a transition, repeated transitions are merged when the automaton is
+     * built
+     *
+     * @param from   id of the source state
+     * @param symbol the symbol, e is an epsilon transition for NFAs
+     * @param to     id of the target state
+     */
+    public void addTransition(int from, char symbol, int to) {
+        checkState(from);
+        checkState(to);
+        if (edgeCount == edgeFrom.length) {
+            int capacity = edgeCount * 2;
+            edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+            edgeSymbol = Arrays.copyOf(edgeSymbol, capacity);
+            edgeTo = Arrays.copyOf(edgeTo, capacity);
+        }
+        edgeFrom[edgeCount] = from;
+        edgeSymbol[edgeCount] = symbol;
+        edgeTo[edgeCount] = to;
+        edgeCount++;
+    }
+
+    private void checkState(int id) {
+        if (id < 0 || id >= names.size()) {
+            throw new IllegalArgumentException("no state with id " + id);
+        }
+    }
+
+    /**
+     * @return the number of states
+     */
+    public int getStateCount() {
+        return names.size();
+    }
+
+    /**
+     * @param id a state id
+     * @return the name of the state
+     */
+    public String getName(int id) {
+        return names.get(id);
+    }
+
+    /**
+     * @return the alphabet in the order it was added
+     */
+    public char[] getSymbols() {
+        return Arrays.copyOf(symbols, symbolCount);
+    }
+
+    /**
+     * @return id of the start state, -1 if none was set
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * @param id a state id
+     * @return true if the state is accepting
+     */
+    public boolean isFinal(int id) {
+        return finals.get(id);
+    }
+
+    /**
+     * @return the number of transitions added, repeats included
+     */
+    public int getTransitionCount() {
+        return edgeCount;
+    }
+
+    /**
+     * @param i a transition index
+     * @return id of the source state of transition i
+     */
+    public int getFrom(int i) {
+        return edgeFrom[i];
+    }
+
+    /**
+     * @param i a transition index
+     * @return the symbol of transition i
+     */
+    public char getSymbol(int i) {
+        return edgeSymbol[i];
+    }
+
+    /**
+     * @param i a transition index
+     * @return id of the target state of transition i
+     */
+    public int getTo(int i) {
+        return edgeTo[i];
+    }
+
+    /**
+     * Orders the transitions by source state, then symbol, then target, with a
+     * three pass counting sort, so the cost is linear in states, symbols and
+     * transitions
+     *
+     * @param columnOf the column of every symbol, symbols are sorted by column
+     * @param columns  the number of columns
+     * @return transition indexes in sorted order
+     */
+    public int[] sortedTransitions(int[] columnOf, int columns) {
+        int n = names.size();
+        int[] order = new int[edgeCount];
+        int[] tmp = new int[edgeCount];
+        for (int i = 0; i < edgeCount; i++) {
+            order[i] = i;
+        }
+        // least significant key first, every pass is stable
+        countingSort(order, tmp, edgeTo, null, n);
+        countingSort(tmp, order, null, columnOf, columns);
+        countingSort(order, tmp, edgeFrom, null, n);
+        return tmp;
+    }
+
+    /**
+     * Stable sort of src into dst by ids[i], or by columnOf[edgeSymbol[i]] when
+     * ids is null
+     */
+    private void countingSort(int[] src, int[] dst, int[] ids, int[] columnOf, int buckets) {
+        int[] start = new int[buckets + 1];
+        for (int i : src) {
+            start[(ids != null ? ids[i] : columnOf[edgeSymbol[i]]) + 1]++;
+        }
+        for (int b = 1; b <= buckets; b++) {
+            start[b] += start[b - 1];
+        }
+        for (int i : src) {
+            dst[start[ids != null ? ids[i] : columnOf[edgeSymbol[i]]]++] = i;
+        }
+    }
+}
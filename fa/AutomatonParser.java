@@ -0,0 +1,284 @@
+package fa;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming parsers feeding an AutomatonBuilder, one line at a time. Two
+ * layouts are read.
+ *
+ * The edge list layout has one item per line, fields separated by whitespace:
+ *
+ * <pre>
+ * # comment
+ * states: a b c    optional, fixes the state order
+ * sigma: 0 1       optional, without it symbols are added as they appear
+ * start: a
+ * final: b c
+ * a 0 b            transition from a to b on 0, e is epsilon for NFAs
+ * a 1 a c          several targets at once
+ * </pre>
+ *
+ * The table layout is what DFA.toString and NFA.toString print. Rows are cut
+ * at tabs, since an NFA leaves a blank cell for a symbol without transitions.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+public final class AutomatonParser {
+
+    private AutomatonParser() {
+    }
+
+    /**
+     * Reads an edge list file as UTF-8
+     *
+     * @param file the file
+     * @return the builder holding the automaton
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static AutomatonBuilder parseEdges(Path file) throws IOException {
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return parseEdges(in);
+        }
+    }
+
+    /**
+     * Reads an edge list
+     *
+     * @param in the text, not closed
+     * @return the builder holding the automaton
+     * @throws IOException if reading fails or the text is malformed
+     */
+    public static AutomatonBuilder parseEdges(Reader in) throws IOException {
+        AutomatonBuilder builder = new AutomatonBuilder();
+        BufferedReader lines = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in, 1 << 16);
+        boolean declaredSigma = false;
+        List<String> fields = new ArrayList<>();
+        String line;
+        int number = 0;
+        while ((line = lines.readLine()) != null) {
+            number++;
+            split(line, fields);
+            if (fields.isEmpty() || fields.get(0).startsWith("#")) {
+                continue;
+            }
+            String head = fields.get(0);
+            switch (head) {
+            case "states:":
+                for (int i = 1; i < fields.size(); i++) {
+                    builder.state(fields.get(i));
+                }
+                break;
+            case "sigma:":
+                declaredSigma = true;
+                for (int i = 1; i < fields.size(); i++) {
+                    builder.addSymbol(symbol(fields.get(i), number));
+                }
+                break;
+            case "start:":
+                if (fields.size() != 2) {
+                    throw error(number, "start needs one state");
+                }
+                builder.setStart(builder.state(fields.get(1)));
+                break;
+            case "final:":
+                for (int i = 1; i < fields.size(); i++) {
+                    builder.setFinal(builder.state(fields.get(i)));
+                }
+                break;
+            default:
+                if (fields.size() < 3) {
+                    throw error(number, "expected from, symbol and target");
+                }
+                int from = builder.state(head);
+                char c = symbol(fields.get(1), number);
+                if (!declaredSigma) {
+                    // e marks an epsilon edge, it is never an alphabet symbol
+                    if (c != 'e' && !builder.hasSymbol(c)) {
+                        builder.addSymbol(c);
+                    }
+                } else if (c != 'e' && !builder.hasSymbol(c)) {
+                    throw error(number, "symbol " + c + " is not in sigma");
+                }
+                for (int i = 2; i < fields.size(); i++) {
+                    builder.addTransition(from, c, builder.state(fields.get(i)));
+                }
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * Reads a file printed by DFA.toString or NFA.toString as UTF-8
+     *
+     * @param file the file
+     * @return the builder holding the automaton
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static AutomatonBuilder parseTable(Path file) throws IOException {
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return parseTable(in);
+        }
+    }
+
+    /**
+     * Reads the text printed by DFA.toString or NFA.toString
+     *
+     * @param in the text, not closed
+     * @return the builder holding the automaton
+     * @throws IOException if reading fails or the text is malformed
+     */
+    public static AutomatonBuilder parseTable(Reader in) throws IOException {
+        AutomatonBuilder builder = new AutomatonBuilder();
+        BufferedReader lines = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in, 1 << 16);
+        List<String> fields = new ArrayList<>();
+        char[] columns = null;
+        boolean nfa = false;
+        boolean inDelta = false;
+        String line;
+        int number = 0;
+        while ((line = lines.readLine()) != null) {
+            number++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            if (trimmed.startsWith("Q =")) {
+                for (String name : set(trimmed, number, fields)) {
+                    builder.state(name);
+                }
+            } else if (trimmed.startsWith("Sigma =")) {
+                for (String symbol : set(trimmed, number, fields)) {
+                    builder.addSymbol(symbol(symbol, number));
+                }
+            } else if (trimmed.startsWith("delta =")) {
+                inDelta = true;
+            } else if (trimmed.startsWith("q0 =")) {
+                inDelta = false;
+                builder.setStart(builder.state(trimmed.substring(4).trim()));
+            } else if (trimmed.startsWith("F =")) {
+                for (String name : set(trimmed, number, fields)) {
+                    builder.setFinal(builder.state(name));
+                }
+            } else if (inDelta && columns == null) {
+                // the symbol header, an NFA adds an e column after sigma
+                split(trimmed, fields);
+                char[] sigma = builder.getSymbols();
+                nfa = fields.size() == sigma.length + 1 && fields.get(sigma.length).equals("e");
+                if (!nfa && fields.size() != sigma.length) {
+                    throw error(number, "header does not match sigma");
+                }
+                columns = new char[fields.size()];
+                for (int i = 0; i < columns.length; i++) {
+                    columns[i] = symbol(fields.get(i), number);
+                }
+            } else if (inDelta) {
+                if (nfa) {
+                    nfaRow(line, columns, builder, number, fields);
+                } else {
+                    split(trimmed, fields);
+                    if (fields.size() != columns.length + 1) {
+                        throw error(number, "expected a target for every symbol");
+                    }
+                    int from = builder.state(fields.get(0));
+                    for (int i = 0; i < columns.length; i++) {
+                        // a partial DFA prints a missing transition as -
+                        if (!fields.get(i + 1).equals("-")) {
+                            builder.addTransition(from, columns[i], builder.state(fields.get(i + 1)));
+                        }
+                    }
+                }
+            } else {
+                throw error(number, "unexpected line");
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * Reads an NFA row: the name and a tab, then for every column either a set
+     * followed by a tab or two tabs for a blank cell
+     */
+    private static void nfaRow(String line, char[] columns, AutomatonBuilder builder, int number,
+            List<String> fields) throws IOException {
+        int tab = line.indexOf('\t');
+        if (tab <= 0) {
+            throw error(number, "expected a state name and a tab");
+        }
+        int from = builder.state(line.substring(0, tab).trim());
+        int p = tab + 1;
+        for (int column = 0; column < columns.length && p < line.length(); column++) {
+            if (line.charAt(p) == '{') {
+                int close = line.indexOf('}', p);
+                if (close < 0) {
+                    throw error(number, "unclosed set");
+                }
+                split(line.substring(p + 1, close), fields);
+                for (String name : fields) {
+                    builder.addTransition(from, columns[column], builder.state(name));
+                }
+                p = close + 1;
+                if (p < line.length() && line.charAt(p) == '\t') {
+                    p++;
+                }
+            } else if (line.startsWith("\t\t", p)) {
+                p += 2;
+            } else if (line.substring(p).isBlank()) {
+                break;
+            } else {
+                throw error(number, "expected a set or a blank cell");
+            }
+        }
+    }
+
+    /**
+     * Gets the elements of a "name = { a b }" line
+     */
+    private static List<String> set(String line, int number, List<String> fields) throws IOException {
+        int open = line.indexOf('{');
+        int close = line.lastIndexOf('}');
+        if (open < 0 || close < open) {
+            throw error(number, "expected a set");
+        }
+        split(line.substring(open + 1, close), fields);
+        return fields;
+    }
+
+    /**
+     * Splits a line at whitespace into fields, reusing the list
+     */
+    private static void split(String line, List<String> fields) {
+        fields.clear();
+        int i = 0;
+        int n = line.length();
+        while (i < n) {
+            while (i < n && Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            int begin = i;
+            while (i < n && !Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            if (i > begin) {
+                fields.add(line.substring(begin, i));
+            }
+        }
+    }
+
+    private static char symbol(String field, int number) throws IOException {
+        if (field.length() != 1) {
+            throw error(number, "symbols are single characters: " + field);
+        }
+        return field.charAt(0);
+    }
+
+    private static IOException error(int number, String message) {
+        return new IOException("line " + number + ": " + message);
+    }
+}
@@ -0,0 +1,347 @@
+package fa;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Sections shared by the DFA and NFA binary files. All numbers are big endian.
+ * A file is laid out as
+ *
+ * <pre>
+ * int    magic "FAUT"
+ * short  version
+ * byte   kind, KIND_DFA or KIND_NFA
+ * byte   reserved, 0
+ * int    state count n
+ * int    start state id, -1 if there is none
+ * int    symbol count k, then k chars in column order
+ * int    name bytes, then n + 1 int offsets and the UTF-8 names
+ * byte   n state flags, FINAL for accepting states
+ * int[]  k * n + 1 CSR row starts, targets of (q, c) begin at row q * k + c
+ * int[]  CSR targets
+ * ...    sections of the kind, NFAs add their e transitions as CSR
+ * int    CRC32 of everything before it
+ * </pre>
+ *
+ * where int[] is a length followed by the values.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+public final class BinaryFormat {
+
+    /** First four bytes of every file, "FAUT" */
+    public static final int MAGIC = 0x46415554;
+    /** Version written by this code, files of other versions are rejected */
+    public static final short VERSION = 1;
+    /** Kind byte of a DFA file */
+    public static final byte KIND_DFA = 0;
+    /** Kind byte of an NFA file */
+    public static final byte KIND_NFA = 1;
+    /** State flag of an accepting state */
+    public static final byte FINAL = 1;
+
+    private BinaryFormat() {
+    }
+
+    /**
+     * Opens a stream that writes file sections and keeps a checksum of them
+     *
+     * @param out the stream to write to, not closed by finish
+     * @return the section stream
+     */
+    public static Output begin(OutputStream out) {
+        return new Output(out, new CRC32());
+    }
+
+    /**
+     * Writes the checksum of everything written so far and flushes
+     *
+     * @param out a stream from begin
+     * @throws IOException if writing fails
+     */
+    public static void finish(Output out) throws IOException {
+        out.flush();
+        out.writeInt((int) out.crc.getValue());
+        out.flush();
+    }
+
+    /**
+     * Writes the header, the alphabet, the state names and the state flags
+     *
+     * @param out     a stream from begin
+     * @param kind    KIND_DFA or KIND_NFA
+     * @param start   id of the start state, -1 if there is none
+     * @param symbols the symbol of every column
+     * @param names   the name of every state in id order
+     * @param finals  true for every accepting state id
+     * @throws IOException if writing fails
+     */
+    public static void writeHead(Output out, byte kind, int start, char[] symbols, String[] names,
+            boolean[] finals) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeByte(kind);
+        out.writeByte(0);
+        out.writeInt(names.length);
+        out.writeInt(start);
+        out.writeInt(symbols.length);
+        for (char c : symbols) {
+            out.writeChar(c);
+        }
+        byte[][] encoded = new byte[names.length][];
+        int total = 0;
+        for (int i = 0; i < names.length; i++) {
+            encoded[i] = names[i].getBytes(StandardCharsets.UTF_8);
+            total += encoded[i].length;
+        }
+        out.writeInt(total);
+        int offset = 0;
+        out.writeInt(offset);
+        for (byte[] name : encoded) {
+            offset += name.length;
+            out.writeInt(offset);
+        }
+        for (byte[] name : encoded) {
+            out.write(name);
+        }
+        for (boolean f : finals) {
+            out.writeByte(f ? FINAL : 0);
+        }
+    }
+
+    /**
+     * Writes a length and the values of an int array
+     *
+     * @param out    a stream from begin
+     * @param values the values
+     * @param length the number of values to write
+     * @throws IOException if writing fails
+     */
+    public static void writeInts(Output out, int[] values, int length) throws IOException {
+        out.writeInt(length);
+        // whole chunks keep the checksum from being updated byte by byte
+        ByteBuffer chunk = ByteBuffer.allocate(1 << 13);
+        for (int i = 0; i < length; i++) {
+            if (!chunk.hasRemaining()) {
+                out.write(chunk.array(), 0, chunk.position());
+                chunk.clear();
+            }
+            chunk.putInt(values[i]);
+        }
+        out.write(chunk.array(), 0, chunk.position());
+    }
+
+    /**
+     * Maps a file read only and checks its magic number, version and checksum
+     *
+     * @param file the file to map
+     * @return the whole file, positioned at its start
+     * @throws IOException if the file cannot be read or is not a valid file
+     */
+    public static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("automaton file too large: " + file);
+            }
+            // the mapping stays valid after the channel is closed
+            return verify(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Checks the magic number, version and checksum of a file held in a buffer
+     *
+     * @param buffer the file from its first byte to its checksum
+     * @return buffer, positioned at its start
+     * @throws IOException if the buffer is not a valid file
+     */
+    public static ByteBuffer verify(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 16 || buffer.getInt(buffer.position()) != MAGIC) {
+            throw new IOException("not an automaton file");
+        }
+        short version = buffer.getShort(buffer.position() + 4);
+        if (version != VERSION) {
+            throw new IOException("unsupported automaton file version " + version);
+        }
+        int end = buffer.limit() - 4;
+        CRC32 crc = new CRC32();
+        ByteBuffer body = buffer.duplicate();
+        body.limit(end);
+        crc.update(body);
+        if ((int) crc.getValue() != buffer.getInt(end)) {
+            throw new IOException("automaton file checksum mismatch");
+        }
+        return buffer;
+    }
+
+    /**
+     * Reads the header, alphabet, names and flags written by writeHead
+     *
+     * @param buffer a verified file positioned at its start, left after the flags
+     * @param kind   the kind the file must have
+     * @return the sections read
+     * @throws IOException if the file is of another kind or malformed
+     */
+    public static Head readHead(ByteBuffer buffer, byte kind) throws IOException {
+        try {
+            buffer.getInt();
+            buffer.getShort();
+            if (buffer.get() != kind) {
+                throw new IOException("automaton file holds another kind of automaton");
+            }
+            buffer.get();
+            int stateCount = buffer.getInt();
+            int start = buffer.getInt();
+            int symbolCount = buffer.getInt();
+            if (stateCount < 0 || symbolCount < 0 || start < -1 || start >= stateCount) {
+                throw new IOException("malformed automaton file header");
+            }
+            char[] symbols = new char[symbolCount];
+            buffer.asCharBuffer().get(symbols);
+            buffer.position(buffer.position() + 2 * symbolCount);
+            int total = buffer.getInt();
+            if (total < 0 || total > buffer.remaining()) {
+                throw new IOException("truncated automaton file");
+            }
+            int[] offsets = readArray(buffer, stateCount + 1);
+            byte[] bytes = new byte[total];
+            buffer.get(bytes);
+            String[] names = new String[stateCount];
+            for (int q = 0; q < stateCount; q++) {
+                if (offsets[q] < 0 || offsets[q] > offsets[q + 1] || offsets[q + 1] > total) {
+                    throw new IOException("malformed automaton file names");
+                }
+                names[q] = new String(bytes, offsets[q], offsets[q + 1] - offsets[q], StandardCharsets.UTF_8);
+            }
+            boolean[] finals = new boolean[stateCount];
+            for (int q = 0; q < stateCount; q++) {
+                finals[q] = (buffer.get() & FINAL) != 0;
+            }
+            return new Head(start, symbols, names, finals);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IOException("truncated automaton file", e);
+        }
+    }
+
+    /**
+     * Reads an array written by writeInts
+     *
+     * @param buffer the file, positioned at the array
+     * @return the values
+     * @throws IOException if the array does not fit in the file
+     */
+    public static int[] readInts(ByteBuffer buffer) throws IOException {
+        try {
+            return readArray(buffer, buffer.getInt());
+        } catch (BufferUnderflowException e) {
+            throw new IOException("truncated automaton file", e);
+        }
+    }
+
+    /**
+     * Reads length ints in one bulk copy
+     */
+    private static int[] readArray(ByteBuffer buffer, int length) throws IOException {
+        if (length < 0 || (long) length * 4 > buffer.remaining()) {
+            throw new IOException("truncated automaton file");
+        }
+        int[] values = new int[length];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + 4 * length);
+        return values;
+    }
+
+    /**
+     * Checks that CSR arrays are well formed over stateCount targets
+     *
+     * @param rowStart   row starts, rows + 1 entries from 0 to targets.length
+     * @param rows       the number of rows
+     * @param targets    the targets
+     * @param stateCount the number of states
+     * @throws IOException if an offset or target is out of range
+     */
+    public static void checkRows(int[] rowStart, int rows, int[] targets, int stateCount) throws IOException {
+        if (rowStart.length != rows + 1 || rowStart[0] != 0 || rowStart[rows] != targets.length) {
+            throw new IOException("malformed automaton file transitions");
+        }
+        for (int r = 0; r < rows; r++) {
+            if (rowStart[r] > rowStart[r + 1]) {
+                throw new IOException("malformed automaton file transitions");
+            }
+        }
+        for (int t : targets) {
+            if (t < 0 || t >= stateCount) {
+                throw new IOException("automaton file transition to unknown state " + t);
+            }
+        }
+    }
+
+    /**
+     * Header sections of a file
+     */
+    public static final class Head {
+
+        private final int start;
+        private final char[] symbols;
+        private final String[] names;
+        private final boolean[] finals;
+
+        Head(int start, char[] symbols, String[] names, boolean[] finals) {
+            this.start = start;
+            this.symbols = symbols;
+            this.names = names;
+            this.finals = finals;
+        }
+
+        /**
+         * @return id of the start state, -1 if there is none
+         */
+        public int getStart() {
+            return start;
+        }
+
+        /**
+         * @return the symbol of every column
+         */
+        public char[] getSymbols() {
+            return symbols;
+        }
+
+        /**
+         * @return the name of every state in id order
+         */
+        public String[] getNames() {
+            return names;
+        }
+
+        /**
+         * @return true for every accepting state id
+         */
+        public boolean[] getFinals() {
+            return finals;
+        }
+    }
+
+    /**
+     * Section stream that checksums everything written through it
+     */
+    public static final class Output extends DataOutputStream {
+
+        private final CRC32 crc;
+
+        Output(OutputStream out, CRC32 crc) {
+            super(new CheckedOutputStream(new BufferedOutputStream(out, 1 << 16), crc));
+            this.crc = crc;
+        }
+    }
+}
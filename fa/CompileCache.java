@@ -0,0 +1,365 @@
+package fa;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fa.dfa.DFA;
+import fa.dfa.DFAFormat;
+import fa.dfa.DFATable;
+import fa.dfa.FrozenDFA;
+import fa.nfa.FrozenNFA;
+import fa.nfa.NFA;
+import fa.nfa.NFAState;
+
+/**
+ * Directory of minimal DFAs keyed by the content hash of the automaton they
+ * were compiled from, so a process that compiles the same NFA again loads the
+ * result instead of determinizing and minimizing it.
+ *
+ * Entries are written to a temporary file and moved into place, so readers
+ * never see half written files. An entry that fails its checksum or cannot be
+ * parsed is deleted and compiled again. When the entries grow past the size
+ * bound the least recently used ones are deleted, a hit counts as a use.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+public final class CompileCache {
+
+    /** Extension of cache entries */
+    static final String SUFFIX = ".fa";
+
+    /**
+     * Version of the compilation whose results are cached, part of every key.
+     * Bump it whenever toDFA or minimize can produce a different DFA for the
+     * same input, so entries written by an older build are never loaded.
+     */
+    public static final int COMPILER_VERSION = 1;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong corrupt = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Opens a cache directory, creating it if needed
+     *
+     * @param directory where entries are kept
+     * @param maxBytes  the most bytes the entries may use together
+     * @throws IOException if the directory cannot be created
+     */
+    public CompileCache(Path directory, long maxBytes) throws IOException {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("size bound must not be negative");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets the minimal DFA of an NFA, from the cache if it has been compiled
+     * before
+     *
+     * @param nfa the NFA to compile
+     * @return the minimal DFA accepting the language of nfa
+     */
+    public FrozenDFA compile(NFA nfa) {
+        String key = hash(nfa);
+        FrozenDFA cached = lookup(key);
+        return cached != null ? cached : store(key, nfa.toDFA().minimize());
+    }
+
+    /**
+     * Gets the minimal form of a DFA, from the cache if it has been compiled
+     * before
+     *
+     * @param dfa the DFA to minimize
+     * @return the minimal DFA accepting the language of dfa
+     */
+    public FrozenDFA compile(DFA dfa) {
+        String key = hash(dfa);
+        FrozenDFA cached = lookup(key);
+        return cached != null ? cached : store(key, dfa.minimize());
+    }
+
+    /**
+     * Loads an entry, deleting it if it is corrupt
+     *
+     * @return the entry, or null on a miss
+     */
+    private FrozenDFA lookup(String key) {
+        Path entry = directory.resolve(key + SUFFIX);
+        if (!Files.exists(entry)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        try {
+            FrozenDFA dfa = DFAFormat.load(entry);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            hits.incrementAndGet();
+            return dfa;
+        } catch (IOException e) {
+            corrupt.incrementAndGet();
+            misses.incrementAndGet();
+            try {
+                Files.deleteIfExists(entry);
+            } catch (IOException ignored) {
+                // another process may hold it, it is written over on store
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Writes a compiled DFA atomically and evicts old entries. A failed write
+     * only costs the next process a compilation, so it is not reported.
+     *
+     * @return the frozen DFA
+     */
+    private FrozenDFA store(String key, DFA compiled) {
+        FrozenDFA frozen = compiled.freeze();
+        Path entry = directory.resolve(key + SUFFIX);
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(directory, key, ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                DFAFormat.write(frozen, out);
+            }
+            try {
+                Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+            evict(entry);
+        } catch (IOException e) {
+            // the compiled DFA is still good
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // left for the next eviction pass to ignore
+                }
+            }
+        }
+        return frozen;
+    }
+
+    /**
+     * Deletes the least recently used entries until the entries fit in maxBytes,
+     * never deleting the entry just written
+     */
+    private void evict(Path keep) throws IOException {
+        List<Path> entries = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                entries.add(file);
+                total += Files.size(file);
+            }
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        FileTime[] used = new FileTime[entries.size()];
+        for (int i = 0; i < used.length; i++) {
+            used[i] = Files.getLastModifiedTime(entries.get(i));
+        }
+        Integer[] order = new Integer[entries.size()];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, Comparator.comparing(i -> used[i]));
+        for (int i : order) {
+            if (total <= maxBytes) {
+                break;
+            }
+            Path file = entries.get(i);
+            if (file.equals(keep)) {
+                continue;
+            }
+            long size = Files.size(file);
+            if (Files.deleteIfExists(file)) {
+                total -= size;
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Computes the content hash of an NFA. The hash covers the state names in id
+     * order, the sorted alphabet, the start state, the final states and the
+     * sorted targets of every transition, so NFAs built by the same calls hash
+     * the same even if the alphabet was added in another order.
+     *
+     * @param nfa the NFA
+     * @return the hash as hex
+     */
+    public static String hash(NFA nfa) {
+        Hasher h = new Hasher(BinaryFormat.KIND_NFA);
+        // the frozen NFA numbers the states by id, like hash(DFA)
+        FrozenNFA frozen = nfa.freeze();
+        char[] symbols = sortedSigma(nfa.getSigma());
+        h.putInt(frozen.getStateCount());
+        h.putChars(symbols);
+        int start = -1;
+        for (int id = 0; id < frozen.getStateCount(); id++) {
+            NFAState state = nfa.getState(frozen.nameOf(id));
+            h.putString(state.getName());
+            h.putInt(state.getFinalState() ? 1 : 0);
+            if (state.getStartState()) {
+                start = id;
+            }
+            for (char c : symbols) {
+                h.putTargets(state.getTransitions(c));
+            }
+            h.putTargets(state.getTransitions('e'));
+        }
+        h.putInt(start);
+        return h.hex();
+    }
+
+    /**
+     * Computes the content hash of a DFA over the same parts as hash(NFA)
+     *
+     * @param dfa the DFA
+     * @return the hash as hex
+     */
+    public static String hash(DFA dfa) {
+        Hasher h = new Hasher(BinaryFormat.KIND_DFA);
+        FrozenDFA frozen = dfa.freeze();
+        DFATable table = frozen.getTable();
+        char[] symbols = sortedSigma(dfa.getSigma());
+        h.putInt(table.getStateCount());
+        h.putChars(symbols);
+        for (int q = 0; q < table.getStateCount(); q++) {
+            h.putString(frozen.nameOf(q));
+            h.putInt(table.isFinal(q) ? 1 : 0);
+            for (char c : symbols) {
+                h.putInt(table.step(q, c));
+            }
+        }
+        h.putInt(table.getStart());
+        return h.hex();
+    }
+
+    private static char[] sortedSigma(Set<Character> sigma) {
+        char[] symbols = new char[sigma.size()];
+        int i = 0;
+        for (char c : sigma) {
+            symbols[i++] = c;
+        }
+        Arrays.sort(symbols);
+        return symbols;
+    }
+
+    /**
+     * @return lookups answered from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return lookups that had to compile, including corrupt entries
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return entries found corrupt and deleted
+     */
+    public long getCorrupt() {
+        return corrupt.get();
+    }
+
+    /**
+     * @return entries deleted to stay within the size bound
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * SHA-256 over length prefixed fields
+     */
+    private static final class Hasher {
+
+        private final MessageDigest digest;
+        private final byte[] scratch = new byte[4];
+
+        Hasher(byte kind) {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                // every Java platform has to provide SHA-256
+                throw new IllegalStateException(e);
+            }
+            putInt(BinaryFormat.VERSION);
+            putInt(COMPILER_VERSION);
+            putInt(kind);
+        }
+
+        void putInt(int v) {
+            scratch[0] = (byte) (v >>> 24);
+            scratch[1] = (byte) (v >>> 16);
+            scratch[2] = (byte) (v >>> 8);
+            scratch[3] = (byte) v;
+            digest.update(scratch);
+        }
+
+        void putChars(char[] chars) {
+            putInt(chars.length);
+            for (char c : chars) {
+                putInt(c);
+            }
+        }
+
+        void putString(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            digest.update(bytes);
+        }
+
+        void putTargets(Set<NFAState> targets) {
+            if (targets == null) {
+                putInt(0);
+                return;
+            }
+            int[] ids = new int[targets.size()];
+            int i = 0;
+            for (NFAState t : targets) {
+                ids[i++] = t.getId();
+            }
+            Arrays.sort(ids);
+            putInt(ids.length);
+            for (int id : ids) {
+                putInt(id);
+            }
+        }
+
+        String hex() {
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package fa;
 
+import java.util.BitSet;
+import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
 
 public interface FAInterface {
 
@@ -76,4 +79,53 @@ public interface FAInterface {
 	 */
 	public boolean isStart(String name);
 
+	/**
+	 * Creates a streaming matcher that consumes input in chunks. The matcher
+	 * runs a snapshot of the automaton taken now, later changes to the
+	 * automaton are not seen by it.
+	 * 
+	 * @return a new matcher in the start state
+	 */
+	public FAMatcher matcher();
+
+	/**
+	 * Tests a batch of inputs in parallel on the common fork/join pool
+	 * 
+	 * @param inputs the strings to test
+	 * @return bit i is set if the i-th input is accepted
+	 */
+	public BitSet acceptsAll(List<? extends CharSequence> inputs);
+
+	/**
+	 * Tests every input of a stream in parallel on the common fork/join pool
+	 * 
+	 * @param inputs the strings to test, in encounter order
+	 * @return bit i is set if the i-th input is accepted
+	 */
+	public BitSet acceptsAll(Stream<? extends CharSequence> inputs);
+
+	/**
+	 * Finds the leftmost-longest matches of this automaton inside a text that
+	 * do not overlap, in two linear passes instead of testing every substring.
+	 * See Searcher.
+	 * 
+	 * @param text     the text to search
+	 * @param listener receives the span of every match, in order
+	 * @return the number of matches
+	 */
+	public int search(CharSequence text, MatchListener listener);
+
+	/**
+	 * Finds the matches of this automaton inside a text
+	 * 
+	 * @param text        the text to search
+	 * @param overlapping true to report the longest match at every position
+	 *                    where one starts, false for the leftmost-longest ones
+	 *                    that do not overlap
+	 * @param listener    receives the span of every match, in order of their
+	 *                    starts
+	 * @return the number of matches
+	 */
+	public int search(CharSequence text, boolean overlapping, MatchListener listener);
+
 }
\ No newline at end of file
@@ -0,0 +1,47 @@
+package fa;
+
+/**
+ * Incremental matcher that consumes an input in chunks. Only the current state
+ * of the automaton is kept between calls, so memory does not grow with the
+ * length of the input.
+ */
+public interface FAMatcher {
+
+	/**
+	 * Consumes the next chunk of the input
+	 * 
+	 * @param chunk the symbols to consume
+	 * @return this matcher
+	 */
+	public FAMatcher feed(CharSequence chunk);
+
+	/**
+	 * Consumes the next chunk of the input from a char array
+	 * 
+	 * @param chunk the array holding the symbols
+	 * @param off   index of the first symbol to consume
+	 * @param len   number of symbols to consume
+	 * @return this matcher
+	 */
+	public FAMatcher feed(char[] chunk, int off, int len);
+
+	/**
+	 * Determines if the input consumed so far is accepted
+	 * 
+	 * @return true if the automaton accepts everything fed since the last reset
+	 */
+	public boolean isAccepting();
+
+	/**
+	 * Determines if no continuation of the input can be accepted anymore
+	 * 
+	 * @return true if the automaton has no live state left
+	 */
+	public boolean isDead();
+
+	/**
+	 * Goes back to the start state, forgetting all consumed input
+	 */
+	public void reset();
+
+}
@@ -0,0 +1,61 @@
+package fa;
+
+/**
+ * Answer of a language comparison such as equivalence or inclusion, with a
+ * counterexample when the answer is negative and counters of the work done.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+public final class LanguageCheck {
+
+    private final String counterexample;
+    private final long explored;
+    private final long pruned;
+
+    /**
+     * @param counterexample a string on which the comparison fails, null if it
+     *                       holds
+     * @param explored       the number of pairs or states explored
+     * @param pruned         the number of pairs or states skipped as already
+     *                       covered
+     */
+    public LanguageCheck(String counterexample, long explored, long pruned) {
+        this.counterexample = counterexample;
+        this.explored = explored;
+        this.pruned = pruned;
+    }
+
+    /**
+     * @return true if the comparison holds
+     */
+    public boolean holds() {
+        return counterexample == null;
+    }
+
+    /**
+     * @return a string on which the comparison fails, null if it holds
+     */
+    public String getCounterexample() {
+        return counterexample;
+    }
+
+    /**
+     * @return the number of pairs or states explored
+     */
+    public long getExplored() {
+        return explored;
+    }
+
+    /**
+     * @return the number of pairs or states skipped as already covered
+     */
+    public long getPruned() {
+        return pruned;
+    }
+
+    @Override
+    public String toString() {
+        return (holds() ? "holds" : "fails on \"" + counterexample + "\"") + ", " + explored + " explored, "
+                + pruned + " pruned";
+    }
+}
@@ -0,0 +1,19 @@
+package fa;
+
+/**
+ * Receives the matches a substring search finds, in order of their start
+ * positions.
+ */
+public interface MatchListener {
+
+	/**
+	 * Called once per match. The span is only passed as two ints, so reporting
+	 * a match does not allocate.
+	 *
+	 * @param start index of the first symbol of the match
+	 * @param end   index after the last symbol of the match, equal to start for
+	 *              an empty match
+	 */
+	public void match(int start, int end);
+
+}
@@ -0,0 +1,110 @@
+package fa;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Runs one automaton over a batch of inputs on a fork/join pool. The batch is
+ * split in halves until a task holds at most LEAF_SIZE inputs, and every leaf
+ * asks the supplier for its own worker, so scratch buffers are never shared
+ * between threads.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+public final class ParallelBatch {
+
+    /** Inputs handled by one task without splitting further */
+    public static final int LEAF_SIZE = 256;
+
+    private ParallelBatch() {
+    }
+
+    /**
+     * Tests every input of a batch
+     *
+     * @param inputs   the inputs to test
+     * @param matchers creates a matcher for one worker
+     * @param pool     the pool to run on
+     * @return bit i is set if inputs.get(i) is accepted
+     */
+    public static BitSet acceptsAll(List<? extends CharSequence> inputs,
+            Supplier<? extends FAMatcher> matchers, ForkJoinPool pool) {
+        int[] results = applyAll(inputs, () -> {
+            FAMatcher m = matchers.get();
+            return s -> {
+                m.reset();
+                return m.feed(s).isAccepting() ? 1 : 0;
+            };
+        }, pool);
+        BitSet accepted = new BitSet(results.length);
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] != 0) {
+                accepted.set(i);
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Applies a function to every input of a batch
+     *
+     * @param inputs  the inputs
+     * @param workers creates the function for one worker, the functions may keep
+     *                scratch state since each is used by one thread only
+     * @param pool    the pool to run on
+     * @return the result of every input in order
+     */
+    public static int[] applyAll(List<? extends CharSequence> inputs,
+            Supplier<? extends ToIntFunction<CharSequence>> workers, ForkJoinPool pool) {
+        // splitting needs cheap indexing
+        List<? extends CharSequence> list = inputs instanceof RandomAccess ? inputs : new ArrayList<>(inputs);
+        int[] results = new int[list.size()];
+        if (results.length > 0) {
+            pool.invoke(new Task(list, workers, results, 0, results.length));
+        }
+        return results;
+    }
+
+    /**
+     * Fills results[from .. to), splitting while the range is larger than a leaf
+     */
+    private static final class Task extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<? extends CharSequence> inputs;
+        private final Supplier<? extends ToIntFunction<CharSequence>> workers;
+        private final int[] results;
+        private final int from;
+        private final int to;
+
+        Task(List<? extends CharSequence> inputs, Supplier<? extends ToIntFunction<CharSequence>> workers,
+                int[] results, int from, int to) {
+            this.inputs = inputs;
+            this.workers = workers;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_SIZE) {
+                ToIntFunction<CharSequence> worker = workers.get();
+                for (int i = from; i < to; i++) {
+                    results[i] = worker.applyAsInt(inputs.get(i));
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Task(inputs, workers, results, from, mid),
+                    new Task(inputs, workers, results, mid, to));
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package fa;
+
+import java.util.Arrays;
+
+/**
+ * Finds every match of an automaton inside a text instead of testing the whole
+ * text. A reversed automaton for Sigma* followed by the reversed language is
+ * run once over the text from its end. The state it reaches at position i is
+ * the set of states that accept some prefix of the text from i on, so a match
+ * starts at i exactly when that set holds the start state. The reversed
+ * automaton is determinized on the fly and its states are cached between
+ * searches in at most a memory budget, like LazyDFA.
+ *
+ * The text is then read forward once from every match start. A run from a
+ * start is cut off as soon as it leaves the set recorded at its position, as
+ * no match can end further on, so each run reads exactly its longest match.
+ * Only when the cache was flushed during the reversed pass are the sets of the
+ * positions after the flush lost, those runs read on until the automaton dies.
+ *
+ * A searcher keeps one int per symbol of the longest text it has searched and
+ * its scratch sets, it is not safe to share between threads.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+public abstract class Searcher {
+
+    /** Default most bytes the cache of reversed states may use */
+    public static final long DEFAULT_BUDGET = 1L << 24;
+
+    private static final int UNKNOWN = -1;
+
+    private final int columnCount;
+    // one more column than the reversed automaton for symbols outside it
+    private final int width;
+    private final int capacity;
+    private final SubsetTable states;
+    // transitions[id * width + column], UNKNOWN until first computed
+    private int[] transitions;
+    // starts[id] is true if a match starts wherever state id is reached
+    private boolean[] starts;
+    private final long[] set;
+    private final long[] next;
+
+    // trail[i] is the reversed state reached at position i of the last text
+    private int[] trail;
+    // bit i is set if a match starts at position i
+    private long[] marks;
+    // trail entries above this position name states dropped by a flush
+    private int staleAbove;
+    private long flushes;
+
+    /**
+     * @param words        the width of a reversed state set in longs
+     * @param columnCount  the number of columns of the reversed automaton
+     * @param memoryBudget the most bytes the cache of reversed states may use
+     */
+    protected Searcher(int words, int columnCount, long memoryBudget) {
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException("memory budget must not be negative");
+        }
+        this.columnCount = columnCount;
+        this.width = columnCount + 1;
+        long perState = SubsetTable.bytesPerSet(words) + 4L * width + 1;
+        // always room for the current state and one successor
+        this.capacity = (int) Math.max(2, Math.min(Integer.MAX_VALUE / width / 2, memoryBudget / perState));
+        this.states = new SubsetTable(words, capacity);
+        this.transitions = new int[Math.min(16, capacity) * width];
+        this.starts = new boolean[Math.min(16, capacity)];
+        this.set = new long[words];
+        this.next = new long[words];
+        this.trail = new int[16];
+        this.marks = new long[1];
+    }
+
+    /**
+     * Reports the leftmost-longest matches of s that do not overlap. After a
+     * match the search goes on at its end, or one symbol later for an empty
+     * match.
+     *
+     * @param s        the text
+     * @param listener receives every match
+     * @return the number of matches
+     */
+    public int search(CharSequence s, MatchListener listener) {
+        return search(s, false, listener);
+    }
+
+    /**
+     * Reports the longest match at every position of s where one starts, or
+     * only the leftmost-longest ones that do not overlap
+     *
+     * @param s           the text
+     * @param overlapping true to report a match at every start, even inside an
+     *                    earlier match
+     * @param listener    receives every match, in order of their starts
+     * @return the number of matches
+     */
+    public int search(CharSequence s, boolean overlapping, MatchListener listener) {
+        int n = s.length();
+        if (trail.length <= n) {
+            trail = new int[Math.max(n + 1, Math.min(Integer.MAX_VALUE - 8, trail.length * 2))];
+        }
+        int words = (n >>> 6) + 1;
+        if (marks.length < words) {
+            marks = new long[Math.max(words, Math.min(Integer.MAX_VALUE - 8, marks.length * 2))];
+        } else {
+            Arrays.fill(marks, 0, words, 0L);
+        }
+        staleAbove = n;
+
+        // the reversed automaton reads s from its end
+        reverseStart(set);
+        int id = states.find(set);
+        if (id < 0) {
+            if (states.size() >= capacity) {
+                flush(n);
+            }
+            id = add(set);
+        }
+        record(n, id);
+        for (int i = n - 1; i >= 0; i--) {
+            id = step(id, s.charAt(i), i);
+            record(i, id);
+        }
+
+        int count = 0;
+        for (int i = nextMark(0, n); i >= 0; count++) {
+            int end = longest(s, i);
+            listener.match(i, end);
+            i = nextMark(overlapping || end == i ? i + 1 : end, n);
+        }
+        return count;
+    }
+
+    /**
+     * Moves the reversed automaton over one symbol
+     *
+     * @param id       the state before the symbol
+     * @param c        the symbol
+     * @param position the index of c in the text
+     * @return the state after it
+     */
+    private int step(int id, char c, int position) {
+        int column = reverseColumn(c);
+        int cell = id * width + (column < 0 ? columnCount : column);
+        int to = transitions[cell];
+        if (to != UNKNOWN) {
+            return to;
+        }
+        states.get(id, set);
+        // no match runs over a symbol outside the alphabet, only new ones start
+        if (column < 0) {
+            reverseStart(next);
+        } else {
+            reverseMove(set, column, next);
+        }
+        to = states.find(next);
+        if (to < 0) {
+            if (states.size() >= capacity) {
+                // the old state is gone, only the new one is cached
+                flush(position);
+                return add(next);
+            }
+            to = add(next);
+        }
+        transitions[cell] = to;
+        return to;
+    }
+
+    /**
+     * Caches a new reversed state
+     *
+     * @param subset the state set, not yet in the cache
+     * @return the id of the new state
+     */
+    private int add(long[] subset) {
+        int id = states.intern(subset);
+        if (starts.length <= id) {
+            starts = Arrays.copyOf(starts, Math.min(starts.length * 2, capacity));
+            transitions = Arrays.copyOf(transitions, starts.length * width);
+        }
+        starts[id] = startsMatch(subset);
+        Arrays.fill(transitions, id * width, (id + 1) * width, UNKNOWN);
+        return id;
+    }
+
+    /**
+     * Drops every cached state while the reversed pass is at position
+     */
+    private void flush(int position) {
+        states.clear();
+        staleAbove = position;
+        flushes++;
+    }
+
+    private void record(int position, int id) {
+        trail[position] = id;
+        if (starts[id]) {
+            marks[position >>> 6] |= 1L << position;
+        }
+    }
+
+    /**
+     * @return the first match start at or after from, -1 if there is none
+     */
+    private int nextMark(int from, int n) {
+        if (from > n) {
+            return -1;
+        }
+        int w = from >>> 6;
+        long word = marks[w] & (-1L << from);
+        int last = n >>> 6;
+        while (word == 0) {
+            if (++w > last) {
+                return -1;
+            }
+            word = marks[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Tells a forward run whether it can still reach a match end
+     *
+     * @param position a position of the last text searched
+     * @param state    a state of the automaton, as numbered in reversed sets
+     * @return false if state accepts no prefix of the text from position on
+     */
+    protected final boolean canFinish(int position, int state) {
+        return position > staleAbove || states.contains(trail[position], state);
+    }
+
+    /**
+     * Tells a forward run whether it can still reach a match end
+     *
+     * @param position a position of the last text searched
+     * @param set      the states of the run, as numbered in reversed sets
+     * @return false if no state of set accepts a prefix of the text from
+     *         position on
+     */
+    protected final boolean canFinish(int position, long[] set) {
+        return position > staleAbove || states.intersects(trail[position], set);
+    }
+
+    /**
+     * @param c a symbol of the text
+     * @return its column in the reversed automaton, -1 if it is not in the
+     *         alphabet
+     */
+    protected abstract int reverseColumn(char c);
+
+    /**
+     * Writes the set the reversed automaton starts in, the states that accept
+     * the empty input
+     *
+     * @param dst receives the set
+     */
+    protected abstract void reverseStart(long[] dst);
+
+    /**
+     * Moves a reversed set over one column. The states that accept the empty
+     * input are always part of the result, as a match may end anywhere.
+     *
+     * @param from   the set before the symbol
+     * @param column a column of the reversed automaton
+     * @param to     receives the set after it
+     */
+    protected abstract void reverseMove(long[] from, int column, long[] to);
+
+    /**
+     * @param set a reversed set
+     * @return true if it holds the start of the automaton
+     */
+    protected abstract boolean startsMatch(long[] set);
+
+    /**
+     * Runs the automaton forward from a position where a match starts
+     *
+     * @param s    the text
+     * @param from the start of the match
+     * @return the end of the longest match starting there
+     */
+    protected abstract int longest(CharSequence s, int from);
+
+    /**
+     * @return the number of times the cache was full and flushed
+     */
+    public long getFlushes() {
+        return flushes;
+    }
+
+    /**
+     * @return the number of reversed states currently cached
+     */
+    public int getCachedStates() {
+        return states.size();
+    }
+}
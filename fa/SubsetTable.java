@@ -0,0 +1,194 @@
+package fa;
+
+import java.util.Arrays;
+
+/**
+ * Interns sets of automaton states by their bitset contents. Every distinct set gets a
+ * dense int id in the order it was first seen, and the words of all sets are
+ * kept in one flat array so no object is created per set.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+public final class SubsetTable {
+
+    private final int words;
+    // keys[id * words + w]
+    private long[] keys;
+    private int[] hashes;
+    // open addressing slots holding id + 1, 0 is empty
+    private int[] slots;
+    private int size;
+    private final int capacity;
+
+    /**
+     * @param words the width of every set in longs
+     */
+    public SubsetTable(int words) {
+        this(words, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a table that never grows past capacity sets, so its memory stays
+     * within capacity times bytesPerSet
+     *
+     * @param words    the width of every set in longs
+     * @param capacity the most sets the table may hold
+     */
+    public SubsetTable(int words, int capacity) {
+        this.words = words;
+        this.capacity = capacity;
+        int initial = Math.max(1, Math.min(16, capacity));
+        this.keys = new long[initial * Math.max(words, 1)];
+        this.hashes = new int[initial];
+        this.slots = new int[Integer.highestOneBit(initial) * 2];
+    }
+
+    /**
+     * @return the number of interned sets
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds the id of a set
+     *
+     * @param set the set to look up
+     * @return its id or -1 if it was never interned
+     */
+    public int find(long[] set) {
+        int hash = hash(set);
+        int mask = slots.length - 1;
+        for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) {
+                return -1;
+            }
+            if (hashes[id] == hash && same(id, set)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Gets the id of a set, adding a copy of it when it is new
+     *
+     * @param set the set to intern
+     * @return the id of the set
+     */
+    public int intern(long[] set) {
+        int id = find(set);
+        if (id >= 0) {
+            return id;
+        }
+        if (size == hashes.length) {
+            if (size == capacity) {
+                throw new IllegalStateException("subset table is full at " + capacity + " sets");
+            }
+            // never grow past the capacity, it bounds the memory
+            int grown = (int) Math.min(2L * size, capacity);
+            hashes = Arrays.copyOf(hashes, grown);
+            keys = Arrays.copyOf(keys, grown * Math.max(words, 1));
+        }
+        id = size++;
+        hashes[id] = hash(set);
+        System.arraycopy(set, 0, keys, id * words, words);
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        } else {
+            insert(id);
+        }
+        return id;
+    }
+
+    /**
+     * Copies the set with the given id into dst
+     */
+    public void get(int id, long[] dst) {
+        System.arraycopy(keys, id * words, dst, 0, words);
+    }
+
+    /**
+     * @param id  the id of a set
+     * @param bit a state
+     * @return true if the set contains the state
+     */
+    public boolean contains(int id, int bit) {
+        return (keys[id * words + (bit >>> 6)] & (1L << bit)) != 0;
+    }
+
+    /**
+     * @param id  the id of a set
+     * @param set a set no wider than the interned ones
+     * @return true if the two sets share a state
+     */
+    public boolean intersects(int id, long[] set) {
+        int offset = id * words;
+        for (int w = 0; w < set.length; w++) {
+            if ((keys[offset + w] & set[w]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forgets every set, keeping the allocated arrays
+     */
+    public void clear() {
+        Arrays.fill(slots, 0);
+        size = 0;
+    }
+
+    /**
+     * @return an estimate of the heap used by the table in bytes
+     */
+    public long memory() {
+        return 8L * keys.length + 4L * hashes.length + 4L * slots.length;
+    }
+
+    /**
+     * Estimates the bytes needed per interned set
+     *
+     * @param words the width of every set in longs
+     * @return bytes per set including its share of the hash slots, which are
+     *         at most four per set
+     */
+    public static long bytesPerSet(int words) {
+        return 8L * words + 4 + 16;
+    }
+
+    private void insert(int id) {
+        int mask = slots.length - 1;
+        int slot = hashes[id] & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = id + 1;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        for (int id = 0; id < size; id++) {
+            insert(id);
+        }
+    }
+
+    private boolean same(int id, long[] set) {
+        int offset = id * words;
+        for (int w = 0; w < words; w++) {
+            if (keys[offset + w] != set[w]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int hash(long[] set) {
+        long h = 0x9E3779B97F4A7C15L;
+        for (int w = 0; w < words; w++) {
+            h = (h ^ set[w]) * 0xBF58476D1CE4E5B9L;
+        }
+        return (int) (h ^ (h >>> 31));
+    }
+}
@@ -0,0 +1,181 @@
+package fa.dfa;
+
+import java.util.Arrays;
+
+import fa.LanguageCheck;
+
+/**
+ * Hopcroft and Karp's equivalence check. The states of both automata are
+ * elements of one union-find structure, and pairs of states that must accept
+ * the same language are merged starting from the pair of start states. A pair
+ * whose states are already in one class is not explored again, so each union
+ * explores at most one pair and the check is near linear in the number of
+ * states times columns. A missing transition goes to a rejecting sink shared by
+ * both sides.
+ *
+ * When the check fails, a shortest counterexample is found by a breadth first
+ * search of the product.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+final class Bisimulation {
+
+    // union-find element of the shared sink
+    private static final int SINK = 0;
+
+    private final Product product;
+    private final DFATable right;
+    // left states are lazy union pairs when checking inclusion
+    private final Product left;
+    private final DFATable leftTable;
+
+    private int[] parent = new int[64];
+    private int[] rank = new int[64];
+    private int[] queue = new int[64];
+    private long explored;
+    private long pruned;
+
+    private Bisimulation(DFATable a, DFATable b, Product left) {
+        this.product = new Product(a, b, left == null ? ProductOperation.SYMMETRIC_DIFFERENCE
+                : ProductOperation.DIFFERENCE);
+        this.right = b;
+        this.left = left;
+        this.leftTable = a;
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+    }
+
+    /**
+     * Checks that two DFAs accept the same language
+     *
+     * @param a the first DFA
+     * @param b the second DFA
+     * @return the answer, with a shortest input accepted by only one of them
+     */
+    static LanguageCheck equivalent(DFATable a, DFATable b) {
+        return new Bisimulation(a, b, null).run();
+    }
+
+    /**
+     * Checks that every input a accepts is accepted by b, by checking that the
+     * union of a and b is equivalent to b. The union is built lazily, only the
+     * pairs the check reaches are numbered.
+     *
+     * @param a the first DFA
+     * @param b the second DFA
+     * @return the answer, with a shortest input accepted by a and not by b
+     */
+    static LanguageCheck subsetOf(DFATable a, DFATable b) {
+        return new Bisimulation(a, b, new Product(a, b, ProductOperation.UNION)).run();
+    }
+
+    private LanguageCheck run() {
+        int leftStart = left != null ? left.start() : leftTable.getStart();
+        int rightStart = right.getStart();
+        int columns = product.getColumnCount();
+        int size = 0;
+        union(leftElement(leftStart), rightElement(rightStart));
+        queue[size++] = leftStart;
+        queue[size++] = rightStart;
+        boolean fails = false;
+        for (int head = 0; head < size; head += 2) {
+            int x = queue[head];
+            int y = queue[head + 1];
+            explored++;
+            if (leftFinal(x) != right.isFinal(y)) {
+                fails = true;
+                break;
+            }
+            for (int column = 0; column < columns; column++) {
+                int x1 = leftNext(x, column);
+                int y1 = rightNext(y, column);
+                if (!union(leftElement(x1), rightElement(y1))) {
+                    pruned++;
+                    continue;
+                }
+                if (size + 2 > queue.length) {
+                    queue = Arrays.copyOf(queue, queue.length * 2);
+                }
+                queue[size++] = x1;
+                queue[size++] = y1;
+            }
+        }
+        String counterexample = fails ? product.shortestAccepted() : null;
+        return new LanguageCheck(counterexample, explored, pruned);
+    }
+
+    private boolean leftFinal(int x) {
+        return left != null ? left.isFinal(x) : leftTable.isFinal(x);
+    }
+
+    private int leftNext(int x, int column) {
+        if (x == DFATable.DEAD) {
+            return DFATable.DEAD;
+        }
+        if (left != null) {
+            return left.next(x, column);
+        }
+        int c = product.columnA(column);
+        return c == DFATable.DEAD ? DFATable.DEAD : leftTable.next(x, c);
+    }
+
+    private int rightNext(int y, int column) {
+        int c = product.columnB(column);
+        return y == DFATable.DEAD || c == DFATable.DEAD ? DFATable.DEAD : right.next(y, c);
+    }
+
+    /**
+     * Right states come first after the sink, left states after them. Union
+     * pairs are numbered as they are found, so the left side may grow.
+     */
+    private int rightElement(int y) {
+        return y == DFATable.DEAD ? SINK : 1 + y;
+    }
+
+    private int leftElement(int x) {
+        if (x == DFATable.DEAD) {
+            return SINK;
+        }
+        return 1 + right.getStateCount() + x;
+    }
+
+    private int find(int e) {
+        // elements are created on first use
+        if (e >= parent.length) {
+            int old = parent.length;
+            int capacity = Math.max(old * 2, e + 1);
+            parent = Arrays.copyOf(parent, capacity);
+            rank = Arrays.copyOf(rank, capacity);
+            for (int i = old; i < capacity; i++) {
+                parent[i] = i;
+            }
+        }
+        // path halving
+        while (parent[e] != e) {
+            parent[e] = parent[parent[e]];
+            e = parent[e];
+        }
+        return e;
+    }
+
+    /**
+     * @return false if e and f were already in one class
+     */
+    private boolean union(int e, int f) {
+        int r = find(e);
+        int s = find(f);
+        if (r == s) {
+            return false;
+        }
+        if (rank[r] < rank[s]) {
+            parent[r] = s;
+        } else {
+            parent[s] = r;
+            if (rank[r] == rank[s]) {
+                rank[r]++;
+            }
+        }
+        return true;
+    }
+}
@@ -1,14 +1,23 @@
 package fa.dfa;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import fa.AlphabetClasses;
+import fa.AutomatonBuilder;
+import fa.LanguageCheck;
+import fa.MatchListener;
+import fa.ParallelBatch;
 
 /**
  * State machine that accepts or rejects input strings over a input language
@@ -19,26 +28,68 @@ public class DFA implements DFAInterface, Serializable {
 
     final short STATESSIZE = 5;
     final short ALPHABETSIZE = 3;
-    StringBuilder sb = new StringBuilder();
 
     private Set<DFAState> states;
+    // index of states by name, states keeps the insertion order
+    private Map<String, DFAState> byName;
     private DFAState startState;
     private Set<DFAState> finalStates;
     private Set<Character> alphabet;
     private HashMap<DFAState, HashMap<Character, DFAState>> delta;
+    // dense form of delta used by accepts, rebuilt after any change to the DFA
+    private transient DFATable compiled;
 
     public DFA() {
         this.states = new LinkedHashSet<>(STATESSIZE);
+        this.byName = new HashMap<>(STATESSIZE);
         this.finalStates = new LinkedHashSet<>(STATESSIZE);
         this.alphabet = new LinkedHashSet<>(ALPHABETSIZE);
         this.delta = new HashMap<>();
     }
 
+    /**
+     * Builds a DFA from a bulk builder. States get the builder's ids and a later
+     * transition on the same state and symbol replaces an earlier one, as with
+     * addTransition.
+     * 
+     * @param builder the states, alphabet and transitions
+     * @return the DFA
+     * @throws IllegalArgumentException if a transition uses a symbol that is not
+     *                                  in the alphabet
+     */
+    public static DFA from(AutomatonBuilder builder) {
+        DFA dfa = new DFA();
+        for (char c : builder.getSymbols()) {
+            dfa.addSigma(c);
+        }
+        DFAState[] byId = new DFAState[builder.getStateCount()];
+        for (int q = 0; q < byId.length; q++) {
+            dfa.addState(builder.getName(q));
+            byId[q] = dfa.byName.get(builder.getName(q));
+            if (builder.isFinal(q)) {
+                dfa.setFinal(builder.getName(q));
+            }
+        }
+        if (builder.getStart() >= 0) {
+            dfa.setStart(builder.getName(builder.getStart()));
+        }
+        for (int i = 0; i < builder.getTransitionCount(); i++) {
+            char c = builder.getSymbol(i);
+            if (!dfa.alphabet.contains(c)) {
+                throw new IllegalArgumentException("symbol " + c + " is not in the alphabet");
+            }
+            dfa.delta.computeIfAbsent(byId[builder.getFrom(i)], s -> new HashMap<>()).put(c, byId[builder.getTo(i)]);
+        }
+        return dfa;
+    }
+
     @Override
     public boolean addState(String name) {
         // check states to prevent duplicate before creating and adding new state
-        if (!states.contains(getState(name))) {
-            DFAState s = new DFAState(name);
+        if (!byName.containsKey(name)) {
+            DFAState s = new DFAState(name, states.size());
+            byName.put(name, s);
+            compiled = null;
             return states.add(s);
         }
         return false;
@@ -49,6 +100,7 @@ public class DFA implements DFAInterface, Serializable {
         DFAState s = getState(name);
         // check for valid state before setting it as a final state
         if (states.contains(s)) {
+            compiled = null;
             s.setFinalState();
             return finalStates.add(s);
         }
@@ -60,15 +112,13 @@ public class DFA implements DFAInterface, Serializable {
         DFAState temp = getState(name);
         // check for valid state
         if (states.contains(temp)) {
-            // loop through all states to remove any previously set starting states before
-            // setting new start
-            states.forEach(state -> {
-                if (isStart(state.getName()) && !state.equals(temp)) {
-                    state.removeStartState();
-                }
-            });
+            // only the previous start state can have the start designation
+            if (startState != null && startState != temp) {
+                startState.removeStartState();
+            }
             temp.setStartState();
             startState = temp;
+            compiled = null;
             return true;
         }
         return false;
@@ -76,31 +126,220 @@ public class DFA implements DFAInterface, Serializable {
 
     @Override
     public void addSigma(char symbol) {
-        alphabet.add(symbol);
+        if (alphabet.add(symbol)) {
+            compiled = null;
+        }
     }
 
     @Override
     public boolean accepts(String s) {
-        // find set current state to start
-        DFAState current = startState;
-        // convert string to character array and loop through each character
-        for (char c : s.toCharArray()) {
-            // ensure each character is contained in the alphabet
-            if (!alphabet.contains(c)) {
-                return false;
+        return compile().accepts(s);
+    }
+
+    /**
+     * Compiles delta into a dense transition table, rows are state ids and
+     * columns are symbols in the order they were added to the alphabet. The table
+     * is cached until the DFA is modified again.
+     * 
+     * @return the compiled form of this DFA
+     */
+    public DFATable compile() {
+        if (compiled != null) {
+            return compiled;
+        }
+        char[] symbols = new char[alphabet.size()];
+        int i = 0;
+        for (char c : alphabet) {
+            symbols[i++] = c;
+        }
+        // merge the symbols every state treats the same into one column
+        AlphabetClasses.Refiner refiner = new AlphabetClasses.Refiner(symbols);
+        for (DFAState state : states) {
+            HashMap<Character, DFAState> transitions = delta.get(state);
+            if (transitions != null) {
+                for (Map.Entry<Character, DFAState> t : transitions.entrySet()) {
+                    // a swap with a symbol outside the alphabet leaves
+                    // transitions that no input can take
+                    if (alphabet.contains(t.getKey())) {
+                        refiner.move(t.getKey(), t.getValue().getId());
+                    }
+                }
             }
-            // find the transitions for the current state
-            HashMap<Character, DFAState> stateTransitions = delta.get(current);
-            // if the character is a transition for the state, retrieve the new state and
-            // set it as current
-            if (stateTransitions.containsKey(c)) {
-                current = stateTransitions.get(c);
-            } else {
-                return false;
+            refiner.nextState();
+        }
+        AlphabetClasses classes = refiner.finish();
+        int k = classes.getClassCount();
+        int[] table = new int[states.size() * k];
+        Arrays.fill(table, DFATable.DEAD);
+        boolean[] finals = new boolean[states.size()];
+        int start = startState == null ? DFATable.DEAD : startState.getId();
+        for (DFAState state : states) {
+            finals[state.getId()] = state.getFinalState();
+            HashMap<Character, DFAState> transitions = delta.get(state);
+            if (transitions != null) {
+                for (Map.Entry<Character, DFAState> t : transitions.entrySet()) {
+                    int column = classes.classOf(t.getKey());
+                    if (column != AlphabetClasses.NONE) {
+                        table[state.getId() * k + column] = t.getValue().getId();
+                    }
+                }
+            }
+        }
+        // fill the arrays first, the table may be published to other threads
+        compiled = new DFATable(start, classes, table, finals);
+        return compiled;
+    }
+
+    @Override
+    public BitSet acceptsAll(List<? extends CharSequence> inputs) {
+        // compile on this thread, workers only read the finished table
+        DFATable table = compile();
+        return ParallelBatch.acceptsAll(inputs, () -> new DFAMatcher(table), ForkJoinPool.commonPool());
+    }
+
+    @Override
+    public BitSet acceptsAll(Stream<? extends CharSequence> inputs) {
+        return acceptsAll(inputs.collect(Collectors.toList()));
+    }
+
+    /**
+     * Simulates the DFA on one long input, running chunks of it in parallel on
+     * the common fork/join pool. See SpeculativeRunner.
+     * 
+     * @param s the input, must not change during the run
+     * @return true if s is in the language of the DFA
+     */
+    public boolean acceptsParallel(CharSequence s) {
+        return new SpeculativeRunner(compile()).accepts(s);
+    }
+
+    @Override
+    public int search(CharSequence text, MatchListener listener) {
+        return searcher().search(text, listener);
+    }
+
+    @Override
+    public int search(CharSequence text, boolean overlapping, MatchListener listener) {
+        return searcher().search(text, overlapping, listener);
+    }
+
+    /**
+     * Creates a substring searcher for the DFA as it is now. Keep it to search
+     * many texts, it caches the reversed states it builds.
+     * 
+     * @return a new searcher
+     */
+    public DFASearcher searcher() {
+        return new DFASearcher(compile());
+    }
+
+    @Override
+    public FrozenDFA freeze() {
+        String[] names = new String[states.size()];
+        for (DFAState state : states) {
+            names[state.getId()] = state.getName();
+        }
+        return new FrozenDFA(compile(), names);
+    }
+
+    @Override
+    public DFA intersect(DFA other) {
+        return product(other, ProductOperation.INTERSECT);
+    }
+
+    @Override
+    public DFA union(DFA other) {
+        return product(other, ProductOperation.UNION);
+    }
+
+    @Override
+    public DFA difference(DFA other) {
+        return product(other, ProductOperation.DIFFERENCE);
+    }
+
+    @Override
+    public ProductMatcher productMatcher(DFA other, ProductOperation op) {
+        return new ProductMatcher(compile(), other.compile(), op);
+    }
+
+    @Override
+    public LanguageCheck equivalent(DFA other) {
+        return Bisimulation.equivalent(compile(), other.compile());
+    }
+
+    @Override
+    public LanguageCheck subsetOf(DFA other) {
+        return Bisimulation.subsetOf(compile(), other.compile());
+    }
+
+    /**
+     * Builds the reachable pairs of a product breadth first. Pair ids and
+     * builder ids agree, both count up from 0 in the order pairs are found.
+     */
+    private DFA product(DFA other, ProductOperation op) {
+        FrozenDFA first = freeze();
+        FrozenDFA second = other.freeze();
+        Product product = new Product(first.getTable(), second.getTable(), op);
+        AutomatonBuilder builder = new AutomatonBuilder();
+        char[] symbols = product.getSymbols();
+        for (char c : symbols) {
+            builder.addSymbol(c);
+        }
+        int start = product.start();
+        if (start == DFATable.DEAD) {
+            // the product accepts nothing, one trap state keeps it printable
+            builder.setStart(builder.state(pairName(first.getTable().getStart(), second.getTable().getStart(),
+                    first, second)));
+            return from(builder);
+        }
+        addPairNames(builder, product, first, second);
+        builder.setStart(start);
+        int[] row = new int[product.getColumnCount()];
+        for (int pair = 0; pair < product.size(); pair++) {
+            if (product.isFinal(pair)) {
+                builder.setFinal(pair);
+            }
+            for (int column = 0; column < row.length; column++) {
+                row[column] = product.next(pair, column);
+            }
+            addPairNames(builder, product, first, second);
+            for (char c : symbols) {
+                int to = row[product.columnOf(c)];
+                if (to != DFATable.DEAD) {
+                    builder.addTransition(pair, c, to);
+                }
+            }
+        }
+        return from(builder);
+    }
+
+    /**
+     * Names the pairs the builder does not have yet, see pairName
+     */
+    private static void addPairNames(AutomatonBuilder builder, Product product, FrozenDFA first,
+            FrozenDFA second) {
+        while (builder.getStateCount() < product.size()) {
+            int pair = builder.getStateCount();
+            String name = pairName(product.stateA(pair), product.stateB(pair), first, second);
+            // names with commas in them could collide
+            while (builder.state(name) != pair) {
+                name += "'";
             }
         }
-        // return whether the current state is a final state after consuming array
-        return current.getFinalState();
+    }
+
+    /**
+     * Names a pair "(p,q)" with "-" for a dead side, without whitespace so
+     * toString output parses again. Whitespace in the state names becomes '_'.
+     */
+    private static String pairName(int p, int q, FrozenDFA first, FrozenDFA second) {
+        return ("(" + (p == DFATable.DEAD ? "-" : first.nameOf(p)) + ","
+                + (q == DFATable.DEAD ? "-" : second.nameOf(q)) + ")").replaceAll("\\s", "_");
+    }
+
+    @Override
+    public DFAMatcher matcher() {
+        return new DFAMatcher(compile());
     }
 
     @Override
@@ -110,13 +349,7 @@ public class DFA implements DFAInterface, Serializable {
 
     @Override
     public DFAState getState(String name) {
-        // loop through all states until a matching state name is found and return that
-        // state, otherwise return null
-        for (DFAState state : states) {
-            if (state.getName().equals(name))
-                return state;
-        }
-        return null;
+        return byName.get(name);
     }
 
     @Override
@@ -136,6 +369,7 @@ public class DFA implements DFAInterface, Serializable {
         Character s = Character.valueOf(onSymb);
 
         if (from != null && to != null && alphabet.contains(onSymb)) {
+            compiled = null;
             // access delta's inner map locally to maintain memory integrity
             HashMap<Character, DFAState> transitions;
             // search transition table for the from state, if found get its transitions, if
@@ -161,52 +395,80 @@ public class DFA implements DFAInterface, Serializable {
 
     @Override
     public DFA swap(char symb1, char symb2) {
-        try {
-            // create a deep copy of this DFA by serialization
-            ByteArrayOutputStream bOut = new ByteArrayOutputStream();
-            ObjectOutputStream oOut = new ObjectOutputStream(bOut);
-            oOut.writeObject(this);
-            oOut.flush();
-            oOut.close();
-
-            ByteArrayInputStream bIn = new ByteArrayInputStream(bOut.toByteArray());
-            ObjectInputStream oIn = new ObjectInputStream(bIn);
-            // copy DFA to new memory addresses, no references to original
-            DFA newDFA = (DFA) oIn.readObject();
-            oIn.close();
-
-            for (DFAState state : newDFA.delta.keySet()) {
-                // access deltas inner map locally to ensure memory integrity
-                HashMap<Character, DFAState> transitions = newDFA.delta.get(state);
-                if (transitions.containsKey(symb1) || transitions.containsKey(symb2)) {
-                    DFAState state1 = transitions.get(symb1);
-                    DFAState state2 = transitions.get(symb2);
-
-                    // swap states for symb1
-                    if (state1 != null) {
-                        transitions.put(symb2, state1);
-                    } else {
-                        transitions.remove(symb2);
-                    }
+        return copy(symb1, symb2);
+    }
 
-                    if (state2 != null) {
-                        transitions.put(symb1, state2);
-                    } else {
-                        transitions.remove(symb1);
-                    }
-                }
-            }
-            return newDFA;
+    /**
+     * Creates a deep copy of this DFA with new state objects and the same
+     * alphabet, states and transitions
+     * 
+     * @return the copy
+     */
+    public DFA copy() {
+        return copy('\0', '\0');
+    }
 
-        } catch (IOException | ClassNotFoundException e) {
-            e.printStackTrace();
-            return null;
+    /**
+     * Copies this DFA structurally, exchanging symb1 and symb2 on every
+     * transition. The alphabet is copied unchanged, as the serialization copy
+     * this replaces did. Linear in the number of states and transitions.
+     * 
+     * @param symb1 symbol to exchange with symb2
+     * @param symb2 symbol to exchange with symb1
+     * @return the copy
+     */
+    private DFA copy(char symb1, char symb2) {
+        DFA copy = new DFA();
+        copy.alphabet.addAll(alphabet);
+        // states are added in order so every copy keeps its id
+        DFAState[] byId = new DFAState[states.size()];
+        for (DFAState state : states) {
+            copy.addState(state.getName());
+            DFAState s = copy.byName.get(state.getName());
+            byId[state.getId()] = s;
+            if (state.getFinalState()) {
+                s.setFinalState();
+                copy.finalStates.add(s);
+            }
         }
+        if (startState != null) {
+            copy.setStart(startState.getName());
+        }
+        for (Map.Entry<DFAState, HashMap<Character, DFAState>> row : delta.entrySet()) {
+            HashMap<Character, DFAState> transitions = new HashMap<>();
+            for (Map.Entry<Character, DFAState> t : row.getValue().entrySet()) {
+                char c = t.getKey();
+                transitions.put(c == symb1 ? symb2 : c == symb2 ? symb1 : c, byId[t.getValue().getId()]);
+            }
+            copy.delta.put(byId[row.getKey().getId()], transitions);
+        }
+        return copy;
+    }
+
+    /**
+     * Creates a view of this DFA with symb1 and symb2 exchanged. The view is the
+     * compiled table of this DFA with two columns relabeled, so it costs
+     * O(|Sigma|) and shares the transitions. Swapping the view again composes
+     * the relabelings. The view keeps the DFA as it was when it was created.
+     * 
+     * @param symb1 symbol to exchange with symb2
+     * @param symb2 symbol to exchange with symb1
+     * @return the swapped table
+     */
+    public DFATable swapView(char symb1, char symb2) {
+        return compile().swap(symb1, symb2);
+    }
+
+    @Override
+    public DFA minimize() {
+        return Hopcroft.minimize(compile(), new ArrayList<>(states));
     }
 
     @Override
     public String toString() {
-        sb.append(stringBuilderHelper("Q = " + states.toString()));
+        // a fresh builder per call, repeated calls must not accumulate
+        StringBuilder sb = new StringBuilder();
+        sb.append("Q = " + nameSet(states));
         sb.append(stringBuilderHelper("\nSigma = " + alphabet.toString()));
         sb.append("\ndelta =\n");
         for (char c : alphabet) {
@@ -214,16 +476,36 @@ public class DFA implements DFAInterface, Serializable {
         }
         states.forEach(state -> {
             sb.append("\n" + state.getName() + "\t");
+            Map<Character, DFAState> row = delta.get(state);
             for (char c : alphabet) {
-                sb.append(delta.get(state).get(c).toString() + "\t");
+                // a partial DFA, e.g. a product or a minimized one, has no
+                // transition to its dead state
+                DFAState to = row == null ? null : row.get(c);
+                sb.append((to == null ? "-" : to.toString()) + "\t");
             }
         });
         sb.append("\nq0 = " + startState.toString());
-        sb.append(stringBuilderHelper("\nF = " + finalStates.toString()) + "\n");
+        sb.append("\nF = " + nameSet(finalStates) + "\n");
 
         return sb.toString();
     }
 
+    /**
+     * Formats a set of states like stringBuilderHelper does, but keeps commas
+     * and brackets inside the names, e.g. of toDFA subsets
+     * 
+     * @param set the states
+     * 
+     * @return the names between braces
+     */
+    private static String nameSet(Set<DFAState> set) {
+        StringBuilder sb = new StringBuilder("{ ");
+        for (DFAState state : set) {
+            sb.append(state.getName()).append(' ');
+        }
+        return sb.append(set.isEmpty() ? " }" : "}").toString();
+    }
+
     /**
      * Helper method to format sets in toString by replacing brackets and commas
      * 
@@ -0,0 +1,116 @@
+package fa.dfa;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import fa.BinaryFormat;
+
+/**
+ * Writes DFAs in the binary format of BinaryFormat and loads them back as
+ * frozen DFAs. Loading reads the transition arrays with bulk copies straight
+ * into a DFATable, no state or transition objects are created.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+public final class DFAFormat {
+
+    private DFAFormat() {
+    }
+
+    /**
+     * Writes a DFA to a file, replacing the file if it exists
+     *
+     * @param dfa  the DFA to write
+     * @param file the file to write
+     * @throws IOException if writing fails
+     */
+    public static void write(DFA dfa, Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            write(dfa.freeze(), out);
+        }
+    }
+
+    /**
+     * Writes a DFA to a stream
+     *
+     * @param dfa the DFA to write
+     * @param out the stream, left open
+     * @throws IOException if writing fails
+     */
+    public static void write(FrozenDFA dfa, OutputStream out) throws IOException {
+        DFATable table = dfa.getTable();
+        int n = table.getStateCount();
+        // the file keeps one column per symbol, classes are found again on load
+        int k = table.getSymbolCount();
+        char[] symbols = new char[k];
+        for (int c = 0; c < k; c++) {
+            symbols[c] = table.symbolAt(c);
+        }
+        String[] names = new String[n];
+        boolean[] finals = new boolean[n];
+        int[] rowStart = new int[n * k + 1];
+        int[] targets = new int[n * k];
+        int size = 0;
+        for (int q = 0; q < n; q++) {
+            names[q] = dfa.nameOf(q);
+            finals[q] = table.isFinal(q);
+            for (int c = 0; c < k; c++) {
+                int r = table.step(q, symbols[c]);
+                if (r != DFATable.DEAD) {
+                    targets[size++] = r;
+                }
+                rowStart[q * k + c + 1] = size;
+            }
+        }
+        BinaryFormat.Output data = BinaryFormat.begin(out);
+        BinaryFormat.writeHead(data, BinaryFormat.KIND_DFA, table.getStart(), symbols, names, finals);
+        BinaryFormat.writeInts(data, rowStart, rowStart.length);
+        BinaryFormat.writeInts(data, targets, size);
+        BinaryFormat.finish(data);
+    }
+
+    /**
+     * Memory maps a DFA file and loads it
+     *
+     * @param file the file to load
+     * @return the DFA in the file
+     * @throws IOException if the file cannot be read or is not a valid DFA file
+     */
+    public static FrozenDFA load(Path file) throws IOException {
+        return read(BinaryFormat.map(file));
+    }
+
+    /**
+     * Loads a DFA from a buffer holding a whole file
+     *
+     * @param buffer the file, positioned at its start
+     * @return the DFA in the buffer
+     * @throws IOException if the buffer is not a valid DFA file
+     */
+    public static FrozenDFA read(ByteBuffer buffer) throws IOException {
+        BinaryFormat.verify(buffer);
+        BinaryFormat.Head head = BinaryFormat.readHead(buffer, BinaryFormat.KIND_DFA);
+        char[] symbols = head.getSymbols();
+        int n = head.getNames().length;
+        int k = symbols.length;
+        int[] rowStart = BinaryFormat.readInts(buffer);
+        int[] targets = BinaryFormat.readInts(buffer);
+        BinaryFormat.checkRows(rowStart, n * k, targets, n);
+        int[] table = new int[n * k];
+        Arrays.fill(table, DFATable.DEAD);
+        for (int cell = 0; cell < n * k; cell++) {
+            int count = rowStart[cell + 1] - rowStart[cell];
+            if (count > 1) {
+                throw new IOException("DFA file has more than one transition on a symbol");
+            }
+            if (count == 1) {
+                table[cell] = targets[rowStart[cell]];
+            }
+        }
+        return new FrozenDFA(DFATable.bySymbol(head.getStart(), symbols, table, head.getFinals()), head.getNames());
+    }
+}
@@ -1,6 +1,7 @@
 package fa.dfa;
 
 import fa.FAInterface;
+import fa.LanguageCheck;
 
 public interface DFAInterface extends FAInterface {
 
@@ -44,4 +45,75 @@ public interface DFAInterface extends FAInterface {
 	 */
 	public DFA swap(char symb1, char symb2);
 
+	/**
+	 * Creates the minimal DFA accepting the same language as this DFA.
+	 * Unreachable states are removed and equivalent states are merged, states
+	 * of the result are named after one of the states they merge.
+	 * 
+	 * @return a new minimal DFA
+	 */
+	public DFA minimize();
+
+	/**
+	 * Takes an immutable snapshot of this DFA that may be shared between
+	 * threads. Later changes to this DFA do not affect the snapshot.
+	 * 
+	 * @return the frozen DFA
+	 */
+	public FrozenDFA freeze();
+
+	/**
+	 * Builds the product DFA accepting what both this DFA and other accept.
+	 * Only pairs of states reachable from the pair of start states are kept.
+	 * 
+	 * @param other the other DFA
+	 * @return a new DFA over the union of both alphabets
+	 */
+	public DFA intersect(DFA other);
+
+	/**
+	 * Builds the product DFA accepting what this DFA or other accepts
+	 * 
+	 * @param other the other DFA
+	 * @return a new DFA over the union of both alphabets
+	 */
+	public DFA union(DFA other);
+
+	/**
+	 * Builds the product DFA accepting what this DFA accepts and other does not
+	 * 
+	 * @param other the other DFA
+	 * @return a new DFA over the union of both alphabets
+	 */
+	public DFA difference(DFA other);
+
+	/**
+	 * Creates a matcher for a product of this DFA and other that builds the
+	 * pairs of states it visits as it goes, without building the product DFA
+	 * 
+	 * @param other the other DFA
+	 * @param op    how the answers of both DFAs are combined
+	 * @return a new matcher in the pair of start states
+	 */
+	public ProductMatcher productMatcher(DFA other, ProductOperation op);
+
+	/**
+	 * Checks that this DFA and other accept the same language. Missing
+	 * transitions reject, and symbols outside an alphabet reject.
+	 * 
+	 * @param other the other DFA
+	 * @return the answer, with a shortest input accepted by only one of the
+	 *         DFAs if they differ
+	 */
+	public LanguageCheck equivalent(DFA other);
+
+	/**
+	 * Checks that every input this DFA accepts is accepted by other
+	 * 
+	 * @param other the other DFA
+	 * @return the answer, with a shortest input accepted by this DFA and not by
+	 *         other if there is one
+	 */
+	public LanguageCheck subsetOf(DFA other);
+
 }
@@ -0,0 +1,57 @@
+package fa.dfa;
+
+import fa.FAMatcher;
+
+/**
+ * Streaming matcher over a compiled DFA table, the only state kept between
+ * chunks is the current row of the table
+ * 
+ * @author James Hyle, Rebecca Berg
+ */
+public class DFAMatcher implements FAMatcher {
+
+    private final DFATable table;
+    private int state;
+
+    /**
+     * @param table the compiled DFA to run
+     */
+    public DFAMatcher(DFATable table) {
+        this.table = table;
+        this.state = table.getStart();
+    }
+
+    @Override
+    public DFAMatcher feed(CharSequence chunk) {
+        state = table.run(state, chunk, 0, chunk.length());
+        return this;
+    }
+
+    @Override
+    public DFAMatcher feed(char[] chunk, int off, int len) {
+        state = table.run(state, chunk, off, len);
+        return this;
+    }
+
+    @Override
+    public boolean isAccepting() {
+        return table.isFinal(state);
+    }
+
+    @Override
+    public boolean isDead() {
+        return state == DFATable.DEAD;
+    }
+
+    @Override
+    public void reset() {
+        state = table.getStart();
+    }
+
+    /**
+     * @return the current state id, or DFATable.DEAD
+     */
+    public int getState() {
+        return state;
+    }
+}
@@ -0,0 +1,124 @@
+package fa.dfa;
+
+import fa.Searcher;
+
+/**
+ * Substring search with a compiled DFA, see Searcher. The reversed automaton
+ * steps sets of DFA states backwards over the predecessors of every state,
+ * which are kept per column in CSR form. The forward runs are plain table
+ * steps.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+public final class DFASearcher extends Searcher {
+
+    private final DFATable table;
+    private final int words;
+    // the predecessors of state r on column c are
+    // preds[predStart[r * columnCount + c] .. predStart[... + 1])
+    private final int[] predStart;
+    private final int[] preds;
+    private final long[] finalSet;
+
+    /**
+     * Creates a searcher with the default cache budget
+     *
+     * @param table the compiled DFA
+     */
+    public DFASearcher(DFATable table) {
+        this(table, DEFAULT_BUDGET);
+    }
+
+    /**
+     * @param table        the compiled DFA
+     * @param memoryBudget the most bytes the cache of reversed states may use
+     */
+    public DFASearcher(DFATable table, long memoryBudget) {
+        super(Math.max(1, (table.getStateCount() + 63) >>> 6), table.getColumnCount(), memoryBudget);
+        this.table = table;
+        int n = table.getStateCount();
+        int k = table.getColumnCount();
+        this.words = Math.max(1, (n + 63) >>> 6);
+        this.predStart = new int[n * k + 1];
+        for (int q = 0; q < n; q++) {
+            for (int column = 0; column < k; column++) {
+                int r = table.next(q, column);
+                if (r != DFATable.DEAD) {
+                    predStart[r * k + column + 1]++;
+                }
+            }
+        }
+        for (int cell = 0; cell < n * k; cell++) {
+            predStart[cell + 1] += predStart[cell];
+        }
+        this.preds = new int[predStart[n * k]];
+        int[] fill = new int[n * k];
+        for (int q = 0; q < n; q++) {
+            for (int column = 0; column < k; column++) {
+                int r = table.next(q, column);
+                if (r != DFATable.DEAD) {
+                    int cell = r * k + column;
+                    preds[predStart[cell] + fill[cell]++] = q;
+                }
+            }
+        }
+        this.finalSet = new long[words];
+        for (int q = 0; q < n; q++) {
+            if (table.isFinal(q)) {
+                finalSet[q >>> 6] |= 1L << q;
+            }
+        }
+    }
+
+    @Override
+    protected int reverseColumn(char c) {
+        return table.columnOf(c);
+    }
+
+    @Override
+    protected void reverseStart(long[] dst) {
+        System.arraycopy(finalSet, 0, dst, 0, words);
+    }
+
+    @Override
+    protected void reverseMove(long[] from, int column, long[] to) {
+        System.arraycopy(finalSet, 0, to, 0, words);
+        int k = table.getColumnCount();
+        for (int w = 0; w < words; w++) {
+            long word = from[w];
+            while (word != 0) {
+                int r = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                int cell = r * k + column;
+                for (int j = predStart[cell]; j < predStart[cell + 1]; j++) {
+                    to[preds[j] >>> 6] |= 1L << preds[j];
+                }
+            }
+        }
+    }
+
+    @Override
+    protected boolean startsMatch(long[] set) {
+        int start = table.getStart();
+        return start != DFATable.DEAD && (set[start >>> 6] & (1L << start)) != 0;
+    }
+
+    @Override
+    protected int longest(CharSequence s, int from) {
+        int state = table.getStart();
+        int end = -1;
+        for (int i = from;; i++) {
+            if (table.isFinal(state)) {
+                end = i;
+            }
+            if (i == s.length()) {
+                return end;
+            }
+            state = table.step(state, s.charAt(i));
+            // stop once no match from here can end further on
+            if (state == DFATable.DEAD || !canFinish(i + 1, state)) {
+                return end;
+            }
+        }
+    }
+}
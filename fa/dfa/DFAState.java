@@ -6,6 +6,7 @@ public class DFAState extends State {
 
     private boolean isFinal;
     private boolean isStart;
+    private int id;
 
     /**
      * Constructor for a DFA state, initializes to non-start and non-final
@@ -13,9 +14,30 @@ public class DFAState extends State {
      * @param name is the label of state
      */
     public DFAState(String name) {
+        this(name, -1);
+    }
+
+    /**
+     * Constructor for a DFA state with a dense id, initializes to non-start and
+     * non-final
+     * 
+     * @param name is the label of state
+     * @param id   is the row of this state in the compiled transition table
+     */
+    public DFAState(String name, int id) {
         super(name);
         this.isStart = false;
         this.isFinal = false;
+        this.id = id;
+    }
+
+    /**
+     * Gets the dense id of this state, its insertion index in the DFA
+     * 
+     * @return the id of the state
+     */
+    public int getId() {
+        return this.id;
     }
 
     /**
@@ -0,0 +1,261 @@
+package fa.dfa;
+
+import java.util.Arrays;
+
+import fa.AlphabetClasses;
+
+/**
+ * Dense, immutable form of a DFA used for fast simulation. Every state is a row
+ * identified by its DFAState id and every alphabet class is a column, so a step
+ * is a single array read instead of boxed map lookups. Symbols on which every
+ * state behaves the same share a column, see AlphabetClasses, and are mapped to
+ * it by a lookup table indexed by the symbol. All fields are final and the
+ * arrays are complete before construction, so a table can be shared between
+ * threads once published.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+public final class DFATable {
+
+    /** Table entry for a missing transition, the input is rejected */
+    public static final int DEAD = -1;
+
+    private final int stateCount;
+    private final int columnCount;
+    private final int start;
+    // columnOf[c] is the column of symbol c, DEAD if c is not in the alphabet
+    private final int[] columnOf;
+    private final char[] symbols;
+    private final int[] table;
+    private final boolean[] finals;
+
+    /**
+     * Creates a table from already compiled arrays
+     *
+     * @param start   id of the start state or DEAD if there is none
+     * @param classes the alphabet and its classes, a class is a column
+     * @param table   row major transitions, table[state * classes + column]
+     * @param finals  true for every accepting state id
+     */
+    DFATable(int start, AlphabetClasses classes, int[] table, boolean[] finals) {
+        this.stateCount = finals.length;
+        this.columnCount = classes.getClassCount();
+        this.start = start;
+        this.symbols = new char[classes.getSymbolCount()];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = classes.symbolAt(i);
+        }
+        this.columnOf = classes.lookupTable();
+        this.table = table;
+        this.finals = finals;
+    }
+
+    /**
+     * Creates a table sharing the rows of base with its symbols relabeled
+     */
+    private DFATable(DFATable base, char[] symbols, int[] columnOf) {
+        this.stateCount = base.stateCount;
+        this.columnCount = base.columnCount;
+        this.start = base.start;
+        this.symbols = symbols;
+        this.columnOf = columnOf;
+        this.table = base.table;
+        this.finals = base.finals;
+    }
+
+    /**
+     * Compiles a table with one column per symbol, merging the columns of
+     * symbols every state treats the same
+     *
+     * @param start   id of the start state or DEAD if there is none
+     * @param symbols the symbol of every column of bySymbol
+     * @param bySymbol row major transitions, bySymbol[state * symbols + i]
+     * @param finals  true for every accepting state id
+     * @return the table indexed by class
+     */
+    static DFATable bySymbol(int start, char[] symbols, int[] bySymbol, boolean[] finals) {
+        int n = finals.length;
+        int k = symbols.length;
+        AlphabetClasses.Refiner refiner = new AlphabetClasses.Refiner(symbols);
+        for (int q = 0; q < n; q++) {
+            for (int i = 0; i < k; i++) {
+                refiner.move(symbols[i], bySymbol[q * k + i]);
+            }
+            refiner.nextState();
+        }
+        AlphabetClasses classes = refiner.finish();
+        int m = classes.getClassCount();
+        int[] table = new int[n * m];
+        for (int q = 0; q < n; q++) {
+            for (int i = 0; i < k; i++) {
+                table[q * m + classes.classOf(symbols[i])] = bySymbol[q * k + i];
+            }
+        }
+        return new DFATable(start, classes, table, finals);
+    }
+
+    /**
+     * Creates a view of this table with symbols a and b exchanged. Only the
+     * symbol lookup is copied, the rows are shared, so swapping a view again
+     * composes the two exchanges.
+     *
+     * @param a symbol to exchange with b
+     * @param b symbol to exchange with a
+     * @return the swapped table
+     */
+    public DFATable swap(char a, char b) {
+        if (a == b) {
+            return this;
+        }
+        int columnA = columnOf(a);
+        int columnB = columnOf(b);
+        char[] swapped = symbols.clone();
+        for (int i = 0; i < swapped.length; i++) {
+            if (swapped[i] == a) {
+                swapped[i] = b;
+            } else if (swapped[i] == b) {
+                swapped[i] = a;
+            }
+        }
+        int[] lookup = Arrays.copyOf(columnOf, Math.max(columnOf.length, Math.max(a, b) + 1));
+        Arrays.fill(lookup, columnOf.length, lookup.length, DEAD);
+        lookup[a] = columnB;
+        lookup[b] = columnA;
+        return new DFATable(this, swapped, lookup);
+    }
+
+    /**
+     * Simulates the table on input s
+     *
+     * @param s the input
+     * @return true if s is in the language of the DFA
+     */
+    public boolean accepts(CharSequence s) {
+        return isFinal(run(start, s, 0, s.length()));
+    }
+
+    /**
+     * Runs the table over part of an input
+     *
+     * @param state the state to start in
+     * @param s     the input
+     * @param from  index of the first symbol
+     * @param to    index after the last symbol
+     * @return the state reached, or DEAD
+     */
+    public int run(int state, CharSequence s, int from, int to) {
+        final int[] columnOf = this.columnOf;
+        final int[] table = this.table;
+        final int k = columnCount;
+        for (int i = from; i < to && state != DEAD; i++) {
+            char c = s.charAt(i);
+            // symbols outside the alphabet reject like a missing transition
+            if (c >= columnOf.length || columnOf[c] == DEAD) {
+                return DEAD;
+            }
+            state = table[state * k + columnOf[c]];
+        }
+        return state;
+    }
+
+    /**
+     * Runs the table over part of a char array
+     *
+     * @param state the state to start in
+     * @param s     the input
+     * @param off   index of the first symbol
+     * @param len   number of symbols
+     * @return the state reached, or DEAD
+     */
+    public int run(int state, char[] s, int off, int len) {
+        final int[] columnOf = this.columnOf;
+        final int[] table = this.table;
+        final int k = columnCount;
+        final int end = off + len;
+        for (int i = off; i < end && state != DEAD; i++) {
+            char c = s[i];
+            if (c >= columnOf.length || columnOf[c] == DEAD) {
+                return DEAD;
+            }
+            state = table[state * k + columnOf[c]];
+        }
+        return state;
+    }
+
+    /**
+     * Takes a single step of the table
+     *
+     * @param state the current state id
+     * @param c     the input symbol
+     * @return the next state id or DEAD
+     */
+    public int step(int state, char c) {
+        if (state == DEAD || c >= columnOf.length || columnOf[c] == DEAD) {
+            return DEAD;
+        }
+        return table[state * columnCount + columnOf[c]];
+    }
+
+    /**
+     * Takes a single step of the table by column
+     *
+     * @param state  the current state id
+     * @param column the column of the input symbol
+     * @return the next state id or DEAD
+     */
+    public int next(int state, int column) {
+        return table[state * columnCount + column];
+    }
+
+    /**
+     * @param c an input symbol
+     * @return the column of c, or DEAD if c is not in the alphabet
+     */
+    public int columnOf(char c) {
+        return c < columnOf.length ? columnOf[c] : DEAD;
+    }
+
+    /**
+     * @param i an index into the alphabet
+     * @return the symbol at that index
+     */
+    public char symbolAt(int i) {
+        return symbols[i];
+    }
+
+    /**
+     * @return the id of the start state, or DEAD if none was set
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * @param state a state id
+     * @return true if state is accepting
+     */
+    public boolean isFinal(int state) {
+        return state != DEAD && finals[state];
+    }
+
+    /**
+     * @return the number of rows of the table
+     */
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    /**
+     * @return the number of symbols in the alphabet
+     */
+    public int getSymbolCount() {
+        return symbols.length;
+    }
+
+    /**
+     * @return the number of columns of the table, one per alphabet class
+     */
+    public int getColumnCount() {
+        return columnCount;
+    }
+}
@@ -0,0 +1,134 @@
+package fa.dfa;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import fa.ParallelBatch;
+
+/**
+ * Immutable snapshot of a DFA. It is built from a compiled table and the state
+ * names, every field is final and nothing refers back to the DFA, so changing
+ * the DFA afterwards does not change the snapshot. Any number of threads may
+ * call accepts at the same time without locking.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+public final class FrozenDFA {
+
+    private final DFATable table;
+    // names[id] is the name of the state with that id
+    private final String[] names;
+    private final Map<String, Integer> ids;
+
+    /**
+     * @param table the compiled DFA
+     * @param names the name of every state in id order
+     */
+    FrozenDFA(DFATable table, String[] names) {
+        this.table = table;
+        this.names = names.clone();
+        Map<String, Integer> ids = new HashMap<>();
+        for (int id = 0; id < names.length; id++) {
+            ids.put(names[id], id);
+        }
+        this.ids = Map.copyOf(ids);
+    }
+
+    /**
+     * Creates a snapshot sharing the names of other with a different table
+     */
+    private FrozenDFA(FrozenDFA other, DFATable table) {
+        this.table = table;
+        this.names = other.names;
+        this.ids = other.ids;
+    }
+
+    /**
+     * Creates a snapshot with symbols a and b exchanged, sharing the transitions
+     * and names of this one
+     *
+     * @param a symbol to exchange with b
+     * @param b symbol to exchange with a
+     * @return the swapped snapshot
+     */
+    public FrozenDFA swap(char a, char b) {
+        return new FrozenDFA(this, table.swap(a, b));
+    }
+
+    /**
+     * Simulates the DFA on input s
+     *
+     * @param s the input
+     * @return true if s is in the language of the DFA
+     */
+    public boolean accepts(CharSequence s) {
+        return table.accepts(s);
+    }
+
+    /**
+     * Tests every input of a batch on the common fork/join pool
+     *
+     * @param inputs the inputs to test
+     * @return bit i is set if inputs.get(i) is accepted
+     */
+    public BitSet acceptsAll(List<? extends CharSequence> inputs) {
+        return ParallelBatch.acceptsAll(inputs, this::matcher, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @return a new matcher in the start state, owned by the calling thread
+     */
+    public DFAMatcher matcher() {
+        return new DFAMatcher(table);
+    }
+
+    /**
+     * @return the compiled table of the snapshot
+     */
+    public DFATable getTable() {
+        return table;
+    }
+
+    /**
+     * @param name a state name
+     * @return the id of the state, or DFATable.DEAD if there is no such state
+     */
+    public int idOf(String name) {
+        Integer id = ids.get(name);
+        return id == null ? DFATable.DEAD : id;
+    }
+
+    /**
+     * @param id a state id
+     * @return the name of the state
+     */
+    public String nameOf(int id) {
+        return names[id];
+    }
+
+    /**
+     * @param name a state name
+     * @return true if the state exists and is accepting
+     */
+    public boolean isFinal(String name) {
+        return table.isFinal(idOf(name));
+    }
+
+    /**
+     * @return the number of states
+     */
+    public int getStateCount() {
+        return names.length;
+    }
+
+    /**
+     * @return the number of alphabet classes, symbols every state treats the
+     *         same share one column of the table
+     */
+    public int getClassCount() {
+        return table.getColumnCount();
+    }
+}
@@ -0,0 +1,229 @@
+package fa.dfa;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hopcroft's partition refinement over a compiled DFA table. Everything is kept
+ * in int arrays indexed by state, so minimizing does not recurse and does not
+ * create an object per state.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+final class Hopcroft {
+
+    private Hopcroft() {
+    }
+
+    /**
+     * Builds the minimal DFA of a table. Unreachable states are dropped first,
+     * and missing transitions go to an implicit dead state that is left out of
+     * the result again, so the result is partial where the input was.
+     *
+     * @param t      the table to minimize
+     * @param states the states of the table in id order, for naming
+     * @return a new minimal DFA
+     */
+    static DFA minimize(DFATable t, List<DFAState> states) {
+        // refine over columns, symbols of one class always move together
+        int k = t.getColumnCount();
+        DFA result = new DFA();
+        for (int i = 0; i < t.getSymbolCount(); i++) {
+            result.addSigma(t.symbolAt(i));
+        }
+        if (t.getStart() == DFATable.DEAD) {
+            return result;
+        }
+
+        // number the reachable states in breadth first order
+        int n = t.getStateCount();
+        int[] index = new int[n];
+        Arrays.fill(index, -1);
+        int[] order = new int[n];
+        int m = 0;
+        order[m++] = t.getStart();
+        index[t.getStart()] = 0;
+        boolean partial = false;
+        for (int head = 0; head < m; head++) {
+            for (int c = 0; c < k; c++) {
+                int r = t.next(order[head], c);
+                if (r == DFATable.DEAD) {
+                    partial = true;
+                } else if (index[r] < 0) {
+                    index[r] = m;
+                    order[m++] = r;
+                }
+            }
+        }
+
+        // complete transition table over the reachable states and the dead state
+        int size = partial ? m + 1 : m;
+        int dead = partial ? m : -1;
+        int[] delta = new int[size * k];
+        boolean[] accepting = new boolean[size];
+        for (int i = 0; i < m; i++) {
+            accepting[i] = t.isFinal(order[i]);
+            for (int c = 0; c < k; c++) {
+                int r = t.next(order[i], c);
+                delta[i * k + c] = r == DFATable.DEAD ? dead : index[r];
+            }
+        }
+        if (partial) {
+            Arrays.fill(delta, dead * k, size * k, dead);
+        }
+
+        // inverse transitions, predecessors of q on c are
+        // inverse[inverseStart[c * size + q] .. inverseStart[c * size + q + 1])
+        int[] inverseStart = new int[k * size + 1];
+        for (int p = 0; p < size; p++) {
+            for (int c = 0; c < k; c++) {
+                inverseStart[c * size + delta[p * k + c] + 1]++;
+            }
+        }
+        for (int i = 1; i < inverseStart.length; i++) {
+            inverseStart[i] += inverseStart[i - 1];
+        }
+        int[] inverse = new int[size * k];
+        int[] cursor = Arrays.copyOf(inverseStart, inverseStart.length - 1);
+        for (int p = 0; p < size; p++) {
+            for (int c = 0; c < k; c++) {
+                inverse[cursor[c * size + delta[p * k + c]]++] = p;
+            }
+        }
+
+        // blocks are ranges of elems, the marked states of a block are moved to the
+        // front of its range
+        int[] elems = new int[size];
+        int[] loc = new int[size];
+        int[] blockOf = new int[size];
+        int[] first = new int[size];
+        int[] end = new int[size];
+        int[] marked = new int[size];
+        int finals = 0;
+        for (int q = 0; q < size; q++) {
+            if (accepting[q]) {
+                finals++;
+            }
+        }
+        int nextFinal = 0;
+        int nextOther = finals;
+        for (int q = 0; q < size; q++) {
+            int pos = accepting[q] ? nextFinal++ : nextOther++;
+            elems[pos] = q;
+            loc[q] = pos;
+        }
+        int blocks = 0;
+        // pending (block, symbol) splitters, every split adds k so this never overflows
+        int[] work = new int[size * k];
+        int workTop = 0;
+        if (finals == 0 || finals == size) {
+            first[0] = 0;
+            end[0] = size;
+            blocks = 1;
+        } else {
+            first[0] = 0;
+            end[0] = finals;
+            first[1] = finals;
+            end[1] = size;
+            blocks = 2;
+            for (int q = finals; q < size; q++) {
+                blockOf[elems[q]] = 1;
+            }
+            int smaller = finals <= size - finals ? 0 : 1;
+            for (int c = 0; c < k; c++) {
+                work[workTop++] = smaller * k + c;
+            }
+        }
+
+        int[] splitter = new int[size];
+        int[] touched = new int[size];
+        while (workTop > 0) {
+            int pair = work[--workTop];
+            int b = pair / k;
+            int c = pair % k;
+            // copy the splitter, marking may reorder its range
+            int length = end[b] - first[b];
+            System.arraycopy(elems, first[b], splitter, 0, length);
+            int touchedCount = 0;
+            for (int i = 0; i < length; i++) {
+                int q = splitter[i];
+                for (int j = inverseStart[c * size + q]; j < inverseStart[c * size + q + 1]; j++) {
+                    int p = inverse[j];
+                    int x = blockOf[p];
+                    int target = first[x] + marked[x];
+                    if (loc[p] < target) {
+                        continue;
+                    }
+                    if (marked[x] == 0) {
+                        touched[touchedCount++] = x;
+                    }
+                    // swap p to the end of the marked prefix
+                    int other = elems[target];
+                    elems[target] = p;
+                    elems[loc[p]] = other;
+                    loc[other] = loc[p];
+                    loc[p] = target;
+                    marked[x]++;
+                }
+            }
+            for (int i = 0; i < touchedCount; i++) {
+                int x = touched[i];
+                int split = first[x] + marked[x];
+                marked[x] = 0;
+                if (split == end[x]) {
+                    continue;
+                }
+                // the smaller half becomes the new block y
+                int y = blocks++;
+                if (split - first[x] <= end[x] - split) {
+                    first[y] = first[x];
+                    end[y] = split;
+                    first[x] = split;
+                } else {
+                    first[y] = split;
+                    end[y] = end[x];
+                    end[x] = split;
+                }
+                for (int j = first[y]; j < end[y]; j++) {
+                    blockOf[elems[j]] = y;
+                }
+                // y is the smaller half, whether or not (x, d) is still waiting
+                // splitting by y is enough
+                for (int d = 0; d < k; d++) {
+                    work[workTop++] = y * k + d;
+                }
+            }
+        }
+
+        // one state per block, named after its first state in breadth first order
+        int skip = partial && blockOf[dead] != blockOf[0] ? blockOf[dead] : -1;
+        String[] names = new String[blocks];
+        int[] representative = new int[blocks];
+        for (int i = 0; i < m; i++) {
+            int b = blockOf[i];
+            if (b != skip && names[b] == null) {
+                names[b] = states.get(order[i]).getName();
+                representative[b] = i;
+                result.addState(names[b]);
+                if (accepting[i]) {
+                    result.setFinal(names[b]);
+                }
+            }
+        }
+        result.setStart(names[blockOf[0]]);
+        for (int i = 0; i < m; i++) {
+            int b = blockOf[i];
+            if (b == skip || representative[b] != i) {
+                continue;
+            }
+            for (int j = 0; j < t.getSymbolCount(); j++) {
+                char c = t.symbolAt(j);
+                int to = blockOf[delta[i * k + t.columnOf(c)]];
+                if (to != skip) {
+                    result.addTransition(names[b], names[to], c);
+                }
+            }
+        }
+        return result;
+    }
+}
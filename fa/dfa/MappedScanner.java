@@ -0,0 +1,258 @@
+package fa.dfa;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.LongConsumer;
+
+/**
+ * Classifies every line of a file with a compiled DFA without creating
+ * strings. The file is memory mapped and the table is stepped directly over
+ * its bytes, each byte read as the char with the same value (ISO-8859-1), and
+ * the DFA goes back to its start state after every '\n'. The newline itself is
+ * not part of the line, and neither is a '\r' right before it, so files with
+ * CRLF line ends classify the same as with LF.
+ *
+ * Large files are split into segments at line boundaries and the segments are
+ * scanned in parallel. Offsets are reported while later segments are still
+ * being scanned, in file order.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+public final class MappedScanner {
+
+    /** Smallest segment worth its own task */
+    static final long MIN_SEGMENT = 1L << 20;
+    /**
+     * Size of the segments when offsets are reported. At most two segments per
+     * thread of the pool are scanned ahead of the consumer, so the offsets
+     * buffered at once are bounded by that window, not by the file size.
+     */
+    static final long STREAM_SEGMENT = 1L << 20;
+    // largest region mapped at once
+    private static final long MAX_MAPPING = 1L << 30;
+
+    private final DFATable table;
+    private final ForkJoinPool pool;
+    // column of every byte value, DEAD if not in the alphabet
+    private final int[] byteColumn;
+
+    /**
+     * Creates a scanner running on the common fork/join pool
+     *
+     * @param table the compiled DFA to run on every line
+     */
+    public MappedScanner(DFATable table) {
+        this(table, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param table the compiled DFA to run on every line
+     * @param pool  the pool scanning the segments
+     */
+    public MappedScanner(DFATable table, ForkJoinPool pool) {
+        this.table = table;
+        this.pool = pool;
+        this.byteColumn = new int[256];
+        for (int b = 0; b < 256; b++) {
+            byteColumn[b] = table.columnOf((char) b);
+        }
+    }
+
+    /**
+     * Counts the accepted lines of a file
+     *
+     * @param file the file to scan
+     * @return the number of lines the DFA accepts
+     * @throws IOException if the file cannot be read
+     */
+    public long count(Path file) throws IOException {
+        return scan(file, null);
+    }
+
+    /**
+     * Finds the accepted lines of a file
+     *
+     * @param file       the file to scan
+     * @param onAccepted receives the byte offset of the first byte of every
+     *                   accepted line in ascending order, may be null
+     * @return the number of lines the DFA accepts
+     * @throws IOException if the file cannot be read
+     */
+    public long scan(Path file, LongConsumer onAccepted) throws IOException {
+        Deque<Future<Segment>> running = new ArrayDeque<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (onAccepted == null) {
+                long[] bounds = segments(channel, size, Math.min(4L * pool.getParallelism(), size / MIN_SEGMENT));
+                long total = 0;
+                for (int i = 0; i + 1 < bounds.length; i++) {
+                    running.add(pool.submit(task(channel, bounds[i], bounds[i + 1], size, false)));
+                }
+                while (!running.isEmpty()) {
+                    total += running.poll().get().count;
+                }
+                return total;
+            }
+            // the offsets go to the consumer in file order, so only a window of
+            // small segments is scanned ahead and buffered at any time
+            long[] bounds = segments(channel, size, size / STREAM_SEGMENT);
+            int window = 2 * pool.getParallelism();
+            long total = 0;
+            int next = 0;
+            while (next + 1 < bounds.length || !running.isEmpty()) {
+                while (next + 1 < bounds.length && running.size() < window) {
+                    running.add(pool.submit(task(channel, bounds[next], bounds[next + 1], size, true)));
+                    next++;
+                }
+                Segment segment = running.poll().get();
+                total += segment.count;
+                for (int i = 0; i < segment.offsetCount; i++) {
+                    onAccepted.accept(segment.offsets[i]);
+                }
+            }
+            return total;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("scan interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            // after a failure, or a consumer that threw
+            running.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private Callable<Segment> task(FileChannel channel, long from, long to, long size, boolean keepOffsets) {
+        return () -> scanSegment(channel, from, to, size, keepOffsets);
+    }
+
+    /**
+     * Splits a file into segments that each start at the beginning of a line
+     *
+     * @param segments the number of segments wanted, fewer are made if lines
+     *                 are long
+     * @return ascending segment bounds, the first is 0 and the last is size
+     */
+    private long[] segments(FileChannel channel, long size, long segments) throws IOException {
+        int wanted = (int) Math.max(1, Math.min(Integer.MAX_VALUE - 1, segments));
+        long[] bounds = new long[wanted + 1];
+        int count = 1;
+        ByteBuffer probe = ByteBuffer.allocate(8192);
+        for (int i = 1; i < wanted; i++) {
+            long start = lineStart(channel, Math.max(bounds[count - 1], size / wanted * i), size, probe);
+            if (start > bounds[count - 1] && start < size) {
+                bounds[count++] = start;
+            }
+        }
+        bounds[count++] = size;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    /**
+     * Finds the first line start at or after pos
+     */
+    private static long lineStart(FileChannel channel, long pos, long size, ByteBuffer probe) throws IOException {
+        if (pos == 0) {
+            return 0;
+        }
+        // the byte before pos tells whether pos already starts a line
+        long at = pos - 1;
+        while (at < size) {
+            probe.clear();
+            int read = channel.read(probe, at);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return at + i + 1;
+                }
+            }
+            at += read;
+        }
+        return size;
+    }
+
+    /**
+     * Scans the lines of [from, to), mapping at most MAX_MAPPING bytes at a time
+     */
+    private Segment scanSegment(FileChannel channel, long from, long to, long size, boolean keepOffsets)
+            throws IOException {
+        Segment segment = new Segment(keepOffsets);
+        final int[] byteColumn = this.byteColumn;
+        final DFATable table = this.table;
+        final int start = table.getStart();
+        int state = start;
+        // whether the last byte was '\r' and the state before it. both survive
+        // the end of a mapping, the '\n' may start the next one
+        boolean afterReturn = false;
+        int beforeReturn = start;
+        long lineStart = from;
+        for (long base = from; base < to; base += MAX_MAPPING) {
+            int length = (int) Math.min(MAX_MAPPING, to - base);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, base, length);
+            for (int i = 0; i < length; i++) {
+                int b = buffer.get(i) & 0xFF;
+                if (b == '\n') {
+                    // a CRLF line ends before the '\r'
+                    if (table.isFinal(afterReturn ? beforeReturn : state)) {
+                        segment.add(lineStart);
+                    }
+                    state = start;
+                    afterReturn = false;
+                    lineStart = base + i + 1;
+                    continue;
+                }
+                afterReturn = b == '\r';
+                beforeReturn = state;
+                if (state != DFATable.DEAD) {
+                    int column = byteColumn[b];
+                    state = column == DFATable.DEAD ? DFATable.DEAD : table.next(state, column);
+                }
+            }
+        }
+        // a last line without a newline at the end of the file
+        if (to == size && lineStart < size && table.isFinal(state)) {
+            segment.add(lineStart);
+        }
+        return segment;
+    }
+
+    /**
+     * Accepted lines of one segment
+     */
+    private static final class Segment {
+
+        private long count;
+        private long[] offsets;
+        private int offsetCount;
+
+        Segment(boolean keepOffsets) {
+            this.offsets = keepOffsets ? new long[64] : null;
+        }
+
+        void add(long offset) {
+            count++;
+            if (offsets != null) {
+                if (offsetCount == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, offsetCount * 2);
+                }
+                offsets[offsetCount++] = offset;
+            }
+        }
+    }
+}
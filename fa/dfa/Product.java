@@ -0,0 +1,238 @@
+package fa.dfa;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Product of two compiled DFAs whose pair states are numbered as they are
+ * first reached. The alphabet is the union of both alphabets. Symbols that
+ * fall in the same column of both tables behave the same in the product, so
+ * they share a product column.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+final class Product {
+
+    private final DFATable a;
+    private final DFATable b;
+    private final ProductOperation op;
+    // the union alphabet, the symbols of a first
+    private final char[] symbols;
+    // columnOf[c] is the product column of symbol c, DEAD if in neither alphabet
+    private final int[] columnOf;
+    // columnA[column] and columnB[column] are the columns in a and b, or DEAD
+    private final int[] columnA;
+    private final int[] columnB;
+    // symbolOf[column] is the first symbol of that column
+    private final char[] symbolOf;
+
+    // pair id to its states, ids[key(p, q)] is the id of pair (p, q)
+    private final Map<Long, Integer> ids = new HashMap<>();
+    private int[] pairA = new int[16];
+    private int[] pairB = new int[16];
+    private int size;
+
+    Product(DFATable a, DFATable b, ProductOperation op) {
+        this.a = a;
+        this.b = b;
+        this.op = op;
+        char[] symbols = new char[a.getSymbolCount() + b.getSymbolCount()];
+        int count = 0;
+        for (int i = 0; i < a.getSymbolCount(); i++) {
+            symbols[count++] = a.symbolAt(i);
+        }
+        for (int i = 0; i < b.getSymbolCount(); i++) {
+            if (a.columnOf(b.symbolAt(i)) == DFATable.DEAD) {
+                symbols[count++] = b.symbolAt(i);
+            }
+        }
+        this.symbols = Arrays.copyOf(symbols, count);
+
+        int maxSymbol = -1;
+        for (char c : this.symbols) {
+            maxSymbol = Math.max(maxSymbol, c);
+        }
+        this.columnOf = new int[maxSymbol + 1];
+        Arrays.fill(columnOf, DFATable.DEAD);
+        Map<Long, Integer> columns = new HashMap<>();
+        int[] columnA = new int[count];
+        int[] columnB = new int[count];
+        char[] symbolOf = new char[count];
+        for (char c : this.symbols) {
+            int ca = a.columnOf(c);
+            int cb = b.columnOf(c);
+            Integer column = columns.get(key(ca, cb));
+            if (column == null) {
+                column = columns.size();
+                columns.put(key(ca, cb), column);
+                columnA[column] = ca;
+                columnB[column] = cb;
+                symbolOf[column] = c;
+            }
+            columnOf[c] = column;
+        }
+        this.columnA = Arrays.copyOf(columnA, columns.size());
+        this.columnB = Arrays.copyOf(columnB, columns.size());
+        this.symbolOf = Arrays.copyOf(symbolOf, columns.size());
+    }
+
+    private static long key(int p, int q) {
+        return ((long) (p + 1) << 32) | (q + 1);
+    }
+
+    /**
+     * @return the pair of start states, or DFATable.DEAD if the product is empty
+     */
+    int start() {
+        return pair(a.getStart(), b.getStart());
+    }
+
+    /**
+     * Steps a pair, numbering the successor if it is new
+     *
+     * @param pair   a pair id
+     * @param column a product column
+     * @return the successor pair, or DFATable.DEAD if it cannot accept
+     */
+    int next(int pair, int column) {
+        int p = pairA[pair];
+        int q = pairB[pair];
+        int ca = columnA[column];
+        int cb = columnB[column];
+        int r = p == DFATable.DEAD || ca == DFATable.DEAD ? DFATable.DEAD : a.next(p, ca);
+        int s = q == DFATable.DEAD || cb == DFATable.DEAD ? DFATable.DEAD : b.next(q, cb);
+        return pair(r, s);
+    }
+
+    /**
+     * @return the id of pair (p, q), or DFATable.DEAD if the pair is left out
+     */
+    private int pair(int p, int q) {
+        if (!op.alive(p, q)) {
+            return DFATable.DEAD;
+        }
+        Integer id = ids.get(key(p, q));
+        if (id == null) {
+            if (size == pairA.length) {
+                pairA = Arrays.copyOf(pairA, size * 2);
+                pairB = Arrays.copyOf(pairB, size * 2);
+            }
+            pairA[size] = p;
+            pairB[size] = q;
+            id = size++;
+            ids.put(key(p, q), id);
+        }
+        return id;
+    }
+
+    /**
+     * @param pair a pair id
+     * @return true if the product accepts in that pair
+     */
+    boolean isFinal(int pair) {
+        return pair != DFATable.DEAD && op.accepts(a.isFinal(pairA[pair]), b.isFinal(pairB[pair]));
+    }
+
+    /**
+     * @param c a symbol
+     * @return the product column of c, or DFATable.DEAD if c is in neither
+     *         alphabet
+     */
+    int columnOf(char c) {
+        return c < columnOf.length ? columnOf[c] : DFATable.DEAD;
+    }
+
+    /**
+     * Finds a shortest input the product accepts. Pairs are numbered as they are
+     * first reached and expanded in id order, which is breadth first, so the
+     * first accepting pair is one of the closest to the start.
+     *
+     * @return the input, or null if the product accepts nothing
+     */
+    String shortestAccepted() {
+        int start = start();
+        if (start == DFATable.DEAD) {
+            return null;
+        }
+        // parent[pair] and via[pair] are the pair and column it was found from
+        int[] parent = new int[16];
+        int[] via = new int[16];
+        parent[start] = -1;
+        for (int pair = 0; pair < size; pair++) {
+            if (isFinal(pair)) {
+                StringBuilder path = new StringBuilder();
+                for (int p = pair; parent[p] >= 0; p = parent[p]) {
+                    path.append(symbolOf[via[p]]);
+                }
+                return path.reverse().toString();
+            }
+            for (int column = 0; column < columnA.length; column++) {
+                int before = size;
+                int to = next(pair, column);
+                if (size > before) {
+                    if (to >= parent.length) {
+                        parent = Arrays.copyOf(parent, parent.length * 2);
+                        via = Arrays.copyOf(via, via.length * 2);
+                    }
+                    parent[to] = pair;
+                    via[to] = column;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param column a product column
+     * @return the column of the first DFA, or DFATable.DEAD
+     */
+    int columnA(int column) {
+        return columnA[column];
+    }
+
+    /**
+     * @param column a product column
+     * @return the column of the second DFA, or DFATable.DEAD
+     */
+    int columnB(int column) {
+        return columnB[column];
+    }
+
+    /**
+     * @return the number of product columns
+     */
+    int getColumnCount() {
+        return columnA.length;
+    }
+
+    /**
+     * @return the union alphabet
+     */
+    char[] getSymbols() {
+        return symbols.clone();
+    }
+
+    /**
+     * @return the number of pairs numbered so far
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param pair a pair id
+     * @return the state of the first DFA, or DFATable.DEAD
+     */
+    int stateA(int pair) {
+        return pairA[pair];
+    }
+
+    /**
+     * @param pair a pair id
+     * @return the state of the second DFA, or DFATable.DEAD
+     */
+    int stateB(int pair) {
+        return pairB[pair];
+    }
+}
@@ -0,0 +1,103 @@
+package fa.dfa;
+
+import java.util.Arrays;
+
+import fa.FAMatcher;
+
+/**
+ * Streaming matcher for the product of two DFAs. It steps both tables together
+ * in one pass over the input, and only the pairs of states the input actually
+ * visits are numbered and given transitions, which are kept for later input.
+ * A pair that can no longer be accepted by the operation is dead.
+ *
+ * Like DFAMatcher, a matcher holds mutable state and belongs to one thread.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+public final class ProductMatcher implements FAMatcher {
+
+    // transition not yet computed
+    private static final int UNKNOWN = -2;
+
+    private final Product product;
+    private final int columns;
+    private final int start;
+    // transitions[pair * columns + column], UNKNOWN until first taken
+    private int[] transitions;
+    private int state;
+
+    /**
+     * @param a  the first DFA
+     * @param b  the second DFA
+     * @param op how the answers of a and b are combined
+     */
+    public ProductMatcher(DFATable a, DFATable b, ProductOperation op) {
+        this.product = new Product(a, b, op);
+        this.columns = product.getColumnCount();
+        this.start = product.start();
+        this.transitions = new int[Math.max(16, product.size()) * columns];
+        Arrays.fill(transitions, UNKNOWN);
+        this.state = start;
+    }
+
+    @Override
+    public ProductMatcher feed(CharSequence chunk) {
+        for (int i = 0; i < chunk.length() && state != DFATable.DEAD; i++) {
+            state = step(chunk.charAt(i));
+        }
+        return this;
+    }
+
+    @Override
+    public ProductMatcher feed(char[] chunk, int off, int len) {
+        final int end = off + len;
+        for (int i = off; i < end && state != DFATable.DEAD; i++) {
+            state = step(chunk[i]);
+        }
+        return this;
+    }
+
+    /**
+     * Takes the transition of the current pair on c, computing it on first use
+     */
+    private int step(char c) {
+        int column = product.columnOf(c);
+        if (column == DFATable.DEAD) {
+            return DFATable.DEAD;
+        }
+        int cell = state * columns + column;
+        int to = transitions[cell];
+        if (to == UNKNOWN) {
+            to = product.next(state, column);
+            if (product.size() * columns > transitions.length) {
+                int old = transitions.length;
+                transitions = Arrays.copyOf(transitions, Math.max(old * 2, product.size() * columns));
+                Arrays.fill(transitions, old, transitions.length, UNKNOWN);
+            }
+            transitions[cell] = to;
+        }
+        return to;
+    }
+
+    @Override
+    public boolean isAccepting() {
+        return product.isFinal(state);
+    }
+
+    @Override
+    public boolean isDead() {
+        return state == DFATable.DEAD;
+    }
+
+    @Override
+    public void reset() {
+        state = start;
+    }
+
+    /**
+     * @return the number of pairs of states visited so far
+     */
+    public int getPairCount() {
+        return product.size();
+    }
+}
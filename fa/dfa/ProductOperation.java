@@ -0,0 +1,56 @@
+package fa.dfa;
+
+/**
+ * How a product of two DFAs combines their answers. A side without a
+ * transition on a symbol is dead from then on and rejects.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+public enum ProductOperation {
+
+    /** Accepts what both DFAs accept */
+    INTERSECT,
+    /** Accepts what either DFA accepts */
+    UNION,
+    /** Accepts what the first DFA accepts and the second does not */
+    DIFFERENCE,
+    /** Accepts what exactly one of the DFAs accepts */
+    SYMMETRIC_DIFFERENCE;
+
+    /**
+     * @param a true if the first DFA accepts
+     * @param b true if the second DFA accepts
+     * @return true if the product accepts
+     */
+    public boolean accepts(boolean a, boolean b) {
+        switch (this) {
+        case INTERSECT:
+            return a && b;
+        case UNION:
+            return a || b;
+        case DIFFERENCE:
+            return a && !b;
+        default:
+            return a != b;
+        }
+    }
+
+    /**
+     * Tells whether a pair of states can still lead to acceptance as far as the
+     * dead sides show, pairs that cannot are left out of the product
+     *
+     * @param a state of the first DFA or DFATable.DEAD
+     * @param b state of the second DFA or DFATable.DEAD
+     * @return true if the pair is kept
+     */
+    boolean alive(int a, int b) {
+        switch (this) {
+        case INTERSECT:
+            return a != DFATable.DEAD && b != DFATable.DEAD;
+        case DIFFERENCE:
+            return a != DFATable.DEAD;
+        default:
+            return a != DFATable.DEAD || b != DFATable.DEAD;
+        }
+    }
+}
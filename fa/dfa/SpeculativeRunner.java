@@ -0,0 +1,241 @@
+package fa.dfa;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs a compiled DFA over one very long input on several cores. The input is
+ * cut into chunks and every chunk after the first is run from every state it
+ * could start in, which gives a state to state map per chunk. The maps are
+ * then composed left to right, which is one lookup per chunk.
+ *
+ * Two things keep a chunk close to the cost of a serial run. A chunk can only
+ * start in a target of the symbol just before it, so only those states are
+ * tried. And the runs of a chunk are stepped together and merged as soon as
+ * two of them reach the same state, after which they cost one step between
+ * them. Most DFAs merge all runs within a few symbols.
+ *
+ * A runner only reads its table, so it may be shared between threads.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+public final class SpeculativeRunner {
+
+    /** Default smallest chunk worth its own task */
+    public static final int MIN_CHUNK = 1 << 16;
+
+    private final DFATable table;
+    private final ForkJoinPool pool;
+    private final int minChunk;
+    // starts[column] are the distinct targets of that column in ascending order
+    private final int[][] starts;
+
+    /**
+     * Creates a runner on the common fork/join pool
+     *
+     * @param table the compiled DFA
+     */
+    public SpeculativeRunner(DFATable table) {
+        this(table, ForkJoinPool.commonPool(), MIN_CHUNK);
+    }
+
+    /**
+     * @param table    the compiled DFA
+     * @param pool     the pool running the chunks
+     * @param minChunk the fewest symbols a chunk may have, inputs shorter than
+     *                 two chunks are run serially
+     */
+    public SpeculativeRunner(DFATable table, ForkJoinPool pool, int minChunk) {
+        if (minChunk < 1) {
+            throw new IllegalArgumentException("chunks need at least one symbol");
+        }
+        this.table = table;
+        this.pool = pool;
+        this.minChunk = minChunk;
+        int n = table.getStateCount();
+        int k = table.getColumnCount();
+        this.starts = new int[k][];
+        boolean[] seen = new boolean[n];
+        int[] list = new int[n];
+        for (int column = 0; column < k; column++) {
+            int size = 0;
+            for (int q = 0; q < n; q++) {
+                int r = table.next(q, column);
+                if (r != DFATable.DEAD && !seen[r]) {
+                    seen[r] = true;
+                    list[size++] = r;
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                seen[list[i]] = false;
+            }
+            Arrays.sort(list, 0, size);
+            starts[column] = Arrays.copyOf(list, size);
+        }
+    }
+
+    /**
+     * Simulates the DFA on input s
+     *
+     * @param s the input, must not change during the run
+     * @return true if s is in the language of the DFA
+     */
+    public boolean accepts(CharSequence s) {
+        return table.isFinal(run(s));
+    }
+
+    /**
+     * Runs the DFA over a whole input from its start state
+     *
+     * @param s the input, must not change during the run
+     * @return the state reached, or DFATable.DEAD
+     */
+    public int run(CharSequence s) {
+        int length = s.length();
+        int chunks = (int) Math.min(4L * pool.getParallelism(), length / minChunk);
+        if (chunks < 2 || table.getStart() == DFATable.DEAD) {
+            return table.run(table.getStart(), s, 0, length);
+        }
+        int[] bounds = new int[chunks + 1];
+        for (int i = 1; i <= chunks; i++) {
+            bounds[i] = (int) ((long) length * i / chunks);
+        }
+        ChunkMap[] maps = new ChunkMap[chunks];
+        pool.invoke(new Task(s, bounds, maps, 0, chunks));
+
+        // compose the maps, every map holds the state the previous one ends in
+        int state = maps[0].end(table.getStart());
+        for (int i = 1; i < chunks && state != DFATable.DEAD; i++) {
+            state = maps[i].end(state);
+        }
+        return state;
+    }
+
+    /**
+     * Runs one chunk from every state it could start in
+     */
+    private ChunkMap map(CharSequence s, int from, int to) {
+        int[] candidates;
+        if (from == 0) {
+            candidates = new int[] { table.getStart() };
+        } else {
+            int column = table.columnOf(s.charAt(from - 1));
+            // no run survives the symbol before the chunk
+            if (column == DFATable.DEAD) {
+                return new ChunkMap(new int[0], new int[0]);
+            }
+            candidates = starts[column];
+        }
+        int m = candidates.length;
+        // lane[l] is the state of run l, owner[j] is the run of candidate j
+        int[] lane = candidates.clone();
+        int[] owner = new int[m];
+        for (int j = 0; j < m; j++) {
+            owner[j] = j;
+        }
+        int lanes = m;
+        // runAt[q] is the run in state q during a merge, -1 if none
+        int[] runAt = new int[table.getStateCount()];
+        Arrays.fill(runAt, -1);
+        int[] remap = new int[m];
+        int i = from;
+        while (i < to && lanes > 1) {
+            int column = table.columnOf(s.charAt(i++));
+            if (column == DFATable.DEAD) {
+                lanes = 0;
+                break;
+            }
+            boolean merged = false;
+            int kept = 0;
+            for (int l = 0; l < lanes; l++) {
+                int r = table.next(lane[l], column);
+                if (r == DFATable.DEAD) {
+                    remap[l] = -1;
+                    merged = true;
+                } else if (runAt[r] >= 0) {
+                    remap[l] = runAt[r];
+                    merged = true;
+                } else {
+                    runAt[r] = kept;
+                    remap[l] = kept;
+                    lane[kept++] = r;
+                }
+            }
+            for (int l = 0; l < kept; l++) {
+                runAt[lane[l]] = -1;
+            }
+            if (merged) {
+                for (int j = 0; j < m; j++) {
+                    owner[j] = owner[j] < 0 ? -1 : remap[owner[j]];
+                }
+            }
+            lanes = kept;
+        }
+        // one run left, finish it without bookkeeping
+        if (lanes == 1) {
+            lane[0] = table.run(lane[0], s, i, to);
+        }
+        int[] ends = new int[m];
+        for (int j = 0; j < m; j++) {
+            ends[j] = owner[j] < 0 || lanes == 0 ? DFATable.DEAD : lane[owner[j]];
+        }
+        return new ChunkMap(candidates, ends);
+    }
+
+    /**
+     * The state every candidate start of a chunk ends in
+     */
+    private static final class ChunkMap {
+
+        // ascending candidate starts
+        private final int[] starts;
+        private final int[] ends;
+
+        ChunkMap(int[] starts, int[] ends) {
+            this.starts = starts;
+            this.ends = ends;
+        }
+
+        /**
+         * @param state a state the chunk starts in
+         * @return the state it ends in, or DFATable.DEAD
+         */
+        int end(int state) {
+            int j = Arrays.binarySearch(starts, state);
+            return j < 0 ? DFATable.DEAD : ends[j];
+        }
+    }
+
+    /**
+     * Maps the chunks from..to, splitting in halves
+     */
+    private final class Task extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final CharSequence s;
+        private final int[] bounds;
+        private final ChunkMap[] maps;
+        private final int from;
+        private final int to;
+
+        Task(CharSequence s, int[] bounds, ChunkMap[] maps, int from, int to) {
+            this.s = s;
+            this.bounds = bounds;
+            this.maps = maps;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                maps[from] = map(s, bounds[from], bounds[from + 1]);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Task(s, bounds, maps, from, mid), new Task(s, bounds, maps, mid, to));
+        }
+    }
+}
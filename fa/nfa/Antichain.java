@@ -0,0 +1,207 @@
+package fa.nfa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fa.LanguageCheck;
+
+/**
+ * Antichain checks of inclusion and universality that never determinize. The
+ * search runs breadth first over macro-states: a state of the first NFA paired
+ * with a set of states of the second, or a set alone for universality. Sets are
+ * epsilon-closed bitsets from the engines.
+ *
+ * A macro-state whose set contains the set of another one with the same state
+ * can only accept more, so it cannot fail where the smaller one does not. Such
+ * subsumed macro-states are pruned when found, and ones already stored are
+ * dropped when a smaller one arrives. The stored macro-states thus form an
+ * antichain. The search stops at the first macro-state that fails and follows
+ * parents back to the start for a counterexample.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+final class Antichain {
+
+    // first NFA state of a universality node
+    private static final int NONE = -1;
+
+    private final NFAEngine a;
+    private final NFAEngine b;
+    // the symbol of every column of the search, columnA and columnB in the engines
+    private final char[] symbols;
+    private final int[] columnA;
+    private final int[] columnB;
+
+    // node i is (state[i], sets[i]), found from parent[i] on symbols[via[i]]
+    private final List<long[]> sets = new ArrayList<>();
+    private int[] state = new int[64];
+    private int[] parent = new int[64];
+    private int[] via = new int[64];
+    private boolean[] dropped = new boolean[64];
+    // stored nodes of every first NFA state, the antichain
+    private final Map<Integer, List<Integer>> stored = new HashMap<>();
+    private long explored;
+    private long pruned;
+
+    /**
+     * @param a        engine of the first NFA, null for universality
+     * @param b        engine of the second NFA
+     * @param alphabet the symbols to search over
+     */
+    private Antichain(NFAEngine a, NFAEngine b, char[] alphabet) {
+        this.a = a;
+        this.b = b;
+        // symbols in the same column of both engines lead to the same nodes
+        Map<Long, Integer> columns = new HashMap<>();
+        char[] symbols = new char[alphabet.length];
+        int[] columnA = new int[alphabet.length];
+        int[] columnB = new int[alphabet.length];
+        for (char c : alphabet) {
+            int ca = a == null ? 0 : a.columnOf(c);
+            int cb = b.columnOf(c);
+            long key = ((long) (ca + 1) << 32) | (cb + 1);
+            if (!columns.containsKey(key)) {
+                int column = columns.size();
+                columns.put(key, column);
+                symbols[column] = c;
+                columnA[column] = ca;
+                columnB[column] = cb;
+            }
+        }
+        this.symbols = Arrays.copyOf(symbols, columns.size());
+        this.columnA = Arrays.copyOf(columnA, columns.size());
+        this.columnB = Arrays.copyOf(columnB, columns.size());
+    }
+
+    /**
+     * Checks that every input nfa a accepts is accepted by nfa b
+     *
+     * @param a        engine of the first NFA
+     * @param b        engine of the second NFA
+     * @param alphabet the alphabet of the first NFA
+     * @return the answer, with an input accepted by a and not by b if any
+     */
+    static LanguageCheck inclusion(NFAEngine a, NFAEngine b, char[] alphabet) {
+        return new Antichain(a, b, alphabet).run();
+    }
+
+    /**
+     * Checks that an NFA accepts every input over its alphabet
+     *
+     * @param b        engine of the NFA
+     * @param alphabet its alphabet
+     * @return the answer, with an input it rejects if any
+     */
+    static LanguageCheck universality(NFAEngine b, char[] alphabet) {
+        return new Antichain(null, b, alphabet).run();
+    }
+
+    private LanguageCheck run() {
+        long[] startB = new long[b.words()];
+        b.start(startB);
+        if (a == null) {
+            add(NONE, startB, -1, -1);
+        } else {
+            long[] startA = new long[a.words()];
+            a.start(startA);
+            for (int p : members(startA)) {
+                add(p, startB, -1, -1);
+            }
+        }
+        long[] singleton = a == null ? null : new long[a.words()];
+        long[] nextA = a == null ? null : new long[a.words()];
+        for (int node = 0; node < sets.size(); node++) {
+            if (dropped[node]) {
+                continue;
+            }
+            explored++;
+            int p = state[node];
+            long[] set = sets.get(node);
+            boolean accepted = b.isFinal(set);
+            if (a == null ? !accepted : a.isFinalState(p) && !accepted) {
+                return new LanguageCheck(path(node), explored, pruned);
+            }
+            for (int column = 0; column < symbols.length; column++) {
+                long[] nextB = new long[b.words()];
+                b.move(set, columnB[column], nextB);
+                if (a == null) {
+                    add(NONE, nextB, node, column);
+                    continue;
+                }
+                Arrays.fill(singleton, 0L);
+                Bits.set(singleton, p);
+                if (a.move(singleton, columnA[column], nextA)) {
+                    for (int q : members(nextA)) {
+                        add(q, nextB, node, column);
+                    }
+                }
+            }
+        }
+        return new LanguageCheck(null, explored, pruned);
+    }
+
+    /**
+     * Adds node (p, set) unless a stored node with state p has a subset of set,
+     * dropping stored nodes with state p whose set contains set
+     */
+    private void add(int p, long[] set, int from, int column) {
+        List<Integer> chain = stored.computeIfAbsent(p, k -> new ArrayList<>());
+        for (int other : chain) {
+            if (Bits.subset(sets.get(other), set)) {
+                pruned++;
+                return;
+            }
+        }
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            int other = chain.get(i);
+            if (Bits.subset(set, sets.get(other))) {
+                // not yet expanded nodes are skipped, expanded ones cost nothing more
+                dropped[other] = true;
+                chain.remove(i);
+                pruned++;
+            }
+        }
+        int id = sets.size();
+        if (id == state.length) {
+            state = Arrays.copyOf(state, id * 2);
+            parent = Arrays.copyOf(parent, id * 2);
+            via = Arrays.copyOf(via, id * 2);
+            dropped = Arrays.copyOf(dropped, id * 2);
+        }
+        sets.add(set);
+        state[id] = p;
+        parent[id] = from;
+        via[id] = column;
+        chain.add(id);
+    }
+
+    /**
+     * @return the input leading from a start node to node
+     */
+    private String path(int node) {
+        StringBuilder sb = new StringBuilder();
+        for (int n = node; parent[n] >= 0; n = parent[n]) {
+            sb.append(symbols[via[n]]);
+        }
+        return sb.reverse().toString();
+    }
+
+    /**
+     * @return the states of a set in ascending order
+     */
+    private static int[] members(long[] set) {
+        int[] ids = new int[Bits.cardinality(set)];
+        int i = 0;
+        for (int w = 0; w < set.length; w++) {
+            long word = set[w];
+            while (word != 0) {
+                ids[i++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return ids;
+    }
+}
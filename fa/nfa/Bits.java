@@ -0,0 +1,75 @@
+package fa.nfa;
+
+/**
+ * Helpers for state sets stored as long[] bitsets, bit i is the state with id i
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+final class Bits {
+
+    private Bits() {
+    }
+
+    /**
+     * @param bits number of bits needed
+     * @return number of longs to hold that many bits
+     */
+    static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    static void set(long[] set, int i) {
+        set[i >>> 6] |= 1L << i;
+    }
+
+    static boolean get(long[] set, int i) {
+        return (set[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * ORs words of src, starting at offset, into dst
+     */
+    static void or(long[] dst, long[] src, int offset) {
+        for (int w = 0; w < dst.length; w++) {
+            dst[w] |= src[offset + w];
+        }
+    }
+
+    static int cardinality(long[] set) {
+        int count = 0;
+        for (long word : set) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    static boolean isEmpty(long[] set) {
+        for (long word : set) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean intersects(long[] a, long[] b) {
+        for (int w = 0; w < a.length; w++) {
+            if ((a[w] & b[w]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if every state of a is in b
+     */
+    static boolean subset(long[] a, long[] b) {
+        for (int w = 0; w < a.length; w++) {
+            if ((a[w] & ~b[w]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
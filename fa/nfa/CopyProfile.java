@@ -0,0 +1,62 @@
+package fa.nfa;
+
+/**
+ * Summary of the number of NFA copies alive at every position of an input.
+ * Position 0 is the epsilon-closure of the start state and position i is the
+ * set reached after the first i symbols.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+public final class CopyProfile {
+
+    private final int positions;
+    private final int max;
+    private final int maxPosition;
+    private final long total;
+
+    /**
+     * @param positions   the number of positions, input length + 1
+     * @param max         the largest count
+     * @param maxPosition the first position with the largest count
+     * @param total       the sum of all counts
+     */
+    CopyProfile(int positions, int max, int maxPosition, long total) {
+        this.positions = positions;
+        this.max = max;
+        this.maxPosition = maxPosition;
+        this.total = total;
+    }
+
+    /**
+     * @return the number of positions profiled, the input length + 1
+     */
+    public int getPositions() {
+        return positions;
+    }
+
+    /**
+     * @return the largest number of copies at any position, same as maxCopies
+     */
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * @return the first position where the largest number of copies is alive
+     */
+    public int getMaxPosition() {
+        return maxPosition;
+    }
+
+    /**
+     * @return the mean number of copies over all positions
+     */
+    public double getMean() {
+        return (double) total / positions;
+    }
+
+    @Override
+    public String toString() {
+        return "max = " + max + " at " + maxPosition + ", mean = " + getMean() + " over " + positions;
+    }
+}
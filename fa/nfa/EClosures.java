@@ -0,0 +1,290 @@
+package fa.nfa;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Epsilon-closure of every state of an NFA, computed once with a strongly
+ * connected component pass over the e edges. States in one component share a
+ * closure, and components are finished sinks first, so each closure is the
+ * union of its members and the closures of the components it points to.
+ *
+ * A closure is a bitset as wide as the NFA. When those bitsets could take more
+ * than NFAEngine.DENSE_LIMIT longs, closures are kept as sorted id lists
+ * instead, like the successors of a sparse engine.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+final class EClosures {
+
+    // rows[id] is the closure bitset of the state with that id, null when the
+    // closure is only the state itself or the closures are sparse
+    private final long[][] rows;
+    // lists[id] are the ids in the closure in ascending order, null when the
+    // closure is only the state itself or the closures are dense
+    private final int[][] lists;
+
+    /**
+     * Computes the closures of the given states
+     *
+     * @param states all states of the NFA in id order
+     */
+    EClosures(List<NFAState> states) {
+        // epsilon edges as adjacency arrays
+        int[][] edges = new int[states.size()][];
+        for (NFAState state : states) {
+            Set<NFAState> to = state.getTransitions('e');
+            int[] targets = new int[to == null ? 0 : to.size()];
+            int i = 0;
+            if (to != null) {
+                for (NFAState t : to) {
+                    targets[i++] = t.getId();
+                }
+            }
+            edges[state.getId()] = targets;
+        }
+        this.rows = isDense(edges.length) ? new long[edges.length][] : null;
+        this.lists = rows == null ? new int[edges.length][] : null;
+        compute(edges, rows, lists);
+    }
+
+    /**
+     * Computes the closures of epsilon edges stored in CSR form, the edges of
+     * state q are targets[start[q] .. start[q + 1])
+     *
+     * @param stateCount the number of states
+     * @param start      where the edges of every state begin, stateCount + 1
+     *                   entries
+     * @param targets    the target of every edge
+     */
+    EClosures(int stateCount, int[] start, int[] targets) {
+        int[][] edges = new int[stateCount][];
+        for (int q = 0; q < stateCount; q++) {
+            edges[q] = Arrays.copyOfRange(targets, start[q], start[q + 1]);
+        }
+        this.rows = isDense(stateCount) ? new long[stateCount][] : null;
+        this.lists = rows == null ? new int[stateCount][] : null;
+        compute(edges, rows, lists);
+    }
+
+    /**
+     * @return true if a bitset closure for every state fits in DENSE_LIMIT
+     */
+    private static boolean isDense(int stateCount) {
+        return (long) stateCount * Bits.words(stateCount) <= NFAEngine.DENSE_LIMIT;
+    }
+
+    /**
+     * Runs the component pass over the epsilon edges
+     *
+     * @param edges the epsilon targets of every state
+     * @param rows  receives the closure bitsets, null for sparse closures
+     * @param lists receives the closure lists, null for dense closures
+     */
+    private static void compute(int[][] edges, long[][] rows, int[][] lists) {
+        int n = edges.length;
+        int words = Bits.words(n);
+        // stamp[u] == component + 1 when u is already in its list
+        int[] stamp = rows == null ? new int[n] : null;
+        int components = 0;
+        int[] list = new int[16];
+        int[] index = new int[n];
+        int[] low = new int[n];
+        Arrays.fill(index, -1);
+        boolean[] onStack = new boolean[n];
+        boolean[] finished = new boolean[n];
+        int[] sccStack = new int[n];
+        int sccTop = 0;
+        // explicit call stack of (state, next edge) so deep chains can't overflow
+        int[] callState = new int[n];
+        int[] callEdge = new int[n];
+        int counter = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] != -1) {
+                continue;
+            }
+            int top = 0;
+            callState[top] = root;
+            callEdge[top] = 0;
+            index[root] = low[root] = counter++;
+            sccStack[sccTop++] = root;
+            onStack[root] = true;
+
+            while (top >= 0) {
+                int v = callState[top];
+                if (callEdge[top] < edges[v].length) {
+                    int w = edges[v][callEdge[top]++];
+                    if (index[w] == -1) {
+                        index[w] = low[w] = counter++;
+                        sccStack[sccTop++] = w;
+                        onStack[w] = true;
+                        top++;
+                        callState[top] = w;
+                        callEdge[top] = 0;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+                // v is done, pop a finished component if v is its root
+                if (low[v] == index[v]) {
+                    int first = sccTop;
+                    do {
+                        sccTop--;
+                        onStack[sccStack[sccTop]] = false;
+                    } while (sccStack[sccTop] != v);
+                    // a lone state without epsilon edges is its own closure
+                    if (first - sccTop == 1 && edges[v].length == 0) {
+                        finished[v] = true;
+                    } else if (rows == null) {
+                        int mark = ++components;
+                        int size = 0;
+                        for (int i = sccTop; i < first; i++) {
+                            stamp[sccStack[i]] = mark;
+                            list = NFAEngine.append(list, size++, sccStack[i]);
+                        }
+                        for (int i = sccTop; i < first; i++) {
+                            for (int w : edges[sccStack[i]]) {
+                                if (!finished[w]) {
+                                    continue;
+                                }
+                                if (lists[w] == null) {
+                                    if (stamp[w] != mark) {
+                                        stamp[w] = mark;
+                                        list = NFAEngine.append(list, size++, w);
+                                    }
+                                    continue;
+                                }
+                                for (int u : lists[w]) {
+                                    if (stamp[u] != mark) {
+                                        stamp[u] = mark;
+                                        list = NFAEngine.append(list, size++, u);
+                                    }
+                                }
+                            }
+                        }
+                        int[] closure = Arrays.copyOf(list, size);
+                        Arrays.sort(closure);
+                        for (int i = sccTop; i < first; i++) {
+                            lists[sccStack[i]] = closure;
+                            finished[sccStack[i]] = true;
+                        }
+                    } else {
+                        long[] closure = new long[words];
+                        for (int i = sccTop; i < first; i++) {
+                            Bits.set(closure, sccStack[i]);
+                        }
+                        // every component reachable from this one is already finished
+                        for (int i = sccTop; i < first; i++) {
+                            for (int w : edges[sccStack[i]]) {
+                                if (finished[w]) {
+                                    or(closure, rows, w);
+                                }
+                            }
+                        }
+                        for (int i = sccTop; i < first; i++) {
+                            rows[sccStack[i]] = closure;
+                            finished[sccStack[i]] = true;
+                        }
+                    }
+                }
+                top--;
+                if (top >= 0) {
+                    int parent = callState[top];
+                    low[parent] = Math.min(low[parent], low[v]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Wraps already computed closures
+     */
+    private EClosures(long[][] rows, int[][] lists) {
+        this.rows = rows;
+        this.lists = lists;
+    }
+
+    /**
+     * Covers states that were added after these closures were computed. New
+     * states have no epsilon edges yet, or the closures would have been thrown
+     * away, so each one is its own closure and no old closure changes.
+     *
+     * @param stateCount the current number of states
+     * @return closures covering stateCount states
+     */
+    EClosures extend(int stateCount) {
+        if (rows == null) {
+            return new EClosures(null, Arrays.copyOf(lists, stateCount));
+        }
+        return new EClosures(Arrays.copyOf(rows, stateCount), null);
+    }
+
+    /**
+     * @return the number of states covered
+     */
+    int size() {
+        return rows == null ? lists.length : rows.length;
+    }
+
+    /**
+     * ORs the closure of a state into dst, which must be at least as wide as the
+     * closure
+     *
+     * @param dst the set to add to
+     * @param id  the state to close
+     */
+    void addTo(long[] dst, int id) {
+        if (rows == null) {
+            if (lists[id] == null) {
+                Bits.set(dst, id);
+                return;
+            }
+            for (int u : lists[id]) {
+                Bits.set(dst, u);
+            }
+            return;
+        }
+        or(dst, rows, id);
+    }
+
+    private static void or(long[] dst, long[][] rows, int id) {
+        long[] row = rows[id];
+        if (row == null) {
+            Bits.set(dst, id);
+            return;
+        }
+        for (int w = 0; w < row.length; w++) {
+            dst[w] |= row[w];
+        }
+    }
+
+    /**
+     * Gets the ids in the closure of a state. The array may be shared with
+     * other states and must not be modified.
+     *
+     * @param id the state to close
+     * @return the ids in the closure in ascending order
+     */
+    int[] members(int id) {
+        if (rows == null) {
+            return lists[id] == null ? new int[] { id } : lists[id];
+        }
+        long[] row = rows[id];
+        if (row == null) {
+            return new int[] { id };
+        }
+        int[] out = new int[Bits.cardinality(row)];
+        int i = 0;
+        for (int w = 0; w < row.length; w++) {
+            long word = row[w];
+            while (word != 0) {
+                out[i++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,165 @@
+package fa.nfa;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+
+import fa.ParallelBatch;
+
+/**
+ * Immutable snapshot of an NFA. It keeps the engine tables, the
+ * epsilon-closures and the state names, none of which are modified after they
+ * are built, and nothing refers back to the NFA. Every call works on scratch
+ * sets of its own, so any number of threads may call accepts, maxCopies and
+ * eClosure at the same time without locking.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+public final class FrozenNFA {
+
+    // only its tables are read, the scratch sets of this engine are never used
+    private final NFAEngine engine;
+    private final EClosures closures;
+    // names[id] is the name of the state with that id
+    private final String[] names;
+    private final Map<String, Integer> ids;
+
+    /**
+     * @param engine   the engine of the NFA
+     * @param closures the closures the engine was built with
+     * @param names    the name of every state in id order
+     */
+    FrozenNFA(NFAEngine engine, EClosures closures, String[] names) {
+        this.engine = engine.fork();
+        this.closures = closures;
+        this.names = names.clone();
+        Map<String, Integer> ids = new HashMap<>();
+        for (int id = 0; id < names.length; id++) {
+            ids.put(names[id], id);
+        }
+        this.ids = Map.copyOf(ids);
+    }
+
+    /**
+     * Simulates the NFA on input s
+     *
+     * @param s the input
+     * @return true if any copy of the NFA ends in a final state
+     */
+    public boolean accepts(CharSequence s) {
+        return engine.fork().accepts(s);
+    }
+
+    /**
+     * Determines the maximum number of NFA copies alive while processing s
+     *
+     * @param s the input
+     * @return the largest number of states in any set reached on s
+     */
+    public int maxCopies(CharSequence s) {
+        return engine.fork().maxCopies(s);
+    }
+
+    /**
+     * Records the number of copies alive at every position of s
+     *
+     * @param s      the input
+     * @param counts receives s.length() + 1 counts
+     * @return the max, its first position and the mean of the counts
+     */
+    public CopyProfile copyProfile(CharSequence s, int[] counts) {
+        return engine.fork().copyProfile(s, counts);
+    }
+
+    /**
+     * Streams the number of copies alive at every position of s
+     *
+     * @param s      the input
+     * @param counts receives s.length() + 1 counts in order
+     * @return the max, its first position and the mean of the counts
+     */
+    public CopyProfile copyProfile(CharSequence s, IntConsumer counts) {
+        return engine.fork().copyProfile(s, counts);
+    }
+
+    /**
+     * Tests every input of a batch on the common fork/join pool
+     *
+     * @param inputs the inputs to test
+     * @return bit i is set if inputs.get(i) is accepted
+     */
+    public BitSet acceptsAll(List<? extends CharSequence> inputs) {
+        return ParallelBatch.acceptsAll(inputs, this::matcher, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @return a new matcher in the start state, owned by the calling thread
+     */
+    public NFAMatcher matcher() {
+        return new NFAMatcher(engine);
+    }
+
+    /**
+     * Gets the epsilon-closure of a state
+     *
+     * @param id a state id
+     * @return the ids in the closure in ascending order
+     */
+    public int[] eClosure(int id) {
+        return closures.members(id).clone();
+    }
+
+    /**
+     * Gets the epsilon-closure of a state by name
+     *
+     * @param name a state name
+     * @return the names in the closure in id order
+     */
+    public List<String> eClosure(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            return List.of();
+        }
+        int[] closure = eClosure(id);
+        String[] out = new String[closure.length];
+        for (int i = 0; i < closure.length; i++) {
+            out[i] = names[closure[i]];
+        }
+        return List.of(out);
+    }
+
+    /**
+     * @param name a state name
+     * @return the id of the state, or -1 if there is no such state
+     */
+    public int idOf(String name) {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param id a state id
+     * @return the name of the state
+     */
+    public String nameOf(int id) {
+        return names[id];
+    }
+
+    /**
+     * @return the number of states
+     */
+    public int getStateCount() {
+        return names.length;
+    }
+
+    /**
+     * @return the number of alphabet classes, symbols every state treats the
+     *         same share one column of the engine tables
+     */
+    public int getClassCount() {
+        return engine.getColumnCount();
+    }
+}
@@ -0,0 +1,243 @@
+package fa.nfa;
+
+import java.util.Arrays;
+
+import fa.SubsetTable;
+
+/**
+ * Determinizes an NFA on the fly while simulating it. Every state set reached
+ * becomes a cached DFA state and every (state, symbol) step that was computed
+ * once is a table lookup afterwards, so only the part of the DFA the inputs
+ * actually touch is built.
+ *
+ * The cache is bounded by a memory budget. When it is full every cached state
+ * is flushed and building starts over from the current set. If the cache is
+ * flushed again before it paid for itself, the rest of that input falls back to
+ * plain set simulation.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+public final class LazyDFA {
+
+    private static final int UNKNOWN = -2;
+    private static final int DEAD = -1;
+    // an input must take this many steps per cached state between flushes to
+    // keep using the cache
+    private static final int MIN_STEPS_PER_STATE = 10;
+
+    private final NFAEngine engine;
+    private final int words;
+    private final int columnCount;
+    private final int capacity;
+    private final SubsetTable states;
+    // transitions[id * columnCount + column], UNKNOWN until first computed
+    private int[] transitions;
+    private boolean[] finals;
+    private int startId;
+
+    private final long[] set;
+    private final long[] next;
+
+    private long hits;
+    private long misses;
+    private long flushes;
+    private long fallbacks;
+
+    /**
+     * @param engine       the NFA to determinize
+     * @param memoryBudget the most bytes the cache may use
+     */
+    LazyDFA(NFAEngine engine, long memoryBudget) {
+        this.engine = engine;
+        this.words = engine.words();
+        this.columnCount = engine.getColumnCount();
+        long perState = SubsetTable.bytesPerSet(words) + 4L * columnCount + 1;
+        // always room for the current state and one successor
+        this.capacity = (int) Math.max(2, Math.min(Integer.MAX_VALUE / Math.max(columnCount, 1) / 2,
+                memoryBudget / perState));
+        // every array is capped at the capacity so the budget is an upper bound
+        this.states = new SubsetTable(words, capacity);
+        this.transitions = new int[Math.min(16, capacity) * columnCount];
+        this.finals = new boolean[Math.min(16, capacity)];
+        this.set = new long[words];
+        this.next = new long[words];
+        this.startId = -1;
+    }
+
+    /**
+     * @return the engine this cache was built from
+     */
+    NFAEngine engine() {
+        return engine;
+    }
+
+    /**
+     * Simulates the NFA on input s, building DFA states as needed
+     *
+     * @param s the input
+     * @return true if s is in the language of the NFA
+     */
+    public boolean accepts(CharSequence s) {
+        if (startId < 0) {
+            engine.start(set);
+            startId = states.find(set);
+            if (startId < 0) {
+                if (states.size() >= capacity) {
+                    flush();
+                }
+                startId = add(set);
+            }
+        }
+        int state = startId;
+        long stepsSinceFlush = 0;
+        long flushesBefore = flushes;
+        for (int i = 0; i < s.length(); i++) {
+            int column = engine.columnOf(s.charAt(i));
+            if (column < 0) {
+                return false;
+            }
+            int to = transitions[state * columnCount + column];
+            if (to != UNKNOWN) {
+                hits++;
+                if (to == DEAD) {
+                    return false;
+                }
+                state = to;
+                stepsSinceFlush++;
+                continue;
+            }
+            misses++;
+            states.get(state, set);
+            if (!engine.move(set, column, next)) {
+                transitions[state * columnCount + column] = DEAD;
+                return false;
+            }
+            to = states.find(next);
+            if (to < 0) {
+                if (states.size() >= capacity) {
+                    // a second flush on one input before the cache paid off
+                    boolean thrashing = flushes > flushesBefore
+                            && stepsSinceFlush < (long) MIN_STEPS_PER_STATE * capacity;
+                    flush();
+                    if (thrashing) {
+                        fallbacks++;
+                        return simulate(s, i + 1);
+                    }
+                    stepsSinceFlush = 0;
+                    // the old state is gone, only the new one is cached
+                    state = add(next);
+                    continue;
+                }
+                to = add(next);
+            }
+            transitions[state * columnCount + column] = to;
+            state = to;
+            stepsSinceFlush++;
+        }
+        return finals[state];
+    }
+
+    /**
+     * Finishes an input with set simulation, starting from the set in next
+     *
+     * @param s    the input
+     * @param from index of the first symbol not yet consumed
+     * @return true if s is in the language of the NFA
+     */
+    private boolean simulate(CharSequence s, int from) {
+        long[] current = next;
+        long[] successors = set;
+        for (int i = from; i < s.length(); i++) {
+            if (!engine.move(current, engine.columnOf(s.charAt(i)), successors)) {
+                return false;
+            }
+            long[] temp = current;
+            current = successors;
+            successors = temp;
+        }
+        return engine.isFinal(current);
+    }
+
+    /**
+     * Caches a new DFA state
+     *
+     * @param subset the state set, not yet in the cache
+     * @return the id of the new state
+     */
+    private int add(long[] subset) {
+        int id = states.intern(subset);
+        if (finals.length <= id) {
+            finals = Arrays.copyOf(finals, Math.min(finals.length * 2, capacity));
+            transitions = Arrays.copyOf(transitions, finals.length * columnCount);
+        }
+        finals[id] = engine.isFinal(subset);
+        Arrays.fill(transitions, id * columnCount, (id + 1) * columnCount, UNKNOWN);
+        return id;
+    }
+
+    /**
+     * Drops every cached state
+     */
+    private void flush() {
+        states.clear();
+        startId = -1;
+        flushes++;
+    }
+
+    /**
+     * @return the number of steps answered from the cache
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of steps that had to be computed from the NFA
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of times the cache was full and flushed
+     */
+    public long getFlushes() {
+        return flushes;
+    }
+
+    /**
+     * @return the number of inputs finished with plain set simulation
+     */
+    public long getFallbacks() {
+        return fallbacks;
+    }
+
+    /**
+     * @return the number of DFA states currently cached
+     */
+    public int getCachedStates() {
+        return states.size();
+    }
+
+    /**
+     * @return the bytes the cache currently holds, at most the memory budget
+     *         unless the budget is too small for two states
+     */
+    public long getMemory() {
+        return states.memory() + 4L * transitions.length + finals.length;
+    }
+
+    /**
+     * @return the most DFA states the memory budget allows
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Zeroes the hit, miss, flush and fallback counters
+     */
+    public void resetCounters() {
+        hits = misses = flushes = fallbacks = 0;
+    }
+}
@@ -1,6 +1,17 @@
 package fa.nfa;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import fa.AutomatonBuilder;
+import fa.LanguageCheck;
+import fa.MatchListener;
+import fa.ParallelBatch;
+import fa.SubsetTable;
+import fa.dfa.DFA;
 
 /**
  * State machine that accepts or rejects input strings over a input language
@@ -11,24 +22,126 @@ public class NFA implements NFAInterface  {
 
     final short STATESSIZE = 10;
     final short ALPHABETSIZE = 10;
-    StringBuilder sb = new StringBuilder();
 
     private Set<NFAState> states;
+    // index of states by name, states keeps the insertion order
+    private Map<String, NFAState> byName;
     private NFAState startState;
     private Set<NFAState> finalStates;
     private Set<Character> alphabet;
+    // states indexed by their id
+    private List<NFAState> byId;
+    // bitset engine used by accepts and maxCopies, rebuilt after any change to the NFA
+    private NFAEngine engine;
+    // epsilon-closures of all states, only recomputed after a new e transition
+    private EClosures closures;
+    // memory budget of the lazy DFA cache in bytes, 0 when accepts simulates sets
+    private long lazyBudget;
+    private LazyDFA lazy;
 
     public NFA() {
         this.states = new LinkedHashSet<>(STATESSIZE);
+        this.byName = new HashMap<>(STATESSIZE);
         this.finalStates = new LinkedHashSet<>(STATESSIZE);
         this.alphabet = new LinkedHashSet<>(ALPHABETSIZE);
+        this.byId = new ArrayList<>(STATESSIZE);
+    }
+
+    /**
+     * Builds an NFA from a bulk builder. States get the builder's ids and every
+     * state gets its transitions in compact form directly, so no per transition
+     * sets are created. Transitions on e are epsilon transitions.
+     * 
+     * @param builder the states, alphabet and transitions
+     * @return the NFA
+     * @throws IllegalArgumentException if a transition uses a symbol that is not
+     *                                  in the alphabet
+     */
+    public static NFA from(AutomatonBuilder builder) {
+        NFA nfa = new NFA();
+        for (char c : builder.getSymbols()) {
+            nfa.addSigma(c);
+        }
+        int n = builder.getStateCount();
+        for (int q = 0; q < n; q++) {
+            nfa.addState(builder.getName(q));
+            if (builder.isFinal(q)) {
+                nfa.setFinal(builder.getName(q));
+            }
+        }
+        if (builder.getStart() >= 0) {
+            nfa.setStart(builder.getName(builder.getStart()));
+        }
+
+        // compact states keep their symbols sorted, so columns are in char order
+        BitSet used = new BitSet();
+        int edges = builder.getTransitionCount();
+        for (int i = 0; i < edges; i++) {
+            char c = builder.getSymbol(i);
+            if (c != 'e' && !nfa.alphabet.contains(c)) {
+                throw new IllegalArgumentException("symbol " + c + " is not in the alphabet");
+            }
+            used.set(c);
+        }
+        int[] columnOf = new int[used.length()];
+        char[] columns = new char[used.cardinality()];
+        int k = 0;
+        for (int c = used.nextSetBit(0); c >= 0; c = used.nextSetBit(c + 1)) {
+            columnOf[c] = k;
+            columns[k++] = (char) c;
+        }
+        int[] order = builder.sortedTransitions(columnOf, k);
+
+        for (int i = 0; i < edges;) {
+            int from = builder.getFrom(order[i]);
+            int end = i;
+            while (end < edges && builder.getFrom(order[end]) == from) {
+                end++;
+            }
+            // runs of one symbol with ascending targets, repeats are dropped
+            int symbolCount = 0;
+            int targetCount = 0;
+            for (int j = i; j < end; j++) {
+                int e = order[j];
+                boolean newSymbol = j == i || builder.getSymbol(e) != builder.getSymbol(order[j - 1]);
+                if (newSymbol) {
+                    symbolCount++;
+                }
+                if (newSymbol || builder.getTo(e) != builder.getTo(order[j - 1])) {
+                    targetCount++;
+                }
+            }
+            char[] symbols = new char[symbolCount];
+            int[] targetStart = new int[symbolCount + 1];
+            int[] targets = new int[targetCount];
+            int s = -1;
+            int t = 0;
+            for (int j = i; j < end; j++) {
+                int e = order[j];
+                boolean newSymbol = j == i || builder.getSymbol(e) != builder.getSymbol(order[j - 1]);
+                if (newSymbol) {
+                    symbols[++s] = builder.getSymbol(e);
+                    targetStart[s] = t;
+                }
+                if (newSymbol || builder.getTo(e) != builder.getTo(order[j - 1])) {
+                    targets[t++] = builder.getTo(e);
+                }
+            }
+            targetStart[symbolCount] = t;
+            nfa.byId.get(from).setCompact(symbols, targetStart, targets, nfa.byId);
+            i = end;
+        }
+        return nfa;
     }
 
     @Override
     public boolean addState(String name) {
         // check states to prevent duplicate before creating and adding new state
-        if (!states.contains(getState(name))) {
-            NFAState s = new NFAState(name);
+        if (!byName.containsKey(name)) {
+            NFAState s = new NFAState(name, states.size());
+            byName.put(name, s);
+            engine = null;
+            byId.add(s);
             return states.add(s);
         }
         return false;
@@ -39,6 +152,7 @@ public class NFA implements NFAInterface  {
         NFAState s = getState(name);
         // check for valid state before setting it as a final state
         if (states.contains(s)) {
+            engine = null;
             s.setFinalState();
             return finalStates.add(s);
         }
@@ -50,15 +164,13 @@ public class NFA implements NFAInterface  {
         NFAState temp = getState(name);
         // check for valid state
         if (states.contains(temp)) {
-            // loop through all states to remove any previously set starting states before
-            // setting new start
-            states.forEach(state -> {
-                if (isStart(state.getName()) && !state.equals(temp)) {
-                    state.removeStartState();
-                }
-            });
+            // only the previous start state can have the start designation
+            if (startState != null && startState != temp) {
+                startState.removeStartState();
+            }
             temp.setStartState();
             startState = temp;
+            engine = null;
             return true;
         }
         return false;
@@ -66,71 +178,93 @@ public class NFA implements NFAInterface  {
 
     @Override
     public void addSigma(char symbol) {
-        if (symbol != 'e') {
-            alphabet.add(symbol);
+        if (symbol != 'e' && alphabet.add(symbol)) {
+            engine = null;
         }
     }
 
     @Override
     public boolean accepts(String s) {
-        // start epsilon-closure of states
-        Set<NFAState> currentStates = new HashSet<>();
-        currentStates.addAll(eClosure(startState));
-        if (s.isEmpty()) {
-            for (NFAState state : currentStates) {
-                if (this.finalStates.contains(state)) {
-                    return true;
-                }
-            }
-            return false;
+        if (lazyBudget > 0) {
+            return lazyDFA().accepts(s);
         }
-        // iterate through each char in input string
-        for (char symbol : s.toCharArray()) {
-            Set<NFAState> nextStates = new HashSet<>();
-            Queue<NFAState> queue = new LinkedList<>(currentStates);
-            while (!queue.isEmpty()) {
-                NFAState current = queue.poll();
-                Set<NFAState> transitions = getToState(current, symbol);
-                if (transitions != null && !transitions.isEmpty()) {
-                    nextStates.addAll(transitions);
-                }
-            }
-            // e-closure after processing char
-            currentStates = setEClosure(nextStates);
+        return engine().accepts(s);
+    }
+
+    /**
+     * Switches accepts to lazy determinization, caching DFA states built from
+     * the inputs seen so far in at most memoryBudget bytes. A budget of 0 goes
+     * back to plain set simulation.
+     * 
+     * @param memoryBudget the most bytes the DFA cache may use
+     */
+    public void setLazyDeterminization(long memoryBudget) {
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException("memory budget must not be negative");
         }
-        // check if any state is final state
-        for (NFAState state : currentStates) {
-            if (this.finalStates.contains(state)) {
-                return true;
-            }
+        lazyBudget = memoryBudget;
+        lazy = null;
+    }
+
+    /**
+     * Gets the lazy DFA cache used by accepts, for reading its counters
+     * 
+     * @return the cache, or null if accepts is not in lazy mode
+     */
+    public LazyDFA lazyDFA() {
+        if (lazyBudget == 0) {
+            return null;
         }
-        return false;
+        NFAEngine current = engine();
+        // the cache is tied to the engine it was built from
+        if (lazy == null || lazy.engine() != current) {
+            lazy = new LazyDFA(current, lazyBudget);
+        }
+        return lazy;
     }
 
-    @Override
-    public Set<NFAState> eClosure(NFAState s) {
-        Set<NFAState> closures = new LinkedHashSet<>();
-        // create stack to hold reachable states
-        Stack<NFAState> statesStack = new Stack<>();
-        statesStack.push(s);
-        // until every reachable state has been checked loop
-        while (!statesStack.isEmpty()) {
-            NFAState current = statesStack.pop();
-            // add state if not already in closures
-            closures.add(current);
-            Set<NFAState> transitions = current.getTransitions('e');
-            // loop through valid epsilon transitions if any and add to the stack
-            if (transitions != null) {
-                for (NFAState transition : transitions) {
-                    if (!statesStack.contains(transition)) {
-                        statesStack.push(transition);
-                    }
-                }
-            }
+    /**
+     * Gets the bitset engine for this NFA, building it if the NFA changed since
+     * the last call
+     * 
+     * @return the engine simulating this NFA
+     */
+    public NFAEngine engine() {
+        if (engine == null) {
+            engine = new NFAEngine(byId, alphabet, startState, closures());
+        }
+        return engine;
+    }
+
+    /**
+     * @return the states of this NFA indexed by id
+     */
+    List<NFAState> statesById() {
+        return Collections.unmodifiableList(byId);
+    }
+
+    /**
+     * Gets the epsilon-closures of all states, computing them if an e transition
+     * was added since the last call
+     * 
+     * @return closures covering every state
+     */
+    EClosures closures() {
+        if (closures == null) {
+            closures = new EClosures(byId);
+        } else if (closures.size() < byId.size()) {
+            closures = closures.extend(byId.size());
         }
         return closures;
     }
 
+    @Override
+    public Set<NFAState> eClosure(NFAState s) {
+        long[] set = new long[Bits.words(byId.size())];
+        closures().addTo(set, s.getId());
+        return toStates(set, new LinkedHashSet<>());
+    }
+
     /**
      * find all e-closures of input set of states
      * 
@@ -138,11 +272,62 @@ public class NFA implements NFAInterface  {
      * @return e-closures of states
      */
     public Set<NFAState> setEClosure(Set<NFAState> s) {
-        Set<NFAState> closures = new HashSet<>();
+        EClosures closures = closures();
+        long[] set = new long[Bits.words(byId.size())];
         for (NFAState nS : s) {
-            closures.addAll(eClosure(nS));
+            closures.addTo(set, nS.getId());
         }
-        return closures;
+        return toStates(set, new HashSet<>());
+    }
+
+    /**
+     * Adds the state of every bit of a bitset to a collection
+     * 
+     * @param set bitset of state ids
+     * @param out the collection to fill
+     * @return out
+     */
+    private Set<NFAState> toStates(long[] set, Set<NFAState> out) {
+        for (int w = 0; w < set.length; w++) {
+            long word = set[w];
+            while (word != 0) {
+                out.add(byId.get((w << 6) + Long.numberOfTrailingZeros(word)));
+                word &= word - 1;
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public BitSet acceptsAll(List<? extends CharSequence> inputs) {
+        // build the engine on this thread, every worker runs its own fork of it
+        NFAEngine shared = engine();
+        return ParallelBatch.acceptsAll(inputs, () -> new NFAMatcher(shared), ForkJoinPool.commonPool());
+    }
+
+    @Override
+    public BitSet acceptsAll(Stream<? extends CharSequence> inputs) {
+        return acceptsAll(inputs.collect(Collectors.toList()));
+    }
+
+    @Override
+    public int[] maxCopiesAll(List<? extends CharSequence> inputs) {
+        NFAEngine shared = engine();
+        return ParallelBatch.applyAll(inputs, () -> shared.fork()::maxCopies, ForkJoinPool.commonPool());
+    }
+
+    @Override
+    public FrozenNFA freeze() {
+        String[] names = new String[byId.size()];
+        for (NFAState state : byId) {
+            names[state.getId()] = state.getName();
+        }
+        return new FrozenNFA(engine(), closures(), names);
+    }
+
+    @Override
+    public NFAMatcher matcher() {
+        return new NFAMatcher(engine());
     }
 
     @Override
@@ -152,13 +337,7 @@ public class NFA implements NFAInterface  {
 
     @Override
     public NFAState getState(String name) {
-        // loop through all states until a matching state name is found and return that
-        // state, otherwise return null
-        for (NFAState state : states) {
-            if (state.getName().equals(name))
-                return state;
-        }
-        return null;
+        return byName.get(name);
     }
 
     @Override
@@ -184,20 +363,25 @@ public class NFA implements NFAInterface  {
         if (!states.contains(from)) {
             return false;
         }
-        Set<NFAState> to = new LinkedHashSet<>(STATESSIZE);
+        List<NFAState> to = new ArrayList<>(toState.size());
         for (String state : toState) {
+            NFAState t = getState(state);
             // if any toStates are not in system, stop and return false
-            if (!states.contains(getState(state))) {
+            if (t == null) {
                 return false;
             }
-            to.add(getState(state));
+            to.add(t);
         }
-        Character s = Character.valueOf(onSymb);
-
         // if symbol is not in system alphabet or any states to or from are empty, stop and return false,
         // otherwise add transitions for state
         if (from != null && !to.isEmpty() && (alphabet.contains(onSymb) || onSymb == 'e')) {
-            from.addTransitions(s, to);
+            engine = null;
+            if (onSymb == 'e') {
+                closures = null;
+            }
+            for (NFAState t : to) {
+                from.addTransition(onSymb, t);
+            }
             return true;
         }
         return false;
@@ -214,32 +398,167 @@ public class NFA implements NFAInterface  {
 
     @Override
     public int maxCopies(String s) {
-        int maxCopies = 0;
-        Set<NFAState> current = new HashSet<>();
+        return engine().maxCopies(s);
+    }
+
+    /**
+     * Simulates the NFA on one long input, relating chunks of it in parallel on
+     * the common fork/join pool. See ParallelNFARunner.
+     * 
+     * @param s the input, must not change during the run
+     * @return the result, whether it was accepted, and the work it took
+     */
+    public ParallelRun runParallel(CharSequence s) {
+        return new ParallelNFARunner(engine()).run(s, false);
+    }
+
+    /**
+     * Determines the maximum number of NFA copies on one long input, counting
+     * chunks of it in parallel on the common fork/join pool
+     * 
+     * @param s the input, must not change during the run
+     * @return the result, its maximum number of copies, and the work it took
+     */
+    public ParallelRun maxCopiesParallel(CharSequence s) {
+        return new ParallelNFARunner(engine()).run(s, true);
+    }
+
+    @Override
+    public int search(CharSequence text, MatchListener listener) {
+        return searcher().search(text, listener);
+    }
+
+    @Override
+    public int search(CharSequence text, boolean overlapping, MatchListener listener) {
+        return searcher().search(text, overlapping, listener);
+    }
+
+    /**
+     * Creates a substring searcher for the NFA as it is now. Keep it to search
+     * many texts, it caches the reversed states it builds.
+     * 
+     * @return a new searcher
+     */
+    public NFASearcher searcher() {
+        return new NFASearcher(engine());
+    }
+
+    @Override
+    public CopyProfile copyProfile(CharSequence s, int[] counts) {
+        return engine().copyProfile(s, counts);
+    }
+
+    @Override
+    public CopyProfile copyProfile(CharSequence s, IntConsumer counts) {
+        return engine().copyProfile(s, counts);
+    }
+
+    /**
+     * Stores the transitions of every state in sorted primitive arrays instead of
+     * maps of sets. Call it once the NFA is fully built, getTransitions keeps
+     * working through read only views and a state that gets another transition
+     * goes back to its modifiable form.
+     */
+    public void compact() {
+        for (NFAState state : byId) {
+            state.compact(byId);
+        }
+    }
 
-        // start epsilon-closure of states
-        current.add(startState);
-        current = setEClosure(current);
+    @Override
+    public DFA toDFA() {
+        return toDFA(Integer.MAX_VALUE);
+    }
 
-        maxCopies = Math.max(maxCopies, current.size());
-        for (char c : s.toCharArray()) {
+    @Override
+    public DFA toDFA(int maxStates) {
+        NFAEngine engine = engine();
+        int words = engine.words();
+        int k = engine.getColumnCount();
+        DFA dfa = new DFA();
+        alphabet.forEach(dfa::addSigma);
+        if (startState == null) {
+            return dfa;
+        }
 
-            Set<NFAState> nextStates = new HashSet<>();
-            Queue<NFAState> q = new LinkedList<>(current);
+        // subsets are numbered in the order found, delta[id * k + column] is the
+        // successor subset, the empty set is a trap state like any other
+        SubsetTable subsets = new SubsetTable(words);
+        long[] set = new long[words];
+        long[] next = new long[words];
+        int[] delta = new int[16 * k];
+        engine.start(set);
+        subsets.intern(set);
+        for (int id = 0; id < subsets.size(); id++) {
+            if (subsets.size() > maxStates) {
+                throw new IllegalStateException("subset construction exceeded " + maxStates + " states");
+            }
+            if (delta.length < (id + 1) * k) {
+                delta = Arrays.copyOf(delta, delta.length * 2);
+            }
+            subsets.get(id, set);
+            for (int column = 0; column < k; column++) {
+                engine.move(set, column, next);
+                delta[id * k + column] = subsets.intern(next);
+            }
+        }
 
-            // explore all current states for transitions on c
-            while (!q.isEmpty()) {
-                NFAState fromState = q.poll();
-                Set<NFAState> transitions = getToState(fromState, c);
-                nextStates.addAll(transitions);
+        String[] names = new String[subsets.size()];
+        for (int id = 0; id < names.length; id++) {
+            subsets.get(id, set);
+            names[id] = subsetName(set);
+            // names with commas in them could collide
+            while (!dfa.addState(names[id])) {
+                names[id] += "'";
             }
-            current = setEClosure(nextStates);
-            if (current.isEmpty()) {
-                return maxCopies;
+            if (engine.isFinal(set)) {
+                dfa.setFinal(names[id]);
             }
-            maxCopies = Math.max(maxCopies, current.size());
         }
-        return maxCopies;
+        dfa.setStart(names[0]);
+        for (int id = 0; id < names.length; id++) {
+            for (char c : alphabet) {
+                dfa.addTransition(names[id], names[delta[id * k + engine.columnOf(c)]], c);
+            }
+        }
+        return dfa;
+    }
+
+    /**
+     * Names a subset state "{q0,q1}", without whitespace so DFA.toString output
+     * parses again. Whitespace in the names of its states becomes '_'.
+     */
+    private String subsetName(long[] set) {
+        StringBuilder name = new StringBuilder("{");
+        for (NFAState state : toStates(set, new LinkedHashSet<>())) {
+            if (name.length() > 1) {
+                name.append(',');
+            }
+            name.append(state.getName().replaceAll("\\s", "_"));
+        }
+        return name.append('}').toString();
+    }
+
+    @Override
+    public LanguageCheck subsetOf(NFA other) {
+        return Antichain.inclusion(engine(), other.engine(), symbols());
+    }
+
+    @Override
+    public LanguageCheck universal() {
+        return Antichain.universality(engine(), symbols());
+    }
+
+    /**
+     * @return the alphabet in the order it was added
+     */
+    private char[] symbols() {
+        char[] symbols = new char[alphabet.size()];
+        int i = 0;
+        for (char c : alphabet) {
+            symbols[i++] = c;
+        }
+        return symbols;
     }
 
     @Override
@@ -261,6 +580,8 @@ public class NFA implements NFAInterface  {
 
     @Override
     public String toString() {
+        // a fresh builder per call, repeated calls must not accumulate
+        StringBuilder sb = new StringBuilder();
         sb.append(stringBuilderHelper("Q = " + states.toString()));
         sb.append(stringBuilderHelper("\nSigma = " + alphabet.toString()));
         sb.append("\ndelta =\n");
@@ -0,0 +1,636 @@
+package fa.nfa;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+import fa.AlphabetClasses;
+
+/**
+ * Bitset simulation of an NFA. States are numbered by their NFAState id and a
+ * set of states is a long[] with one bit per state. For every state and symbol
+ * the engine stores the epsilon-closed successor mask, so a step is only word
+ * wise ORs into a reused scratch set and does not allocate. When the masks of a
+ * large NFA would not fit in DENSE_LIMIT longs, the epsilon-closed successors
+ * are kept as sorted id lists instead and a step sets their bits one by one.
+ *
+ * The tables are never modified after construction, the scratch sets are. An
+ * engine is therefore not safe to share between threads, use fork() to get an
+ * engine with its own scratch sets.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+public final class NFAEngine {
+
+    // largest successor mask table in longs, 32 MB
+    static final long DENSE_LIMIT = 1L << 22;
+
+    private final int stateCount;
+    private final int words;
+    private final int columnCount;
+    // symbol to column, one column per alphabet class, -1 if not in the alphabet
+    private final int[] columnOf;
+    // successors[(state * columnCount + column) * words + w], epsilon-closed,
+    // null when the engine is sparse
+    private final long[] successors;
+    // sparse successors of (state, column) are
+    // targets[targetStart[state * columnCount + column] .. targetStart[... + 1])
+    private final int[] targetStart;
+    private final int[] targets;
+    private final long[] startSet;
+    private final long[] finalSet;
+
+    private long[] current;
+    private long[] next;
+
+    /**
+     * Builds the tables of an NFA
+     *
+     * @param states   all states of the NFA in id order
+     * @param alphabet the alphabet of the NFA, without e
+     * @param start    the start state, may be null
+     * @param closures the epsilon-closures of the states
+     */
+    NFAEngine(List<NFAState> states, Set<Character> alphabet, NFAState start, EClosures closures) {
+        this(Raw.of(states, alphabet, start), closures);
+    }
+
+    /**
+     * Builds the tables from transitions in CSR form. The targets of state q on
+     * column c are targets[rowStart[q * symbols.length + c] .. rowStart[... + 1]),
+     * without epsilon-closing.
+     *
+     * @param stateCount the number of states
+     * @param symbols    the symbol of every column, without e
+     * @param start      id of the start state, -1 if there is none
+     * @param finals     true for every accepting state id
+     * @param rowStart   where the targets of every (state, column) begin
+     * @param targets    the target of every transition
+     * @param closures   the epsilon-closures of the states
+     */
+    NFAEngine(int stateCount, char[] symbols, int start, boolean[] finals, int[] rowStart, int[] targets,
+            EClosures closures) {
+        this(new Raw(stateCount, symbols, start, finals, rowStart, targets), closures);
+    }
+
+    private NFAEngine(Raw bySymbol, EClosures closures) {
+        // one column per alphabet class, the raw rows of each class are equal
+        AlphabetClasses classes = bySymbol.classes();
+        Raw raw = bySymbol.byClass(classes);
+        this.stateCount = raw.stateCount;
+        this.words = Bits.words(stateCount);
+        this.columnCount = classes.getClassCount();
+        this.columnOf = classes.lookupTable();
+
+        this.finalSet = new long[words];
+        for (int q = 0; q < stateCount; q++) {
+            if (raw.finals[q]) {
+                Bits.set(finalSet, q);
+            }
+        }
+        int cells = stateCount * columnCount;
+        if ((long) cells * words <= DENSE_LIMIT) {
+            this.successors = new long[cells * words];
+            this.targetStart = null;
+            this.targets = null;
+            long[] mask = new long[words];
+            for (int cell = 0; cell < cells; cell++) {
+                if (raw.rowStart[cell] == raw.rowStart[cell + 1]) {
+                    continue;
+                }
+                Arrays.fill(mask, 0L);
+                for (int j = raw.rowStart[cell]; j < raw.rowStart[cell + 1]; j++) {
+                    closures.addTo(mask, raw.targets[j]);
+                }
+                System.arraycopy(mask, 0, successors, cell * words, words);
+            }
+        } else {
+            this.successors = null;
+            this.targetStart = new int[cells + 1];
+            int[] list = new int[16];
+            int size = 0;
+            // stamp[t] == cell + 1 when t is already in the list of that cell
+            int[] stamp = new int[stateCount];
+            for (int cell = 0; cell < cells; cell++) {
+                int begin = size;
+                for (int j = raw.rowStart[cell]; j < raw.rowStart[cell + 1]; j++) {
+                    for (int u : closures.members(raw.targets[j])) {
+                        if (stamp[u] != cell + 1) {
+                            stamp[u] = cell + 1;
+                            list = append(list, size++, u);
+                        }
+                    }
+                }
+                Arrays.sort(list, begin, size);
+                targetStart[cell + 1] = size;
+            }
+            this.targets = Arrays.copyOf(list, size);
+        }
+        this.startSet = new long[words];
+        if (raw.start >= 0) {
+            closures.addTo(startSet, raw.start);
+        }
+        this.current = new long[words];
+        this.next = new long[words];
+    }
+
+    /**
+     * Creates an engine that shares the tables of other and owns fresh scratch
+     * sets
+     */
+    private NFAEngine(NFAEngine other) {
+        this.stateCount = other.stateCount;
+        this.words = other.words;
+        this.columnCount = other.columnCount;
+        this.columnOf = other.columnOf;
+        this.successors = other.successors;
+        this.targetStart = other.targetStart;
+        this.targets = other.targets;
+        this.startSet = other.startSet;
+        this.finalSet = other.finalSet;
+        this.current = new long[words];
+        this.next = new long[words];
+    }
+
+    /**
+     * Stores value at index, growing list when it is full
+     *
+     * @return list or its grown copy
+     */
+    static int[] append(int[] list, int index, int value) {
+        if (index == list.length) {
+            list = Arrays.copyOf(list, list.length * 2);
+        }
+        list[index] = value;
+        return list;
+    }
+
+    /**
+     * @return an engine sharing these tables with its own scratch sets
+     */
+    public NFAEngine fork() {
+        return new NFAEngine(this);
+    }
+
+    /**
+     * Simulates the NFA on input s
+     *
+     * @param s the input
+     * @return true if any copy of the NFA ends in a final state
+     */
+    public boolean accepts(CharSequence s) {
+        reset();
+        for (int i = 0; i < s.length(); i++) {
+            // no copies left, nothing can be reached anymore
+            if (!step(s.charAt(i))) {
+                return false;
+            }
+        }
+        return isAccepting();
+    }
+
+    /**
+     * Determines the maximum number of NFA copies alive while processing s
+     *
+     * @param s the input
+     * @return the largest number of states in any set reached on s
+     */
+    public int maxCopies(CharSequence s) {
+        reset();
+        int max = copies();
+        for (int i = 0; i < s.length(); i++) {
+            if (!step(s.charAt(i))) {
+                return max;
+            }
+            max = Math.max(max, copies());
+        }
+        return max;
+    }
+
+    /**
+     * Records the number of copies alive at every position of s. counts[0] is
+     * the size of the start set and counts[i] the size of the set after the
+     * first i symbols, positions after the set became empty are 0.
+     *
+     * @param s      the input
+     * @param counts receives s.length() + 1 counts
+     * @return the max, its first position and the mean of the counts
+     * @throws IllegalArgumentException if counts is too short
+     */
+    public CopyProfile copyProfile(CharSequence s, int[] counts) {
+        if (counts.length <= s.length()) {
+            throw new IllegalArgumentException("counts needs " + (s.length() + 1) + " entries");
+        }
+        return profile(s, counts, null);
+    }
+
+    /**
+     * Streams the number of copies alive at every position of s, starting with
+     * the size of the start set, s.length() + 1 counts in all
+     *
+     * @param s      the input
+     * @param counts receives the counts in order
+     * @return the max, its first position and the mean of the counts
+     */
+    public CopyProfile copyProfile(CharSequence s, IntConsumer counts) {
+        return profile(s, null, counts);
+    }
+
+    /**
+     * Runs s once, writing each count to array or consumer, whichever is not null
+     */
+    private CopyProfile profile(CharSequence s, int[] array, IntConsumer consumer) {
+        reset();
+        int length = s.length();
+        int copies = copies();
+        int max = copies;
+        int maxPosition = 0;
+        long total = copies;
+        boolean alive = copies > 0;
+        for (int i = 0; i <= length; i++) {
+            if (i > 0) {
+                // the set stays empty once every copy died
+                copies = alive && step(s.charAt(i - 1)) ? copies() : 0;
+                alive = copies > 0;
+                total += copies;
+                if (copies > max) {
+                    max = copies;
+                    maxPosition = i;
+                }
+            }
+            if (array != null) {
+                array[i] = copies;
+            } else {
+                consumer.accept(copies);
+            }
+        }
+        return new CopyProfile(length + 1, max, maxPosition, total);
+    }
+
+    /**
+     * Makes the epsilon-closure of the start state the current set
+     */
+    void reset() {
+        System.arraycopy(startSet, 0, current, 0, words);
+    }
+
+    /**
+     * @return true if the current set contains a final state
+     */
+    boolean isAccepting() {
+        return Bits.intersects(current, finalSet);
+    }
+
+    /**
+     * @return the number of states in the current set
+     */
+    int copies() {
+        return Bits.cardinality(current);
+    }
+
+    /**
+     * Moves the current set to its successors on c
+     *
+     * @param c the input symbol
+     * @return false if the resulting set is empty
+     */
+    boolean step(char c) {
+        long[] cur = current;
+        current = next;
+        next = cur;
+        return move(cur, columnOf(c), current);
+    }
+
+    /**
+     * Computes the epsilon-closed successors of a set on one column
+     *
+     * @param from   the set to move
+     * @param column the column of the symbol, -1 gives the empty set
+     * @param to     receives the successors, may not be from
+     * @return false if the successors are empty
+     */
+    boolean move(long[] from, int column, long[] to) {
+        Arrays.fill(to, 0L);
+        if (column < 0) {
+            return false;
+        }
+        for (int w = 0; w < words; w++) {
+            long word = from[w];
+            // OR the successors of every state in the set
+            while (word != 0) {
+                int state = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                int cell = state * columnCount + column;
+                if (successors != null) {
+                    Bits.or(to, successors, cell * words);
+                } else {
+                    for (int j = targetStart[cell]; j < targetStart[cell + 1]; j++) {
+                        Bits.set(to, targets[j]);
+                    }
+                }
+            }
+        }
+        return !Bits.isEmpty(to);
+    }
+
+    /**
+     * @param c an input symbol
+     * @return the column of c or -1 if c is not in the alphabet
+     */
+    int columnOf(char c) {
+        return c < columnOf.length ? columnOf[c] : -1;
+    }
+
+    /**
+     * Copies the epsilon-closure of the start state into dst
+     */
+    void start(long[] dst) {
+        System.arraycopy(startSet, 0, dst, 0, words);
+    }
+
+    /**
+     * @param set a set of states
+     * @return true if set contains a final state
+     */
+    boolean isFinal(long[] set) {
+        return Bits.intersects(set, finalSet);
+    }
+
+    /**
+     * @param state a state id
+     * @return true if the state is accepting
+     */
+    boolean isFinalState(int state) {
+        return Bits.get(finalSet, state);
+    }
+
+    /**
+     * @return the width of a state set in longs
+     */
+    int words() {
+        return words;
+    }
+
+    /**
+     * @return the number of columns, one per class of symbols that every state
+     *         treats the same
+     */
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    /**
+     * @return the number of states of the NFA
+     */
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    /**
+     * Builds the engine of Sigma* followed by the reversed language. Its states
+     * are the states of this engine with every epsilon-closed transition
+     * turned around, plus one more state that loops on every symbol and has e
+     * edges to the final states of this engine. The extra state starts, and
+     * the states this engine starts in are final. A set it reaches on a
+     * reversed text holds exactly the states of this engine that accept some
+     * prefix of that text.
+     *
+     * @return the reversed engine, its extra state is getStateCount()
+     */
+    NFAEngine reversed() {
+        int loop = stateCount;
+        char[] symbols = new char[columnOf.length];
+        int k = 0;
+        for (int c = 0; c < columnOf.length; c++) {
+            if (columnOf[c] >= 0) {
+                symbols[k++] = (char) c;
+            }
+        }
+        symbols = Arrays.copyOf(symbols, k);
+
+        // predecessors per (state, column), then copied out per symbol
+        int[] predStart = new int[stateCount * columnCount + 1];
+        for (int q = 0; q < stateCount; q++) {
+            for (int column = 0; column < columnCount; column++) {
+                int c = column;
+                forEachSuccessor(q, column, r -> predStart[r * columnCount + c + 1]++);
+            }
+        }
+        for (int cell = 0; cell < stateCount * columnCount; cell++) {
+            predStart[cell + 1] += predStart[cell];
+        }
+        int[] preds = new int[predStart[stateCount * columnCount]];
+        int[] fill = new int[stateCount * columnCount];
+        for (int q = 0; q < stateCount; q++) {
+            for (int column = 0; column < columnCount; column++) {
+                int from = q;
+                int c = column;
+                forEachSuccessor(q, column, r -> {
+                    int cell = r * columnCount + c;
+                    preds[predStart[cell] + fill[cell]++] = from;
+                });
+            }
+        }
+        int[] rowStart = new int[(stateCount + 1) * k + 1];
+        int[] targets = new int[16];
+        int size = 0;
+        for (int r = 0; r < stateCount; r++) {
+            for (int i = 0; i < k; i++) {
+                int cell = r * columnCount + columnOf[symbols[i]];
+                for (int j = predStart[cell]; j < predStart[cell + 1]; j++) {
+                    targets = append(targets, size++, preds[j]);
+                }
+                rowStart[r * k + i + 1] = size;
+            }
+        }
+        for (int i = 0; i < k; i++) {
+            targets = append(targets, size++, loop);
+            rowStart[loop * k + i + 1] = size;
+        }
+
+        int[] eStart = new int[stateCount + 2];
+        int[] eTargets = new int[Bits.cardinality(finalSet)];
+        boolean[] finals = new boolean[stateCount + 1];
+        int e = 0;
+        for (int q = 0; q < stateCount; q++) {
+            if (Bits.get(finalSet, q)) {
+                eTargets[e++] = q;
+            }
+            finals[q] = Bits.get(startSet, q);
+        }
+        eStart[stateCount + 1] = e;
+        return new NFAEngine(stateCount + 1, symbols, loop, finals, rowStart, Arrays.copyOf(targets, size),
+                new EClosures(stateCount + 1, eStart, eTargets));
+    }
+
+    /**
+     * Passes every epsilon-closed successor of a state on a column to action
+     */
+    private void forEachSuccessor(int state, int column, IntConsumer action) {
+        int cell = state * columnCount + column;
+        if (successors == null) {
+            for (int j = targetStart[cell]; j < targetStart[cell + 1]; j++) {
+                action.accept(targets[j]);
+            }
+            return;
+        }
+        for (int w = 0; w < words; w++) {
+            long word = successors[cell * words + w];
+            while (word != 0) {
+                action.accept((w << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+    }
+
+    /**
+     * Transitions of an NFA in CSR form before epsilon-closing
+     */
+    private static final class Raw {
+
+        private final int stateCount;
+        private final char[] symbols;
+        private final int start;
+        private final boolean[] finals;
+        private final int[] rowStart;
+        private final int[] targets;
+
+        Raw(int stateCount, char[] symbols, int start, boolean[] finals, int[] rowStart, int[] targets) {
+            this.stateCount = stateCount;
+            this.symbols = symbols;
+            this.start = start;
+            this.finals = finals;
+            this.rowStart = rowStart;
+            this.targets = targets;
+        }
+
+        /**
+         * Reads the transitions of NFA states, columns in alphabet order
+         */
+        static Raw of(List<NFAState> states, Set<Character> alphabet, NFAState start) {
+            int n = states.size();
+            int k = alphabet.size();
+            char[] symbols = new char[k];
+            int column = 0;
+            for (char c : alphabet) {
+                symbols[column++] = c;
+            }
+            boolean[] finals = new boolean[n];
+            int[] rowStart = new int[n * k + 1];
+            int[] targets = new int[16];
+            int size = 0;
+            for (NFAState state : states) {
+                finals[state.getId()] = state.getFinalState();
+                for (column = 0; column < k; column++) {
+                    Set<NFAState> to = state.getTransitions(symbols[column]);
+                    if (to != null) {
+                        for (NFAState t : to) {
+                            targets = append(targets, size++, t.getId());
+                        }
+                    }
+                    rowStart[state.getId() * k + column + 1] = size;
+                }
+            }
+            return new Raw(n, symbols, start == null ? -1 : start.getId(), finals, rowStart, targets);
+        }
+
+        /**
+         * Partitions the alphabet, two symbols share a class when every state
+         * has the same set of targets on both
+         */
+        AlphabetClasses classes() {
+            int k = symbols.length;
+            AlphabetClasses.Refiner refiner = new AlphabetClasses.Refiner(symbols);
+            // target sets of the current state, numbered as first seen
+            Map<Row, Integer> rows = new HashMap<>();
+            for (int q = 0; q < stateCount; q++) {
+                for (int column = 0; column < k; column++) {
+                    int cell = q * k + column;
+                    if (rowStart[cell] == rowStart[cell + 1]) {
+                        continue;
+                    }
+                    Row row = new Row(targets, rowStart[cell], rowStart[cell + 1]);
+                    Integer id = rows.get(row);
+                    if (id == null) {
+                        id = rows.size();
+                        rows.put(row, id);
+                    }
+                    refiner.move(symbols[column], id);
+                }
+                refiner.nextState();
+                rows.clear();
+            }
+            return refiner.finish();
+        }
+
+        /**
+         * Keeps the rows of the first symbol of every class
+         */
+        Raw byClass(AlphabetClasses classes) {
+            int k = symbols.length;
+            int m = classes.getClassCount();
+            if (m == k) {
+                return this;
+            }
+            int[] columnOf = new int[m];
+            for (int column = 0; column < k; column++) {
+                int c = classes.classOf(symbols[column]);
+                if (classes.representative(c) == symbols[column]) {
+                    columnOf[c] = column;
+                }
+            }
+            int[] classStart = new int[stateCount * m + 1];
+            int[] classTargets = new int[16];
+            int size = 0;
+            for (int q = 0; q < stateCount; q++) {
+                for (int c = 0; c < m; c++) {
+                    int cell = q * k + columnOf[c];
+                    for (int j = rowStart[cell]; j < rowStart[cell + 1]; j++) {
+                        classTargets = append(classTargets, size++, targets[j]);
+                    }
+                    classStart[q * m + c + 1] = size;
+                }
+            }
+            char[] representatives = new char[m];
+            for (int c = 0; c < m; c++) {
+                representatives[c] = classes.representative(c);
+            }
+            return new Raw(stateCount, representatives, start, finals, classStart, classTargets);
+        }
+    }
+
+    /**
+     * A row of targets as a set, for comparing the rows of two symbols
+     */
+    private static final class Row {
+
+        private final int[] ids;
+        private final int hash;
+
+        Row(int[] targets, int from, int to) {
+            int[] ids = Arrays.copyOfRange(targets, from, to);
+            Arrays.sort(ids);
+            int size = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (size == 0 || ids[size - 1] != ids[i]) {
+                    ids[size++] = ids[i];
+                }
+            }
+            this.ids = Arrays.copyOf(ids, size);
+            this.hash = Arrays.hashCode(this.ids);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Row && Arrays.equals(ids, ((Row) o).ids);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
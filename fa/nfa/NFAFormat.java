@@ -0,0 +1,145 @@
+package fa.nfa;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import fa.BinaryFormat;
+
+/**
+ * Writes NFAs in the binary format of BinaryFormat and loads them back as
+ * frozen NFAs. After the symbol transitions an NFA file holds its e
+ * transitions as a second CSR pair, n + 1 row starts and the targets. Loading
+ * builds the engine tables and closures from the arrays directly, no state or
+ * transition objects are created.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+public final class NFAFormat {
+
+    private NFAFormat() {
+    }
+
+    /**
+     * Writes an NFA to a file, replacing the file if it exists
+     *
+     * @param nfa  the NFA to write
+     * @param file the file to write
+     * @throws IOException if writing fails
+     */
+    public static void write(NFA nfa, Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            write(nfa, out);
+        }
+    }
+
+    /**
+     * Writes an NFA to a stream
+     *
+     * @param nfa the NFA to write
+     * @param out the stream, left open
+     * @throws IOException if writing fails
+     */
+    public static void write(NFA nfa, OutputStream out) throws IOException {
+        List<NFAState> states = nfa.statesById();
+        int n = states.size();
+        int k = nfa.getSigma().size();
+        char[] symbols = new char[k];
+        int column = 0;
+        for (char c : nfa.getSigma()) {
+            symbols[column++] = c;
+        }
+        String[] names = new String[n];
+        boolean[] finals = new boolean[n];
+        int start = -1;
+        int[] rowStart = new int[n * k + 1];
+        int[] eStart = new int[n + 1];
+        int[] targets = new int[16];
+        int[] eTargets = new int[16];
+        int size = 0;
+        int eSize = 0;
+        for (NFAState state : states) {
+            int q = state.getId();
+            names[q] = state.getName();
+            finals[q] = state.getFinalState();
+            if (state.getStartState()) {
+                start = q;
+            }
+            for (column = 0; column < k; column++) {
+                Set<NFAState> to = state.getTransitions(symbols[column]);
+                if (to != null) {
+                    for (NFAState t : to) {
+                        targets = append(targets, size++, t.getId());
+                    }
+                }
+                rowStart[q * k + column + 1] = size;
+            }
+            Set<NFAState> to = state.getTransitions('e');
+            if (to != null) {
+                for (NFAState t : to) {
+                    eTargets = append(eTargets, eSize++, t.getId());
+                }
+            }
+            eStart[q + 1] = eSize;
+        }
+        BinaryFormat.Output data = BinaryFormat.begin(out);
+        BinaryFormat.writeHead(data, BinaryFormat.KIND_NFA, start, symbols, names, finals);
+        BinaryFormat.writeInts(data, rowStart, rowStart.length);
+        BinaryFormat.writeInts(data, targets, size);
+        BinaryFormat.writeInts(data, eStart, eStart.length);
+        BinaryFormat.writeInts(data, eTargets, eSize);
+        BinaryFormat.finish(data);
+    }
+
+    private static int[] append(int[] list, int index, int value) {
+        if (index == list.length) {
+            list = Arrays.copyOf(list, list.length * 2);
+        }
+        list[index] = value;
+        return list;
+    }
+
+    /**
+     * Memory maps an NFA file and loads it
+     *
+     * @param file the file to load
+     * @return the NFA in the file
+     * @throws IOException if the file cannot be read or is not a valid NFA file
+     */
+    public static FrozenNFA load(Path file) throws IOException {
+        return read(BinaryFormat.map(file));
+    }
+
+    /**
+     * Loads an NFA from a buffer holding a whole file
+     *
+     * @param buffer the file, positioned at its start
+     * @return the NFA in the buffer
+     * @throws IOException if the buffer is not a valid NFA file
+     */
+    public static FrozenNFA read(ByteBuffer buffer) throws IOException {
+        BinaryFormat.verify(buffer);
+        BinaryFormat.Head head = BinaryFormat.readHead(buffer, BinaryFormat.KIND_NFA);
+        char[] symbols = head.getSymbols();
+        int n = head.getNames().length;
+        for (char c : symbols) {
+            if (c == 'e') {
+                throw new IOException("NFA file uses e as a symbol");
+            }
+        }
+        int[] rowStart = BinaryFormat.readInts(buffer);
+        int[] targets = BinaryFormat.readInts(buffer);
+        BinaryFormat.checkRows(rowStart, n * symbols.length, targets, n);
+        int[] eStart = BinaryFormat.readInts(buffer);
+        int[] eTargets = BinaryFormat.readInts(buffer);
+        BinaryFormat.checkRows(eStart, n, eTargets, n);
+        EClosures closures = new EClosures(n, eStart, eTargets);
+        NFAEngine engine = new NFAEngine(n, symbols, head.getStart(), head.getFinals(), rowStart, targets, closures);
+        return new FrozenNFA(engine, closures, head.getNames());
+    }
+}
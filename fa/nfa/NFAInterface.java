@@ -1,8 +1,12 @@
 package fa.nfa;
 
+import java.util.List;
 import java.util.Set;
+import java.util.function.IntConsumer;
 
 import fa.FAInterface;
+import fa.LanguageCheck;
+import fa.dfa.DFA;
 
 public interface NFAInterface extends FAInterface {
 
@@ -34,6 +38,36 @@ public interface NFAInterface extends FAInterface {
 	 */
 	public int maxCopies(String s);
 
+	/**
+	 * Records the number of NFA copies alive at every position of s, from the
+	 * start set (position 0) to the set after the last symbol (position
+	 * s.length())
+	 * 
+	 * @param s      - the input string
+	 * @param counts - receives s.length() + 1 counts
+	 * @return - the max, its first position and the mean of the counts
+	 */
+	public CopyProfile copyProfile(CharSequence s, int[] counts);
+
+	/**
+	 * Streams the number of NFA copies alive at every position of s, s.length()
+	 * + 1 counts starting with the start set
+	 * 
+	 * @param s      - the input string
+	 * @param counts - receives the counts in order
+	 * @return - the max, its first position and the mean of the counts
+	 */
+	public CopyProfile copyProfile(CharSequence s, IntConsumer counts);
+
+	/**
+	 * Determines maxCopies for a batch of inputs in parallel on the common
+	 * fork/join pool
+	 * 
+	 * @param inputs the input strings
+	 * @return the maximum number of NFA copies of every input, in order
+	 */
+	public int[] maxCopiesAll(List<? extends CharSequence> inputs);
+
 	/**
 	 * Adds the transition to the NFA's delta data structure
 	 * 
@@ -51,4 +85,53 @@ public interface NFAInterface extends FAInterface {
 	 * @return - true if NFA's transition function has DFA's properties.
 	 */
 	public boolean isDFA();
+
+	/**
+	 * Converts this NFA to a DFA accepting the same language with the subset
+	 * construction. Only subsets reachable from the start state become states.
+	 * The empty subset, when reached, is a non-accepting trap state that loops
+	 * on every symbol, so the DFA is total.
+	 * 
+	 * @return the equivalent DFA
+	 */
+	public DFA toDFA();
+
+	/**
+	 * Converts this NFA to a DFA, giving up once more than maxStates subsets
+	 * have been found
+	 * 
+	 * @param maxStates the largest number of DFA states to create
+	 * @return the equivalent DFA
+	 * @throws IllegalStateException if the DFA would need more than maxStates
+	 *                               states
+	 */
+	public DFA toDFA(int maxStates);
+
+	/**
+	 * Takes an immutable snapshot of this NFA that may be shared between
+	 * threads. Later changes to this NFA do not affect the snapshot.
+	 * 
+	 * @return the frozen NFA
+	 */
+	public FrozenNFA freeze();
+
+	/**
+	 * Checks that every input this NFA accepts is accepted by other, without
+	 * determinizing either. The search stops at the first input that shows
+	 * otherwise.
+	 * 
+	 * @param other the other NFA
+	 * @return the answer, with an input accepted by this NFA and not by other if
+	 *         there is one, and the macro-states explored and pruned
+	 */
+	public LanguageCheck subsetOf(NFA other);
+
+	/**
+	 * Checks that this NFA accepts every input over its alphabet, without
+	 * determinizing it
+	 * 
+	 * @return the answer, with an input it rejects if there is one, and the
+	 *         macro-states explored and pruned
+	 */
+	public LanguageCheck universal();
 }
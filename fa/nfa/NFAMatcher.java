@@ -0,0 +1,62 @@
+package fa.nfa;
+
+import fa.FAMatcher;
+
+/**
+ * Streaming matcher over the bitset engine of an NFA, the only state kept
+ * between chunks is the current set of states
+ * 
+ * @author James Hyle, Rebecca Berg
+ */
+public class NFAMatcher implements FAMatcher {
+
+    private final NFAEngine engine;
+    private boolean dead;
+
+    /**
+     * @param engine the engine to run, the matcher uses its own fork of it
+     */
+    public NFAMatcher(NFAEngine engine) {
+        this.engine = engine.fork();
+        reset();
+    }
+
+    @Override
+    public NFAMatcher feed(CharSequence chunk) {
+        for (int i = 0; i < chunk.length() && !dead; i++) {
+            dead = !engine.step(chunk.charAt(i));
+        }
+        return this;
+    }
+
+    @Override
+    public NFAMatcher feed(char[] chunk, int off, int len) {
+        for (int i = off; i < off + len && !dead; i++) {
+            dead = !engine.step(chunk[i]);
+        }
+        return this;
+    }
+
+    @Override
+    public boolean isAccepting() {
+        return !dead && engine.isAccepting();
+    }
+
+    @Override
+    public boolean isDead() {
+        return dead;
+    }
+
+    @Override
+    public void reset() {
+        engine.reset();
+        dead = engine.copies() == 0;
+    }
+
+    /**
+     * @return the number of NFA copies currently alive
+     */
+    public int copies() {
+        return dead ? 0 : engine.copies();
+    }
+}
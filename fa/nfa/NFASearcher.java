@@ -0,0 +1,84 @@
+package fa.nfa;
+
+import fa.Searcher;
+
+/**
+ * Substring search with an NFA, see Searcher. The reversed automaton is the
+ * engine NFAEngine.reversed builds, determinized on the fly. The forward runs
+ * are set simulations, cut off once no state of the set can end a match.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+public final class NFASearcher extends Searcher {
+
+    private final NFAEngine engine;
+    private final NFAEngine reversed;
+    private long[] current;
+    private long[] next;
+
+    /**
+     * Creates a searcher with the default cache budget
+     *
+     * @param engine the engine of the NFA, see NFA.engine()
+     */
+    public NFASearcher(NFAEngine engine) {
+        this(engine, engine.reversed(), DEFAULT_BUDGET);
+    }
+
+    /**
+     * @param engine       the engine of the NFA, see NFA.engine()
+     * @param memoryBudget the most bytes the cache of reversed states may use
+     */
+    public NFASearcher(NFAEngine engine, long memoryBudget) {
+        this(engine, engine.reversed(), memoryBudget);
+    }
+
+    private NFASearcher(NFAEngine engine, NFAEngine reversed, long memoryBudget) {
+        super(reversed.words(), reversed.getColumnCount(), memoryBudget);
+        this.engine = engine.fork();
+        this.reversed = reversed;
+        this.current = new long[engine.words()];
+        this.next = new long[engine.words()];
+    }
+
+    @Override
+    protected int reverseColumn(char c) {
+        return reversed.columnOf(c);
+    }
+
+    @Override
+    protected void reverseStart(long[] dst) {
+        reversed.start(dst);
+    }
+
+    @Override
+    protected void reverseMove(long[] from, int column, long[] to) {
+        reversed.move(from, column, to);
+    }
+
+    @Override
+    protected boolean startsMatch(long[] set) {
+        return reversed.isFinal(set);
+    }
+
+    @Override
+    protected int longest(CharSequence s, int from) {
+        engine.start(current);
+        int end = -1;
+        for (int i = from;; i++) {
+            if (engine.isFinal(current)) {
+                end = i;
+            }
+            if (i == s.length()) {
+                return end;
+            }
+            // stop once no copy can end a match further on
+            if (!engine.move(current, engine.columnOf(s.charAt(i)), next) || !canFinish(i + 1, next)) {
+                return end;
+            }
+            long[] swap = current;
+            current = next;
+            next = swap;
+        }
+    }
+}
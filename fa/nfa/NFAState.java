@@ -2,14 +2,28 @@ package fa.nfa;
 
 import fa.State;
 
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 public class NFAState extends State {
 
     private boolean isFinal;
     private boolean isStart;
+    // transitions while the NFA is being built, null once compacted
     private LinkedHashMap<Character, Set<NFAState>> delta;
+    // compact transitions, see compact
+    private char[] symbols;
+    private int[] targetStart;
+    private int[] targets;
+    private List<NFAState> universe;
+    private int id;
     
     /**
      * Constructor for a DFA state, initializes to non-start and non-final
@@ -17,12 +31,33 @@ public class NFAState extends State {
      * @param name is the label of state
      */
     public NFAState(String name) {
+        this(name, -1);
+    }
+
+    /**
+     * Constructor for an NFA state with a dense id, initializes to non-start and
+     * non-final
+     * 
+     * @param name is the label of state
+     * @param id   is the bit of this state in the bitset engine
+     */
+    public NFAState(String name, int id) {
         super(name);
         this.isStart = false;
         this.isFinal = false;
+        this.id = id;
         delta = new LinkedHashMap<>();
     }
 
+    /**
+     * Gets the dense id of this state, its insertion index in the NFA
+     * 
+     * @return the id of the state
+     */
+    public int getId() {
+        return this.id;
+    }
+
     /**
      * Sets this state as a final state of the DFA
      * 
@@ -71,16 +106,178 @@ public class NFAState extends State {
      *
      * @return list of to states
      */
-    public Set<NFAState> getTransitions(char c) { return delta.get(c); }
+    public Set<NFAState> getTransitions(char c) {
+        if (delta != null) {
+            return delta.get(c);
+        }
+        int i = Arrays.binarySearch(symbols, c);
+        if (i < 0) {
+            return null;
+        }
+        return new TargetView(universe, targets, targetStart[i], targetStart[i + 1]);
+    }
 
     /**
      * Set the transitions for the state
      */
     public void addTransitions(char c, Set<NFAState> s) {
-        if(delta.containsKey(c)) {
-            Set<NFAState> temp = delta.get(c);
-            s.addAll(temp);
+        Set<NFAState> temp = transitionsFor(c);
+        // copy so the caller's set is never shared with this state
+        temp.addAll(s);
+    }
+
+    /**
+     * Adds a single transition
+     *
+     * @param c the symbol
+     * @param t the target state
+     */
+    void addTransition(char c, NFAState t) {
+        transitionsFor(c).add(t);
+    }
+
+    /**
+     * Gets the modifiable target set of a symbol, creating it if needed
+     */
+    private Set<NFAState> transitionsFor(char c) {
+        if (delta == null) {
+            inflate();
+        }
+        Set<NFAState> temp = delta.get(c);
+        if (temp == null) {
+            temp = new LinkedHashSet<>();
+            delta.put(c, temp);
+        }
+        return temp;
+    }
+
+    /**
+     * Replaces the transition map with sorted primitive arrays. Symbols are kept
+     * sorted in a char[] and the targets of symbols[i] are the ids
+     * targets[targetStart[i] .. targetStart[i + 1]) in ascending order.
+     *
+     * @param universe all states of the NFA indexed by id
+     */
+    void compact(List<NFAState> universe) {
+        if (delta == null) {
+            return;
+        }
+        char[] keys = new char[delta.size()];
+        int count = 0;
+        int edges = 0;
+        for (Map.Entry<Character, Set<NFAState>> entry : delta.entrySet()) {
+            keys[count++] = entry.getKey();
+            edges += entry.getValue().size();
+        }
+        Arrays.sort(keys);
+        int[] start = new int[keys.length + 1];
+        int[] ids = new int[edges];
+        int next = 0;
+        for (int i = 0; i < keys.length; i++) {
+            start[i] = next;
+            for (NFAState t : delta.get(keys[i])) {
+                ids[next++] = t.getId();
+            }
+            Arrays.sort(ids, start[i], next);
+        }
+        start[keys.length] = next;
+        this.symbols = keys;
+        this.targetStart = start;
+        this.targets = ids;
+        this.universe = universe;
+        this.delta = null;
+    }
+
+    /**
+     * Installs compact transitions built elsewhere, in the layout described in
+     * compact
+     *
+     * @param symbols     the symbols with transitions, ascending
+     * @param targetStart where the targets of every symbol begin
+     * @param targets     the target ids, ascending for every symbol
+     * @param universe    all states of the NFA indexed by id
+     */
+    void setCompact(char[] symbols, int[] targetStart, int[] targets, List<NFAState> universe) {
+        this.symbols = symbols;
+        this.targetStart = targetStart;
+        this.targets = targets;
+        this.universe = universe;
+        this.delta = null;
+    }
+
+    /**
+     * Turns the compact arrays back into a modifiable transition map
+     */
+    private void inflate() {
+        delta = new LinkedHashMap<>();
+        for (int i = 0; i < symbols.length; i++) {
+            delta.put(symbols[i], new LinkedHashSet<>(
+                    new TargetView(universe, targets, targetStart[i], targetStart[i + 1])));
+        }
+        symbols = null;
+        targetStart = null;
+        targets = null;
+        universe = null;
+    }
+
+    /**
+     * @return true if the transitions are stored in compact arrays
+     */
+    boolean isCompact() {
+        return delta == null;
+    }
+
+    /**
+     * Read only set of the targets of one symbol of a compact state
+     */
+    private static final class TargetView extends AbstractSet<NFAState> {
+
+        private final List<NFAState> universe;
+        private final int[] targets;
+        private final int from;
+        private final int to;
+
+        TargetView(List<NFAState> universe, int[] targets, int from, int to) {
+            this.universe = universe;
+            this.targets = targets;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Iterator<NFAState> iterator() {
+            return new Iterator<NFAState>() {
+                private int next = from;
+
+                @Override
+                public boolean hasNext() {
+                    return next < to;
+                }
+
+                @Override
+                public NFAState next() {
+                    if (next >= to) {
+                        throw new NoSuchElementException();
+                    }
+                    return universe.get(targets[next++]);
+                }
+            };
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof NFAState)) {
+                return false;
+            }
+            NFAState state = (NFAState) o;
+            int id = state.getId();
+            return id >= 0 && id < universe.size() && universe.get(id) == state
+                    && Arrays.binarySearch(targets, from, to, id) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return to - from;
         }
-        delta.put(c, s);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,398 @@
+package fa.nfa;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs an NFA over one very long input on several cores. The input is cut
+ * into chunks and for every chunk after the first a worker computes its
+ * reachability relation, one epsilon-closed bit row per state the chunk could
+ * start in. The first chunk is simply simulated from the start set. The start
+ * set is then pushed through the relations in order, which gives the exact set
+ * at every chunk boundary.
+ *
+ * A chunk can only start in a state reached on the symbol just before it, so
+ * only those rows are computed, and rows that become equal are merged and
+ * stepped once from then on. Still, a chunk may cost as many set steps as it
+ * has rows times symbols while a serial run costs one per symbol, so the mode
+ * only pays off when rows merge quickly. Every run returns a ParallelRun that
+ * counts the set steps taken and tells whether they exceed what the workers
+ * could do in the time of a serial run.
+ *
+ * A runner only reads the tables of its engine, so it may be shared between
+ * threads.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+public final class ParallelNFARunner {
+
+    /** Default smallest chunk worth its own task */
+    public static final int MIN_CHUNK = 1 << 16;
+
+    private final NFAEngine engine;
+    private final ForkJoinPool pool;
+    private final int minChunk;
+    private final int words;
+    // image[column] is every state reachable on that column, epsilon-closed
+    private final long[][] image;
+
+    /**
+     * Creates a runner on the common fork/join pool
+     *
+     * @param engine the engine of the NFA, see NFA.engine()
+     */
+    public ParallelNFARunner(NFAEngine engine) {
+        this(engine, ForkJoinPool.commonPool(), MIN_CHUNK);
+    }
+
+    /**
+     * @param engine   the engine of the NFA, see NFA.engine()
+     * @param pool     the pool running the chunks
+     * @param minChunk the fewest symbols a chunk may have, inputs shorter than
+     *                 two chunks are run serially
+     */
+    public ParallelNFARunner(NFAEngine engine, ForkJoinPool pool, int minChunk) {
+        if (minChunk < 1) {
+            throw new IllegalArgumentException("chunks need at least one symbol");
+        }
+        this.engine = engine.fork();
+        this.pool = pool;
+        this.minChunk = minChunk;
+        this.words = engine.words();
+        long[] all = new long[words];
+        for (int q = 0; q < engine.getStateCount(); q++) {
+            Bits.set(all, q);
+        }
+        this.image = new long[engine.getColumnCount()][words];
+        for (int column = 0; column < image.length; column++) {
+            engine.move(all, column, image[column]);
+        }
+    }
+
+    /**
+     * Simulates the NFA on input s
+     *
+     * @param s the input, must not change during the run
+     * @return true if any copy of the NFA ends in a final state
+     */
+    public boolean accepts(CharSequence s) {
+        return run(s, false).isAccepted();
+    }
+
+    /**
+     * Determines the maximum number of NFA copies alive while processing s
+     *
+     * @param s the input, must not change during the run
+     * @return the largest number of states in any set reached on s
+     */
+    public int maxCopies(CharSequence s) {
+        return run(s, true).getMaxCopies();
+    }
+
+    /**
+     * Runs the NFA over s and reports the work it took
+     *
+     * @param s           the input, must not change during the run
+     * @param countCopies true to also find the maximum number of copies, which
+     *                    takes a second parallel pass over the chunks
+     * @return the result and the work done
+     */
+    public ParallelRun run(CharSequence s, boolean countCopies) {
+        long begin = System.nanoTime();
+        int length = s.length();
+        int chunks = (int) Math.max(1, Math.min(4L * pool.getParallelism(), length / minChunk));
+        int[] bounds = new int[chunks + 1];
+        for (int i = 1; i <= chunks; i++) {
+            bounds[i] = (int) ((long) length * i / chunks);
+        }
+
+        // boundary[i] is the set at the start of chunk i, boundary[chunks] the end
+        long[][] boundary = new long[chunks + 1][];
+        boundary[0] = new long[words];
+        engine.start(boundary[0]);
+        long steps;
+        if (chunks == 1) {
+            boundary[1] = new long[words];
+            steps = simulate(engine.fork(), boundary[0], s, 0, length, boundary[1], null);
+        } else {
+            Relation[] relations = new Relation[chunks];
+            long[] ends = new long[words];
+            pool.invoke(new Task(s, bounds, boundary[0], relations, ends, 0, chunks));
+            boundary[1] = ends;
+            steps = bounds[1];
+            for (int i = 1; i < chunks; i++) {
+                boundary[i + 1] = new long[words];
+                relations[i].push(boundary[i], boundary[i + 1]);
+                steps += relations[i].steps;
+            }
+        }
+        int maxCopies = -1;
+        if (countCopies) {
+            int[] max = new int[chunks];
+            if (chunks == 1) {
+                max[0] = copies(engine.fork(), boundary[0], s, 0, length);
+            } else {
+                pool.invoke(new CopyTask(s, bounds, boundary, max, 0, chunks));
+            }
+            steps += length;
+            maxCopies = Bits.cardinality(boundary[0]);
+            for (int m : max) {
+                maxCopies = Math.max(maxCopies, m);
+            }
+        }
+        boolean accepted = engine.isFinal(boundary[chunks]);
+        return new ParallelRun(accepted, maxCopies, length, chunks, Math.min(chunks, pool.getParallelism()),
+                steps, System.nanoTime() - begin);
+    }
+
+    /**
+     * Moves set over s[from..to), writing the set reached to end and passing
+     * every set reached to max if it is not null
+     *
+     * @return the number of set steps taken
+     */
+    private static long simulate(NFAEngine engine, long[] set, CharSequence s, int from, int to, long[] end,
+            int[] max) {
+        long[] current = set.clone();
+        long[] next = new long[current.length];
+        int i = from;
+        while (i < to) {
+            boolean alive = engine.move(current, engine.columnOf(s.charAt(i++)), next);
+            long[] swap = current;
+            current = next;
+            next = swap;
+            if (!alive) {
+                break;
+            }
+            if (max != null) {
+                max[0] = Math.max(max[0], Bits.cardinality(current));
+            }
+        }
+        if (end != null) {
+            System.arraycopy(current, 0, end, 0, current.length);
+        }
+        return i - from;
+    }
+
+    /**
+     * @return the most copies alive after any symbol of s[from..to)
+     */
+    private static int copies(NFAEngine engine, long[] set, CharSequence s, int from, int to) {
+        int[] max = new int[1];
+        simulate(engine, set, s, from, to, null, max);
+        return max[0];
+    }
+
+    /**
+     * Computes the relation of chunk s[from..to), from is not 0
+     */
+    private Relation relate(NFAEngine engine, CharSequence s, int from, int to) {
+        int column = engine.columnOf(s.charAt(from - 1));
+        long[] reach = column < 0 ? new long[words] : image[column];
+        int m = Bits.cardinality(reach);
+        int[] candidates = new int[m];
+        int j = 0;
+        for (int w = 0; w < words; w++) {
+            long word = reach[w];
+            while (word != 0) {
+                candidates[j++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        // rows[l] is the set of row l, owner[j] the row of candidate j, -1 when empty
+        long[][] rows = new long[m][words];
+        long[][] next = new long[m][words];
+        int[] owner = new int[m];
+        for (j = 0; j < m; j++) {
+            Bits.set(rows[j], candidates[j]);
+            owner[j] = j;
+        }
+        int live = m;
+        int[] remap = new int[m];
+        int[] hashes = new int[m];
+        int[] slots = new int[Math.max(2, Integer.highestOneBit(Math.max(1, m)) * 4)];
+        long steps = 0;
+        for (int i = from; i < to && live > 0; i++) {
+            int c = engine.columnOf(s.charAt(i));
+            steps += live;
+            if (live == 1) {
+                // nothing left to merge
+                if (!engine.move(rows[0], c, next[0])) {
+                    remap[0] = -1;
+                    live = 0;
+                } else {
+                    remap[0] = 0;
+                }
+                long[][] swap = rows;
+                rows = next;
+                next = swap;
+                if (live == 0) {
+                    updateOwners(owner, remap);
+                }
+                continue;
+            }
+            int mask = Integer.highestOneBit(live) * 4 - 1;
+            Arrays.fill(slots, 0, mask + 1, -1);
+            boolean merged = false;
+            int kept = 0;
+            for (int l = 0; l < live; l++) {
+                long[] out = next[kept];
+                if (!engine.move(rows[l], c, out)) {
+                    remap[l] = -1;
+                    merged = true;
+                    continue;
+                }
+                int h = Arrays.hashCode(out);
+                int slot = h & mask;
+                int found = -1;
+                while (slots[slot] >= 0) {
+                    int other = slots[slot];
+                    if (hashes[other] == h && Arrays.equals(next[other], out)) {
+                        found = other;
+                        break;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+                if (found >= 0) {
+                    remap[l] = found;
+                    merged = true;
+                } else {
+                    slots[slot] = kept;
+                    hashes[kept] = h;
+                    remap[l] = kept++;
+                }
+            }
+            long[][] swap = rows;
+            rows = next;
+            next = swap;
+            if (merged) {
+                updateOwners(owner, remap);
+            }
+            live = kept;
+        }
+        return new Relation(candidates, owner, rows, steps);
+    }
+
+    private static void updateOwners(int[] owner, int[] remap) {
+        for (int j = 0; j < owner.length; j++) {
+            owner[j] = owner[j] < 0 ? -1 : remap[owner[j]];
+        }
+    }
+
+    /**
+     * Reachability relation of a chunk, the row of every state the chunk could
+     * start in
+     */
+    private static final class Relation {
+
+        // ascending candidate starts
+        private final int[] candidates;
+        private final int[] owner;
+        private final long[][] rows;
+        private final long steps;
+
+        Relation(int[] candidates, int[] owner, long[][] rows, long steps) {
+            this.candidates = candidates;
+            this.owner = owner;
+            this.rows = rows;
+            this.steps = steps;
+        }
+
+        /**
+         * ORs the rows of every state of from into to
+         */
+        void push(long[] from, long[] to) {
+            for (int w = 0; w < from.length; w++) {
+                long word = from[w];
+                while (word != 0) {
+                    int q = (w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    int j = Arrays.binarySearch(candidates, q);
+                    if (j >= 0 && owner[j] >= 0) {
+                        Bits.or(to, rows[owner[j]], 0);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Simulates the first chunk and relates the others, splitting in halves
+     */
+    private final class Task extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final CharSequence s;
+        private final int[] bounds;
+        private final long[] start;
+        private final Relation[] relations;
+        private final long[] ends;
+        private final int from;
+        private final int to;
+
+        Task(CharSequence s, int[] bounds, long[] start, Relation[] relations, long[] ends, int from, int to) {
+            this.s = s;
+            this.bounds = bounds;
+            this.start = start;
+            this.relations = relations;
+            this.ends = ends;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                NFAEngine worker = engine.fork();
+                if (from == 0) {
+                    simulate(worker, start, s, 0, bounds[1], ends, null);
+                } else {
+                    relations[from] = relate(worker, s, bounds[from], bounds[from + 1]);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Task(s, bounds, start, relations, ends, from, mid),
+                    new Task(s, bounds, start, relations, ends, mid, to));
+        }
+    }
+
+    /**
+     * Counts the copies of every chunk from its exact start set
+     */
+    private final class CopyTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final CharSequence s;
+        private final int[] bounds;
+        private final long[][] boundary;
+        private final int[] max;
+        private final int from;
+        private final int to;
+
+        CopyTask(CharSequence s, int[] bounds, long[][] boundary, int[] max, int from, int to) {
+            this.s = s;
+            this.bounds = bounds;
+            this.boundary = boundary;
+            this.max = max;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                if (!Bits.isEmpty(boundary[from])) {
+                    max[from] = copies(engine.fork(), boundary[from], s, bounds[from], bounds[from + 1]);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new CopyTask(s, bounds, boundary, max, from, mid),
+                    new CopyTask(s, bounds, boundary, max, mid, to));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package fa.nfa;
+
+/**
+ * Result of one ParallelNFARunner run and the work it took. Work is counted in
+ * set steps, moving one state set over one symbol, which is what a serial run
+ * does once per symbol. The run is reported slower than a serial one when its
+ * steps are more than its workers could take in the time of a serial run.
+ *
+ * @author James Hyle, Rebecca Berg
+ */
+public final class ParallelRun {
+
+    private final boolean accepted;
+    private final int maxCopies;
+    private final int length;
+    private final int chunks;
+    private final int workers;
+    private final long steps;
+    private final long nanos;
+
+    ParallelRun(boolean accepted, int maxCopies, int length, int chunks, int workers, long steps, long nanos) {
+        this.accepted = accepted;
+        this.maxCopies = maxCopies;
+        this.length = length;
+        this.chunks = chunks;
+        this.workers = workers;
+        this.steps = steps;
+        this.nanos = nanos;
+    }
+
+    /**
+     * @return true if any copy of the NFA ended in a final state
+     */
+    public boolean isAccepted() {
+        return accepted;
+    }
+
+    /**
+     * @return the largest number of copies alive, -1 if they were not counted
+     */
+    public int getMaxCopies() {
+        return maxCopies;
+    }
+
+    /**
+     * @return the number of chunks the input was cut into
+     */
+    public int getChunks() {
+        return chunks;
+    }
+
+    /**
+     * @return the set steps taken by all workers together
+     */
+    public long getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return set steps per input symbol, a serial run takes at most 1
+     */
+    public double getOverhead() {
+        return length == 0 ? 0 : (double) steps / length;
+    }
+
+    /**
+     * @return true if the workers did more steps than they could take while a
+     *         single thread simulated the input serially
+     */
+    public boolean isSlowerThanSequential() {
+        return steps > (long) length * workers;
+    }
+
+    /**
+     * @return the wall clock time of the run in nanoseconds
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s, %d chunks on %d workers, %.2f steps per symbol%s", accepted ? "accepted"
+                : "rejected", chunks, workers, getOverhead(), isSlowerThanSequential() ? ", slower than serial" : "");
+    }
+}
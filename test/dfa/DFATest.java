@@ -2,11 +2,42 @@ package test.dfa;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 
+import fa.AlphabetClasses;
+import fa.LanguageCheck;
+import fa.AutomatonBuilder;
+import fa.AutomatonParser;
+import fa.FAInterface;
 import fa.dfa.DFA;
+import fa.dfa.DFAFormat;
+import fa.dfa.DFAMatcher;
+import fa.dfa.DFASearcher;
+import fa.dfa.DFATable;
+import fa.dfa.FrozenDFA;
+import fa.dfa.MappedScanner;
+import fa.dfa.ProductMatcher;
+import fa.dfa.ProductOperation;
+import fa.dfa.SpeculativeRunner;
 
 public class DFATest {
 
@@ -122,6 +153,18 @@ public class DFATest {
 		assertTrue(dfaSwap.accepts("010"));
 		assertFalse(dfaSwap.accepts("e"));
 
+		// only the transitions are swapped, Sigma keeps its order
+		String expStr = "Q = { a b }\n"
+				+ "Sigma = { 0 1 }\n"
+				+ "delta =\n"
+				+ "\t0\t1\n"
+				+ "a\tb\ta\t\n"
+				+ "b\tb\ta\t\n"
+				+ "q0 = a\n"
+				+ "F = { b }\n";
+		assertEquals(expStr, dfaSwap.toString());
+		assertEquals(dfa.getSigma(), dfa.swap('1', '2').getSigma());
+
 		System.out.println("dfa1Swap accept pass");
 	}
 
@@ -401,4 +444,1055 @@ public class DFATest {
 		System.out.println("dfa3Swap accept pass");
 	}
 
+	// ------------------- compiled table tests ----------------------//
+	@Test
+	public void test4_1() {
+		DFA dfa = dfa1();
+		DFATable table = dfa.compile();
+		// cached until the DFA changes
+		assertSame(table, dfa.compile());
+		assertEquals(2, table.getStateCount());
+		assertEquals(2, table.getSymbolCount());
+		assertEquals(dfa.getState("a").getId(), table.getStart());
+		assertTrue(table.isFinal(dfa.getState("b").getId()));
+		assertTrue(table.accepts("101"));
+		assertFalse(table.accepts("2"));
+
+		System.out.println("dfa1 compile pass");
+	}
+
+	@Test
+	public void test4_2() {
+		DFA dfa = dfa1();
+		DFATable table = dfa.compile();
+
+		// every builder call invalidates the compiled table
+		assertTrue(dfa.setFinal("a"));
+		assertNotSame(table, dfa.compile());
+		assertTrue(dfa.accepts("0"));
+
+		table = dfa.compile();
+		assertTrue(dfa.setStart("b"));
+		assertNotSame(table, dfa.compile());
+
+		table = dfa.compile();
+		assertTrue(dfa.addTransition("b", "b", '0'));
+		assertNotSame(table, dfa.compile());
+		assertTrue(dfa.accepts(""));
+		assertTrue(dfa.accepts("00"));
+
+		System.out.println("dfa1 compile invalidation pass");
+	}
+
+	@Test
+	public void test4_3() {
+		DFA dfa = new DFA();
+		dfa.addSigma('x');
+		assertTrue(dfa.addState("p"));
+		assertTrue(dfa.addState("q"));
+		assertTrue(dfa.setStart("p"));
+		assertTrue(dfa.setFinal("q"));
+		assertTrue(dfa.addTransition("p", "q", 'x'));
+
+		// partial DFA, q has no transition on x
+		assertTrue(dfa.accepts("x"));
+		assertFalse(dfa.accepts("xx"));
+		assertFalse(dfa.accepts(""));
+		assertFalse(dfa.accepts("y"));
+
+		System.out.println("partial dfa compile pass");
+	}
+
+	// ------------------- minimization tests ----------------------//
+	/**
+	 * Checks that two DFAs agree on every string over the given symbols up to
+	 * the given length
+	 */
+	private void assertSameLanguage(DFA expected, DFA actual, String symbols, int maxLength) {
+		List<String> level = List.of("");
+		for (int len = 0; len <= maxLength; len++) {
+			List<String> longer = new ArrayList<>();
+			for (String w : level) {
+				assertEquals(w, expected.accepts(w), actual.accepts(w));
+				for (char c : symbols.toCharArray()) {
+					longer.add(w + c);
+				}
+			}
+			level = longer;
+		}
+	}
+
+	@Test
+	public void test5_1() {
+		DFA dfa = dfa3();
+		DFA min = dfa.minimize();
+		// B and E, and C and F are equivalent
+		assertEquals(5, min.compile().getStateCount());
+		assertTrue(min.isStart("A"));
+		assertSameLanguage(dfa, min, "12", 8);
+
+		assertEquals(2, dfa1().minimize().compile().getStateCount());
+		assertSameLanguage(dfa2(), dfa2().minimize(), "01", 8);
+		System.out.println("dfa minimize pass");
+	}
+
+	@Test
+	public void test5_2() {
+		DFA dfa = new DFA();
+		dfa.addSigma('a');
+		dfa.addSigma('b');
+		assertTrue(dfa.addState("s"));
+		assertTrue(dfa.addState("t"));
+		assertTrue(dfa.addState("u"));
+		assertTrue(dfa.addState("unreachable"));
+		assertTrue(dfa.setStart("s"));
+		assertTrue(dfa.setFinal("t"));
+		assertTrue(dfa.setFinal("u"));
+		assertTrue(dfa.setFinal("unreachable"));
+		// partial DFA accepting a+, t and u are equivalent
+		assertTrue(dfa.addTransition("s", "t", 'a'));
+		assertTrue(dfa.addTransition("t", "u", 'a'));
+		assertTrue(dfa.addTransition("u", "t", 'a'));
+		assertTrue(dfa.addTransition("unreachable", "s", 'b'));
+
+		DFA min = dfa.minimize();
+		assertEquals(2, min.compile().getStateCount());
+		assertNull(min.getState("unreachable"));
+		assertSameLanguage(dfa, min, "ab", 8);
+
+		// a DFA without final states keeps a single rejecting start state
+		DFA empty = new DFA();
+		empty.addSigma('a');
+		assertTrue(empty.addState("x"));
+		assertTrue(empty.setStart("x"));
+		DFA emptyMin = empty.minimize();
+		assertEquals(1, emptyMin.compile().getStateCount());
+		assertFalse(emptyMin.accepts(""));
+		assertFalse(emptyMin.accepts("a"));
+		System.out.println("partial dfa minimize pass");
+	}
+
+	@Test
+	public void test5_3() throws IOException {
+		// merged states keep the name of a member, product names print safely
+		for (DFA product : new DFA[] { dfa1().intersect(dfa2()), dfa1().union(dfa2()), dfa1().difference(dfa3()),
+				dfa3().union(dfa3()) }) {
+			DFA min = product.minimize();
+			String text = min.toString();
+			DFA parsed = DFA.from(AutomatonParser.parseTable(new StringReader(text)));
+			assertEquals(text, parsed.toString());
+			assertSameLanguage(product, parsed, "012x", 5);
+		}
+		System.out.println("minimized product parser pass");
+	}
+
+	// ------------------- large automaton tests ----------------------//
+	@Test(timeout = 20000)
+	public void test6_1() {
+		// a 50k state cycle, quadratic state lookup would take minutes
+		int n = 50000;
+		DFA dfa = new DFA();
+		dfa.addSigma('0');
+		dfa.addSigma('1');
+		for (int i = 0; i < n; i++) {
+			assertTrue(dfa.addState("s" + i));
+		}
+		assertTrue(dfa.setStart("s0"));
+		assertTrue(dfa.setStart("s1"));
+		assertTrue(dfa.setStart("s0"));
+		assertFalse(dfa.isStart("s1"));
+		assertTrue(dfa.setFinal("s" + (n - 1)));
+		for (int i = 0; i < n; i++) {
+			assertTrue(dfa.addTransition("s" + i, "s" + ((i + 1) % n), '1'));
+			assertTrue(dfa.addTransition("s" + i, "s" + i, '0'));
+		}
+		assertSame(dfa.getState("s" + (n / 2)), dfa.getState("s" + (n / 2)));
+		assertTrue(dfa.accepts("1".repeat(n - 1)));
+		assertFalse(dfa.accepts("1".repeat(n)));
+		System.out.println("large dfa pass");
+	}
+
+	// ------------------- streaming matcher tests ----------------------//
+	@Test
+	public void test7_1() {
+		DFA dfa = dfa2();
+		DFAMatcher m = dfa.matcher();
+		assertFalse(m.isAccepting());
+		// "111011111111110" in uneven chunks
+		m.feed("1110").feed("1111".toCharArray(), 0, 4).feed("").feed("xx1111110".toCharArray(), 2, 7);
+		assertTrue(m.isAccepting());
+		m.feed("0");
+		assertTrue(m.isAccepting());
+
+		m.reset();
+		m.feed("00");
+		assertTrue(m.isAccepting());
+		m.feed("2");
+		assertTrue(m.isDead());
+		assertFalse(m.isAccepting());
+		m.feed("0");
+		assertFalse(m.isAccepting());
+
+		m.reset();
+		assertFalse(m.isDead());
+		StringBuilder chunk = new StringBuilder("01");
+		for (int i = 0; i < 1000; i++) {
+			m.feed(chunk);
+		}
+		assertFalse(m.isAccepting());
+		System.out.println("dfa2 matcher pass");
+	}
+
+	// ------------------- batch tests ----------------------//
+	@Test
+	public void test8_1() {
+		DFA dfa = dfa3();
+		Random random = new Random(361);
+		List<String> inputs = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			StringBuilder sb = new StringBuilder();
+			int length = random.nextInt(20);
+			for (int j = 0; j < length; j++) {
+				sb.append(random.nextBoolean() ? '1' : '2');
+			}
+			inputs.add(sb.toString());
+		}
+		BitSet accepted = dfa.acceptsAll(inputs);
+		for (int i = 0; i < inputs.size(); i++) {
+			assertEquals(inputs.get(i), dfa.accepts(inputs.get(i)), accepted.get(i));
+		}
+		assertEquals(accepted, dfa.acceptsAll(inputs.stream()));
+		assertEquals(accepted, dfa.acceptsAll(new LinkedList<>(inputs)));
+		assertTrue(dfa.acceptsAll(List.of()).isEmpty());
+		System.out.println("dfa3 batch pass");
+	}
+
+	// ------------------- mapped scanner tests ----------------------//
+	@Test
+	public void test9_1() throws IOException {
+		DFA dfa = dfa3();
+		Random random = new Random(8191);
+		Path file = Files.createTempFile("lines", ".txt");
+		List<Long> expected = new ArrayList<>();
+		try {
+			// a few MB so the file is split into several segments
+			StringBuilder sb = new StringBuilder();
+			while (sb.length() < 3 << 20) {
+				String line = randomLine(random);
+				if (dfa.accepts(line)) {
+					expected.add((long) sb.length());
+				}
+				sb.append(line).append('\n');
+			}
+			// last line without a newline
+			String last = "2221";
+			if (dfa.accepts(last)) {
+				expected.add((long) sb.length());
+			}
+			sb.append(last);
+			Files.write(file, sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+
+			ForkJoinPool pool = new ForkJoinPool(4);
+			MappedScanner scanner = new MappedScanner(dfa.compile(), pool);
+			List<Long> offsets = new ArrayList<>();
+			assertEquals(expected.size(), scanner.scan(file, offsets::add));
+			assertEquals(expected, offsets);
+			assertEquals(expected.size(), scanner.count(file));
+			pool.shutdown();
+
+			// one thread scans only two segments ahead of the consumer
+			ForkJoinPool single = new ForkJoinPool(1);
+			offsets.clear();
+			assertEquals(expected.size(), new MappedScanner(dfa.compile(), single).scan(file, offsets::add));
+			assertEquals(expected, offsets);
+			single.shutdown();
+		} finally {
+			Files.delete(file);
+		}
+		System.out.println("dfa3 mapped scanner pass");
+	}
+
+	@Test
+	public void test9_2() throws IOException {
+		DFA dfa = dfa1();
+		Path file = Files.createTempFile("lines", ".txt");
+		try {
+			// empty lines and bytes outside the alphabet
+			Files.write(file, "0\n\n1x\n001\n".getBytes(StandardCharsets.ISO_8859_1));
+			List<Long> offsets = new ArrayList<>();
+			long count = new MappedScanner(dfa.compile()).scan(file, offsets::add);
+			List<Long> expected = new ArrayList<>();
+			String[] lines = { "0", "", "1x", "001" };
+			long at = 0;
+			for (String line : lines) {
+				if (dfa.accepts(line)) {
+					expected.add(at);
+				}
+				at += line.length() + 1;
+			}
+			assertEquals(expected.size(), count);
+			assertEquals(expected, offsets);
+			Files.write(file, new byte[0]);
+			assertEquals(0, new MappedScanner(dfa.compile()).count(file));
+		} finally {
+			Files.delete(file);
+		}
+		System.out.println("dfa1 mapped scanner pass");
+	}
+
+	@Test
+	public void test9_3() throws IOException {
+		DFA dfa = dfa3();
+		Random random = new Random(131071);
+		Path file = Files.createTempFile("lines", ".txt");
+		List<Long> expected = new ArrayList<>();
+		try {
+			// CRLF line ends, several segments
+			StringBuilder sb = new StringBuilder();
+			while (sb.length() < 3 << 20) {
+				String line = randomLine(random);
+				if (dfa.accepts(line)) {
+					expected.add((long) sb.length());
+				}
+				sb.append(line).append("\r\n");
+			}
+			// a '\r' not before '\n' stays part of the line
+			sb.append("1\r1\r\n");
+			sb.append("1\r");
+			Files.write(file, sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+
+			ForkJoinPool pool = new ForkJoinPool(4);
+			MappedScanner scanner = new MappedScanner(dfa.compile(), pool);
+			List<Long> offsets = new ArrayList<>();
+			assertEquals(expected.size(), scanner.scan(file, offsets::add));
+			assertEquals(expected, offsets);
+			assertEquals(expected.size(), scanner.count(file));
+			pool.shutdown();
+		} finally {
+			Files.delete(file);
+		}
+		System.out.println("dfa3 CRLF mapped scanner pass");
+	}
+
+	private static String randomLine(Random random) {
+		StringBuilder line = new StringBuilder();
+		int length = random.nextInt(30);
+		for (int j = 0; j < length; j++) {
+			line.append(random.nextInt(50) == 0 ? 'x' : random.nextBoolean() ? '1' : '2');
+		}
+		return line.toString();
+	}
+
+	// ------------------- freeze tests ----------------------//
+	@Test
+	public void test10_1() throws Exception {
+		DFA dfa = dfa3();
+		FrozenDFA frozen = dfa.freeze();
+		List<String> inputs = new ArrayList<>();
+		Random random = new Random(97);
+		for (int i = 0; i < 2000; i++) {
+			inputs.add(randomLine(random));
+		}
+		BitSet expected = dfa.acceptsAll(inputs);
+		// many threads share one snapshot
+		ExecutorService threads = Executors.newFixedThreadPool(8);
+		List<Future<Boolean>> results = new ArrayList<>();
+		for (String input : inputs) {
+			results.add(threads.submit(() -> frozen.accepts(input)));
+		}
+		for (int i = 0; i < inputs.size(); i++) {
+			assertEquals(inputs.get(i), expected.get(i), results.get(i).get());
+		}
+		threads.shutdown();
+		assertEquals(expected, frozen.acceptsAll(inputs));
+
+		// the snapshot does not see later changes
+		assertTrue(dfa.addState("X"));
+		assertTrue(dfa.setFinal("X"));
+		assertTrue(dfa.addTransition("A", "X", '1'));
+		assertTrue(dfa.accepts("1"));
+		assertFalse(frozen.accepts("1"));
+		assertEquals(dfa.getState("A").getId(), frozen.idOf("A"));
+		assertEquals(DFATable.DEAD, frozen.idOf("X"));
+		System.out.println("dfa3 freeze pass");
+	}
+
+	@Test
+	public void test10_2() {
+		DFA dfa = dfa1();
+		// toString does not accumulate across calls
+		assertEquals(dfa.toString(), dfa.toString());
+		System.out.println("dfa1 toString pass");
+	}
+
+	// ------------------- swap view tests ----------------------//
+	@Test
+	public void test11_1() {
+		DFA dfa = dfa3();
+		DFA swapped = dfa.swap('1', '2');
+		DFATable view = dfa.swapView('1', '2');
+		DFATable back = view.swap('2', '1');
+		FrozenDFA frozen = dfa.freeze().swap('1', '2');
+		Random random = new Random(15);
+		for (int i = 0; i < 2000; i++) {
+			String s = randomLine(random);
+			String exchanged = s.replace('1', '#').replace('2', '1').replace('#', '2');
+			assertEquals(s, dfa.accepts(exchanged), swapped.accepts(s));
+			assertEquals(s, swapped.accepts(s), view.accepts(s));
+			assertEquals(s, swapped.accepts(s), frozen.accepts(s));
+			// swapping the view back composes to the original
+			assertEquals(s, dfa.accepts(s), back.accepts(s));
+		}
+		System.out.println("dfa3 swap view pass");
+	}
+
+	@Test
+	public void test11_2() {
+		DFA dfa = dfa3();
+		// 3 is not in the alphabet, it takes over the transitions of 1
+		DFATable view = dfa.swapView('1', '3');
+		// the copy keeps its alphabet, so 1 has no transitions and 3 is rejected
+		DFA swapped = dfa.swap('1', '3');
+		assertEquals(dfa.getSigma(), swapped.getSigma());
+		Random random = new Random(16);
+		for (int i = 0; i < 500; i++) {
+			String s = randomLine(random);
+			assertEquals(s, dfa.accepts(s), view.accepts(s.replace('1', '3')));
+			assertEquals(s, dfa.accepts(s) && s.indexOf('1') < 0, swapped.accepts(s));
+			if (s.indexOf('1') >= 0) {
+				assertFalse(s, view.accepts(s));
+				assertFalse(s, swapped.accepts(s.replace('1', '3')));
+			}
+		}
+		// chained swaps only relabel, 1 -> 3 -> 2 and 2 -> 1
+		DFATable chained = view.swap('3', '2');
+		for (int i = 0; i < 500; i++) {
+			String s = randomLine(random);
+			String relabeled = s.replace('2', '#').replace('1', '2').replace('#', '3');
+			assertEquals(s, dfa.accepts(s), chained.accepts(relabeled));
+		}
+		System.out.println("dfa3 chained swap pass");
+	}
+
+	@Test
+	public void test11_3() {
+		DFA dfa = dfa1();
+		DFA copy = dfa.copy();
+		assertTrue(copy != dfa);
+		assertTrue(copy.getState("a") != dfa.getState("a"));
+		assertEquals(dfa.toString(), copy.toString());
+		assertEquals(dfa.getState("b").getId(), copy.getState("b").getId());
+		// changes to the copy stay in the copy
+		assertTrue(copy.addTransition("a", "a", '1'));
+		assertFalse(copy.accepts("1"));
+		assertTrue(dfa.accepts("1"));
+		System.out.println("dfa1 copy pass");
+	}
+
+	// ------------------- binary format tests ----------------------//
+	@Test
+	public void test12_1() throws IOException {
+		DFA dfa = dfa3();
+		Path file = Files.createTempFile("dfa3", ".fa");
+		try {
+			DFAFormat.write(dfa, file);
+			FrozenDFA loaded = DFAFormat.load(file);
+			assertEquals(dfa.getState("A").getId(), loaded.idOf("A"));
+			assertTrue(loaded.isFinal("G"));
+			assertFalse(loaded.isFinal("A"));
+			Random random = new Random(16);
+			for (int i = 0; i < 2000; i++) {
+				String s = randomLine(random);
+				assertEquals(s, dfa.accepts(s), loaded.accepts(s));
+			}
+		} finally {
+			Files.delete(file);
+		}
+		System.out.println("dfa3 binary format pass");
+	}
+
+	@Test
+	public void test12_2() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DFAFormat.write(dfa1().freeze(), out);
+		byte[] bytes = out.toByteArray();
+		assertTrue(DFAFormat.read(ByteBuffer.wrap(bytes)).accepts("01"));
+
+		// a flipped byte fails the checksum
+		byte[] corrupt = bytes.clone();
+		corrupt[corrupt.length / 2] ^= 1;
+		assertThrows(IOException.class, () -> DFAFormat.read(ByteBuffer.wrap(corrupt)));
+		// so does a truncated file
+		assertThrows(IOException.class, () -> DFAFormat.read(ByteBuffer.wrap(Arrays.copyOf(bytes, 20))));
+		assertThrows(IOException.class, () -> DFAFormat.read(ByteBuffer.wrap(new byte[3])));
+		System.out.println("dfa1 corrupt binary format pass");
+	}
+
+	// ------------------- parser tests ----------------------//
+	@Test
+	public void test13_1() throws IOException {
+		DFA dfa = dfa3();
+		// the toString layout reads back into the same DFA
+		DFA parsed = DFA.from(AutomatonParser.parseTable(new StringReader(dfa.toString())));
+		assertEquals(dfa.toString(), parsed.toString());
+		assertEquals(dfa.getState("C").getId(), parsed.getState("C").getId());
+		Random random = new Random(18);
+		for (int i = 0; i < 1000; i++) {
+			String s = randomLine(random);
+			assertEquals(s, dfa.accepts(s), parsed.accepts(s));
+		}
+		System.out.println("dfa3 table parser pass");
+	}
+
+	@Test
+	public void test13_2() throws IOException {
+		String edges = "# dfa1 as an edge list\n"
+				+ "states: a b\n"
+				+ "sigma: 0 1\n"
+				+ "start: a\n"
+				+ "final: b\n"
+				+ "a 0 a\n"
+				+ "a 1 b\n"
+				+ "\n"
+				+ "b 0 a\n"
+				+ "b 1 b\n";
+		DFA parsed = DFA.from(AutomatonParser.parseEdges(new StringReader(edges)));
+		assertEquals(dfa1().toString(), parsed.toString());
+
+		// a symbol outside the declared sigma is an error
+		assertThrows(IOException.class,
+				() -> AutomatonParser.parseEdges(new StringReader("sigma: 0\na 1 b\n")));
+		assertThrows(IOException.class, () -> AutomatonParser.parseEdges(new StringReader("a 0\n")));
+		// and so is one the builder never declared
+		AutomatonBuilder builder = new AutomatonBuilder();
+		builder.addTransition(builder.state("a"), '0', builder.state("b"));
+		assertThrows(IllegalArgumentException.class, () -> DFA.from(builder));
+		System.out.println("dfa1 edge list parser pass");
+	}
+
+	@Test
+	public void test13_3() throws IOException {
+		// a partial DFA read back from a file, - is a missing transition
+		DFA dfa = new DFA();
+		dfa.addSigma('0');
+		dfa.addSigma('1');
+		dfa.addState("p");
+		dfa.addState("q");
+		dfa.setStart("p");
+		dfa.setFinal("q");
+		dfa.addTransition("p", "q", '1');
+		dfa.addTransition("q", "q", '0');
+		Path file = Files.createTempFile("partial", ".txt");
+		try {
+			Files.write(file, dfa.toString().getBytes(StandardCharsets.UTF_8));
+			DFA parsed = DFA.from(AutomatonParser.parseTable(file));
+			assertEquals(dfa.toString(), parsed.toString());
+			assertTrue(parsed.accepts("100"));
+			assertFalse(parsed.accepts("11"));
+		} finally {
+			Files.delete(file);
+		}
+		System.out.println("partial dfa table file parser pass");
+	}
+
+	// ------------------- alphabet class tests ----------------------//
+	private DFA hexWords() throws IOException {
+		// a run of digits or a run of letters
+		StringBuilder edges = new StringBuilder("sigma: 0 1 2 3 4 5 6 7 8 9 a b c d e f\nstart: s\nfinal: d x\n");
+		for (char c : "0123456789".toCharArray()) {
+			edges.append("s ").append(c).append(" d\nd ").append(c).append(" d\n");
+		}
+		for (char c : "abcdef".toCharArray()) {
+			edges.append("s ").append(c).append(" x\nx ").append(c).append(" x\n");
+		}
+		return DFA.from(AutomatonParser.parseEdges(new StringReader(edges.toString())));
+	}
+
+	@Test
+	public void test14_1() throws IOException {
+		DFA dfa = hexWords();
+		DFATable table = dfa.compile();
+		// digits share a column and so do letters
+		assertEquals(16, table.getSymbolCount());
+		assertEquals(2, table.getColumnCount());
+		assertEquals(table.columnOf('3'), table.columnOf('9'));
+		assertNotEquals(table.columnOf('3'), table.columnOf('c'));
+		assertEquals(DFATable.DEAD, table.columnOf('g'));
+		assertTrue(table.accepts("0123"));
+		assertTrue(table.accepts("beef"));
+		assertFalse(table.accepts("1a"));
+		assertFalse(table.accepts("1g"));
+
+		// minimizing and reloading keep the language and the classes
+		DFA minimal = dfa.minimize();
+		assertSameLanguage(dfa, minimal, "019af", 4);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DFAFormat.write(dfa.freeze(), out);
+		FrozenDFA loaded = DFAFormat.read(ByteBuffer.wrap(out.toByteArray()));
+		assertEquals(2, loaded.getClassCount());
+		assertTrue(loaded.accepts("42"));
+		assertFalse(loaded.accepts("4f"));
+
+		// a swap moves single symbols between classes
+		DFATable swapped = dfa.swapView('1', 'a');
+		assertTrue(swapped.accepts("a23"));
+		assertTrue(swapped.accepts("1bc"));
+		assertFalse(swapped.accepts("123"));
+		assertTrue(table.accepts("123"));
+		System.out.println("hex words alphabet classes pass");
+	}
+
+	@Test
+	public void test14_2() {
+		char[] symbols = { 'p', 'q', 'r', 's' };
+		AlphabetClasses.Refiner refiner = new AlphabetClasses.Refiner(symbols);
+		// state 0: p and q go to 1, r to 2, s has no transition
+		refiner.move('p', 1);
+		refiner.move('q', 1);
+		refiner.move('r', 2);
+		refiner.nextState();
+		// state 1: only q differs from p
+		refiner.move('p', 0);
+		refiner.move('q', 3);
+		refiner.nextState();
+		AlphabetClasses classes = refiner.finish();
+		assertEquals(4, classes.getClassCount());
+		assertEquals(0, classes.classOf('p'));
+		assertEquals(AlphabetClasses.NONE, classes.classOf('z'));
+		assertEquals(AlphabetClasses.NONE, classes.classOf('\u4e00'));
+
+		// symbols nothing tells apart share a class
+		refiner = new AlphabetClasses.Refiner(symbols);
+		refiner.move('p', 1);
+		refiner.move('r', 1);
+		refiner.nextState();
+		classes = refiner.finish();
+		assertEquals(2, classes.getClassCount());
+		assertEquals(classes.classOf('p'), classes.classOf('r'));
+		assertEquals(classes.classOf('q'), classes.classOf('s'));
+		assertEquals('q', classes.representative(classes.classOf('s')));
+		assertEquals("{ [pr] [qs] }", classes.toString());
+
+		assertEquals(4, AlphabetClasses.singletons(symbols).getClassCount());
+		assertThrows(IllegalArgumentException.class, () -> new AlphabetClasses.Refiner(symbols).move('z', 0));
+
+		// every state of dfa3 still steps the same on every symbol
+		DFA dfa = dfa3();
+		DFATable table = dfa.compile();
+		assertTrue(table.getColumnCount() <= table.getSymbolCount());
+		Random random = new Random(19);
+		for (int i = 0; i < 1000; i++) {
+			String s = randomLine(random);
+			assertEquals(s, dfa.accepts(s), table.accepts(s));
+		}
+		System.out.println("alphabet class refinement pass");
+	}
+
+	// ------------------- speculative run tests ----------------------//
+	private DFA randomDFA(Random random, int n, String symbols, boolean cycle) {
+		DFA dfa = new DFA();
+		for (char c : symbols.toCharArray()) {
+			dfa.addSigma(c);
+		}
+		for (int q = 0; q < n; q++) {
+			assertTrue(dfa.addState("s" + q));
+		}
+		assertTrue(dfa.setStart("s0"));
+		for (int q = 0; q < n; q += 3) {
+			assertTrue(dfa.setFinal("s" + q));
+		}
+		for (int q = 0; q < n; q++) {
+			for (char c : symbols.toCharArray()) {
+				// a cycle is a permutation on every symbol, so runs never merge
+				int to = cycle ? (q + c) % n : random.nextInt(n);
+				assertTrue(dfa.addTransition("s" + q, "s" + to, c));
+			}
+		}
+		return dfa;
+	}
+
+	@Test
+	public void test15_1() {
+		Random random = new Random(20);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 200_000; i++) {
+			sb.append((char) ('a' + random.nextInt(3)));
+		}
+		String input = sb.toString();
+		for (boolean cycle : new boolean[] { false, true }) {
+			DFATable table = randomDFA(random, cycle ? 200 : 40, "abc", cycle).compile();
+			int expected = table.run(table.getStart(), input, 0, input.length());
+			for (int minChunk : new int[] { 1, 7, 1000, 1 << 20 }) {
+				SpeculativeRunner runner = new SpeculativeRunner(table, pool, minChunk);
+				assertEquals(expected, runner.run(input));
+				for (int length : new int[] { 0, 1, 5, 999, 12345 }) {
+					String part = input.substring(length);
+					assertEquals(table.run(table.getStart(), part, 0, part.length()), runner.run(part));
+				}
+			}
+		}
+		pool.shutdown();
+		System.out.println("random dfa speculative run pass");
+	}
+
+	@Test
+	public void test15_2() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		DFA dfa = dfa3();
+		SpeculativeRunner runner = new SpeculativeRunner(dfa.compile(), pool, 3);
+		Random random = new Random(21);
+		for (int i = 0; i < 300; i++) {
+			StringBuilder sb = new StringBuilder();
+			while (sb.length() < 200) {
+				sb.append(randomLine(random));
+			}
+			String s = sb.toString();
+			assertEquals(s, dfa.accepts(s), runner.accepts(s));
+		}
+		// a symbol outside the alphabet in the middle kills every run
+		String dead = "1".repeat(5000) + "x" + "1".repeat(5000);
+		assertFalse(runner.accepts(dead));
+		assertFalse(dfa1().acceptsParallel("01".repeat(100_000) + "0"));
+		assertTrue(dfa1().acceptsParallel("01".repeat(100_000)));
+		// no start state rejects everything
+		DFA empty = new DFA();
+		empty.addSigma('0');
+		assertFalse(new SpeculativeRunner(empty.compile(), pool, 1).accepts("0000"));
+		assertThrows(IllegalArgumentException.class, () -> new SpeculativeRunner(dfa.compile(), pool, 0));
+		pool.shutdown();
+		System.out.println("dfa3 speculative run pass");
+	}
+
+	// ------------------- product tests ----------------------//
+	/**
+	 * Checks a product DFA and a product matcher against both DFAs on every
+	 * string over the given symbols up to the given length
+	 */
+	private void assertProduct(DFA a, DFA b, ProductOperation op, String symbols, int maxLength) {
+		DFA product = op == ProductOperation.INTERSECT ? a.intersect(b)
+				: op == ProductOperation.UNION ? a.union(b)
+				: op == ProductOperation.DIFFERENCE ? a.difference(b) : a.difference(b).union(b.difference(a));
+		ProductMatcher matcher = a.productMatcher(b, op);
+		List<String> level = List.of("");
+		for (int len = 0; len <= maxLength; len++) {
+			List<String> longer = new ArrayList<>();
+			for (String w : level) {
+				boolean expected = op.accepts(a.accepts(w), b.accepts(w));
+				assertEquals(op + " " + w, expected, product.accepts(w));
+				matcher.reset();
+				assertEquals(op + " " + w, expected, matcher.feed(w).isAccepting());
+				for (char c : symbols.toCharArray()) {
+					longer.add(w + c);
+				}
+			}
+			level = longer;
+		}
+	}
+
+	@Test
+	public void test16_1() {
+		for (ProductOperation op : ProductOperation.values()) {
+			assertProduct(dfa1(), dfa2(), op, "01", 8);
+			assertProduct(dfa2(), dfa1(), op, "01", 8);
+			// different alphabets, the other side dies on a symbol it lacks
+			assertProduct(dfa1(), dfa3(), op, "012", 6);
+			assertProduct(dfa3(), dfa3(), op, "12x", 6);
+		}
+		DFA product = dfa1().intersect(dfa2());
+		assertTrue(product.isStart("(a,0)"));
+		assertEquals(Set.of('0', '1'), product.getSigma());
+		// a DFA minus itself is empty
+		Random random = new Random(22);
+		for (int i = 0; i < 200; i++) {
+			assertFalse(dfa3().difference(dfa3()).accepts(randomLine(random)));
+		}
+		System.out.println("product pass");
+	}
+
+	@Test
+	public void test16_2() {
+		// pairs of two 100 state counters, one input only visits a few of them
+		DFA a = new DFA();
+		DFA b = new DFA();
+		a.addSigma('0');
+		a.addSigma('1');
+		b.addSigma('0');
+		b.addSigma('1');
+		int n = 100;
+		for (int q = 0; q < n; q++) {
+			a.addState("a" + q);
+			b.addState("b" + q);
+		}
+		a.setStart("a0");
+		b.setStart("b0");
+		a.setFinal("a3");
+		b.setFinal("b5");
+		for (int q = 0; q < n; q++) {
+			a.addTransition("a" + q, "a" + (q + 1) % n, '1');
+			a.addTransition("a" + q, "a" + q, '0');
+			b.addTransition("b" + q, "b" + (q + 1) % n, '0');
+			b.addTransition("b" + q, "b" + q, '1');
+		}
+		ProductMatcher matcher = a.productMatcher(b, ProductOperation.INTERSECT);
+		assertTrue(matcher.feed("111").feed("00000".toCharArray(), 0, 5).isAccepting());
+		assertTrue(matcher.getPairCount() <= 9);
+		int pairs = matcher.getPairCount();
+		matcher.reset();
+		// the same input again uses the pairs already built
+		assertTrue(matcher.feed("11100000").isAccepting());
+		assertEquals(pairs, matcher.getPairCount());
+		assertFalse(matcher.feed("x").isAccepting());
+		assertTrue(matcher.isDead());
+
+		// the eager product keeps only the reachable pairs, all of them here
+		DFA product = a.intersect(b);
+		assertEquals(n * n, product.minimize().freeze().getStateCount());
+		assertTrue(product.accepts("10100100"));
+		System.out.println("product matcher pass");
+	}
+
+	@Test
+	public void test16_3() throws IOException {
+		// ends in 1 and does not end in 1 share no string
+		DFA notOne = new DFA();
+		notOne.addSigma('0');
+		notOne.addSigma('1');
+		notOne.addState("c");
+		notOne.addState("d");
+		notOne.setStart("c");
+		notOne.setFinal("c");
+		notOne.addTransition("c", "c", '0');
+		notOne.addTransition("c", "d", '1');
+		notOne.addTransition("d", "c", '0');
+		notOne.addTransition("d", "d", '1');
+		DFA product = dfa1().intersect(notOne);
+		Random random = new Random(23);
+		for (int i = 0; i < 200; i++) {
+			StringBuilder w = new StringBuilder();
+			for (int j = random.nextInt(12); j > 0; j--) {
+				w.append(random.nextBoolean() ? '1' : '0');
+			}
+			assertFalse(w.toString(), product.accepts(w.toString()));
+		}
+		String text = product.toString();
+		assertEquals(text, DFA.from(AutomatonParser.parseTable(new StringReader(text))).toString());
+
+		// a side without a start state leaves the product with just a trap
+		DFA noStart = new DFA();
+		noStart.addSigma('0');
+		noStart.addSigma('1');
+		product = dfa1().intersect(noStart);
+		assertTrue(product.isStart("(a,-)"));
+		assertFalse(product.accepts(""));
+		assertFalse(product.accepts("01"));
+		text = product.toString();
+		assertTrue(text, text.contains("\n(a,-)\t-\t-\t"));
+		assertEquals(text, DFA.from(AutomatonParser.parseTable(new StringReader(text))).toString());
+		System.out.println("empty product pass");
+	}
+
+	// ------------------- equivalence tests ----------------------//
+	/**
+	 * Checks that a counterexample is one and that no shorter string over the
+	 * symbols is
+	 */
+	private void assertShortest(LanguageCheck check, DFA a, DFA b, ProductOperation op, String symbols) {
+		String w = check.getCounterexample();
+		assertNotNull(check.toString(), w);
+		assertTrue(w, op.accepts(a.accepts(w), b.accepts(w)));
+		List<String> level = List.of("");
+		for (int len = 0; len < w.length(); len++) {
+			List<String> longer = new ArrayList<>();
+			for (String v : level) {
+				assertFalse(v, op.accepts(a.accepts(v), b.accepts(v)));
+				for (char c : symbols.toCharArray()) {
+					longer.add(v + c);
+				}
+			}
+			level = longer;
+		}
+	}
+
+	@Test
+	public void test17_1() {
+		for (DFA dfa : new DFA[] { dfa1(), dfa2(), dfa3() }) {
+			LanguageCheck check = dfa.equivalent(dfa.minimize());
+			assertTrue(check.toString(), check.holds());
+			assertNull(check.getCounterexample());
+			assertTrue(dfa.equivalent(dfa.copy()).holds());
+		}
+		assertShortest(dfa1().equivalent(dfa2()), dfa1(), dfa2(), ProductOperation.SYMMETRIC_DIFFERENCE, "01");
+		assertShortest(dfa2().equivalent(dfa2().swap('0', '1')), dfa2(), dfa2().swap('0', '1'),
+				ProductOperation.SYMMETRIC_DIFFERENCE, "01");
+		assertShortest(dfa1().equivalent(dfa3()), dfa1(), dfa3(), ProductOperation.SYMMETRIC_DIFFERENCE, "012");
+
+		// a missing transition equals an explicit trap state
+		DFA partial = new DFA();
+		partial.addSigma('0');
+		partial.addSigma('1');
+		partial.addState("p");
+		partial.setStart("p");
+		partial.setFinal("p");
+		partial.addTransition("p", "p", '0');
+		DFA trapped = partial.copy();
+		trapped.addState("trap");
+		trapped.addTransition("p", "trap", '1');
+		trapped.addTransition("trap", "trap", '0');
+		trapped.addTransition("trap", "trap", '1');
+		assertTrue(partial.equivalent(trapped).holds());
+		assertTrue(trapped.equivalent(partial).holds());
+		// the trap accepting is noticed after one symbol
+		trapped.setFinal("trap");
+		LanguageCheck check = partial.equivalent(trapped);
+		assertEquals("1", check.getCounterexample());
+		System.out.println("equivalence pass");
+	}
+
+	@Test
+	public void test17_2() {
+		DFA union = dfa1().union(dfa2());
+		LanguageCheck check = dfa1().subsetOf(union);
+		assertTrue(check.toString(), check.holds());
+		assertTrue(dfa2().subsetOf(union).holds());
+		assertTrue(dfa1().subsetOf(dfa1()).holds());
+		assertShortest(union.subsetOf(dfa1()), union, dfa1(), ProductOperation.DIFFERENCE, "01");
+		assertShortest(dfa3().subsetOf(dfa1()), dfa3(), dfa1(), ProductOperation.DIFFERENCE, "012");
+		DFA empty = new DFA();
+		empty.addSigma('0');
+		assertTrue(empty.subsetOf(dfa1()).holds());
+		assertFalse(union.difference(dfa1()).subsetOf(empty).holds());
+
+		// a 20000 state cycle against a copy with every state duplicated, the
+		// union-find merges each copy with its original once
+		int n = 20000;
+		DFA cycle = new DFA();
+		DFA doubled = new DFA();
+		cycle.addSigma('1');
+		doubled.addSigma('1');
+		for (int q = 0; q < n; q++) {
+			cycle.addState("s" + q);
+			doubled.addState("s" + q);
+			doubled.addState("t" + q);
+		}
+		cycle.setStart("s0");
+		doubled.setStart("s0");
+		cycle.setFinal("s0");
+		doubled.setFinal("s0");
+		doubled.setFinal("t0");
+		for (int q = 0; q < n; q++) {
+			cycle.addTransition("s" + q, "s" + (q + 1) % n, '1');
+			// s(n-1) goes on to t0 and t(n-1) back to s0
+			doubled.addTransition("s" + q, (q == n - 1 ? "t" : "s") + (q + 1) % n, '1');
+			doubled.addTransition("t" + q, (q == n - 1 ? "s" : "t") + (q + 1) % n, '1');
+		}
+		check = cycle.equivalent(doubled);
+		assertTrue(check.toString(), check.holds());
+		assertTrue(check.getExplored() <= 2 * n + 1);
+		doubled.setFinal("t1");
+		check = cycle.equivalent(doubled);
+		assertEquals("1".repeat(n + 1), check.getCounterexample());
+		assertTrue(cycle.subsetOf(doubled).holds());
+		assertFalse(doubled.subsetOf(cycle).holds());
+		System.out.println("inclusion pass");
+	}
+
+	// ------------------- substring search tests ----------------------//
+	/**
+	 * Finds the matches by testing every substring
+	 */
+	private static List<String> naiveSearch(FAInterface fa, String text, boolean overlapping) {
+		List<String> spans = new ArrayList<>();
+		int i = 0;
+		while (i <= text.length()) {
+			int end = -1;
+			for (int j = i; j <= text.length(); j++) {
+				if (fa.accepts(text.substring(i, j))) {
+					end = j;
+				}
+			}
+			if (end < 0) {
+				i++;
+				continue;
+			}
+			spans.add(i + "-" + end);
+			i = overlapping || end == i ? i + 1 : end;
+		}
+		return spans;
+	}
+
+	private static List<String> search(FAInterface fa, String text, boolean overlapping) {
+		List<String> spans = new ArrayList<>();
+		int count = fa.search(text, overlapping, (start, end) -> spans.add(start + "-" + end));
+		assertEquals(spans.size(), count);
+		return spans;
+	}
+
+	@Test
+	public void test18_1() {
+		Random random = new Random(25);
+		for (int round = 0; round < 40; round++) {
+			DFA dfa = randomDFA(random, 1 + random.nextInt(8), "abc", false);
+			StringBuilder sb = new StringBuilder();
+			for (int i = random.nextInt(60); i > 0; i--) {
+				// x is not in the alphabet and cuts every match
+				sb.append("abcx".charAt(random.nextInt(4)));
+			}
+			String text = sb.toString();
+			for (boolean overlapping : new boolean[] { false, true }) {
+				assertEquals(text, naiveSearch(dfa, text, overlapping), search(dfa, text, overlapping));
+			}
+		}
+		System.out.println("substring search pass");
+	}
+
+	@Test(timeout = 20000)
+	public void test18_2() {
+		// a | a+b
+		DFA dfa = new DFA();
+		dfa.addSigma('a');
+		dfa.addSigma('b');
+		dfa.addState("s");
+		dfa.addState("p");
+		dfa.addState("q");
+		dfa.addState("f");
+		dfa.setStart("s");
+		dfa.setFinal("p");
+		dfa.setFinal("f");
+		dfa.addTransition("s", "p", 'a');
+		dfa.addTransition("p", "q", 'a');
+		dfa.addTransition("p", "f", 'b');
+		dfa.addTransition("q", "q", 'a');
+		dfa.addTransition("q", "f", 'b');
+		assertEquals(List.of("0-1", "1-2", "3-5"), search(dfa, "aaxab", false));
+		assertEquals(List.of("0-3", "3-4"), search(dfa, "aaba", false));
+		assertEquals(List.of("0-3", "1-3", "3-4"), search(dfa, "aaba", true));
+		assertEquals(0, dfa.search("bbxb", (start, end) -> fail()));
+
+		// every a is a match of its own, but a plain forward run from it would
+		// read all the a after it hoping for a b
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 200_000; i++) {
+			sb.append('a');
+		}
+		String text = sb.toString();
+		int[] last = { -1 };
+		assertEquals(text.length(), dfa.search(text, (start, end) -> {
+			assertEquals(last[0] + 1, start);
+			assertEquals(start + 1, end);
+			last[0] = start;
+		}));
+
+		// a cache of two states is flushed all the time and gives the same spans
+		text = text.substring(0, 300) + "bxaabab";
+		DFASearcher small = new DFASearcher(dfa.compile(), 0);
+		for (boolean overlapping : new boolean[] { false, true }) {
+			List<String> spans = new ArrayList<>();
+			small.search(text, overlapping, (start, end) -> spans.add(start + "-" + end));
+			assertEquals(naiveSearch(dfa, text, overlapping), spans);
+		}
+		assertTrue(small.getFlushes() > 0);
+		assertTrue(small.getCachedStates() <= 2);
+		System.out.println("search cut off pass");
+	}
 }
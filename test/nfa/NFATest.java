@@ -2,11 +2,46 @@ package test.nfa;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import org.junit.Test;
 
+import fa.AutomatonBuilder;
+import fa.AutomatonParser;
+import fa.CompileCache;
+import fa.FAInterface;
+import fa.LanguageCheck;
+import fa.dfa.DFA;
+import fa.dfa.DFAFormat;
+import fa.dfa.FrozenDFA;
+import fa.nfa.CopyProfile;
+import fa.nfa.FrozenNFA;
+import fa.nfa.LazyDFA;
 import fa.nfa.NFA;
+import fa.nfa.NFAEngine;
+import fa.nfa.NFAFormat;
+import fa.nfa.NFAMatcher;
+import fa.nfa.NFASearcher;
+import fa.nfa.NFAState;
+import fa.nfa.ParallelNFARunner;
+import fa.nfa.ParallelRun;
 
 public class NFATest {
 
@@ -291,4 +326,1136 @@ public class NFATest {
 		System.out.println("nfa1 maxCopies done");
 	}
 
+	// ------------------- bitset engine tests ----------------------//
+	/**
+	 * Chain of n states over {a, b} where every state loops on a and moves on b,
+	 * the first half of the chain is linked by epsilon edges, the last state is
+	 * final
+	 */
+	private NFA chain(int n) {
+		NFA nfa = new NFA();
+		nfa.addSigma('a');
+		nfa.addSigma('b');
+		for (int i = 0; i < n; i++) {
+			assertTrue(nfa.addState("s" + i));
+		}
+		assertTrue(nfa.setStart("s0"));
+		assertTrue(nfa.setFinal("s" + (n - 1)));
+		for (int i = 0; i < n; i++) {
+			assertTrue(nfa.addTransition("s" + i, Set.of("s" + i), 'a'));
+			if (i + 1 < n) {
+				assertTrue(nfa.addTransition("s" + i, Set.of("s" + (i + 1)), 'b'));
+			}
+			if (i < n / 2) {
+				assertTrue(nfa.addTransition("s" + i, Set.of("s" + (i + 1)), 'e'));
+			}
+		}
+		return nfa;
+	}
+
+	@Test
+	public void test4_1() {
+		// more than one word of states
+		NFA nfa = chain(150);
+		assertEquals(150, nfa.engine().getStateCount());
+		assertEquals(76, nfa.maxCopies("a"));
+		assertFalse(nfa.accepts("a"));
+		assertFalse(nfa.accepts("b".repeat(73)));
+		assertTrue(nfa.accepts("b".repeat(74)));
+		assertTrue(nfa.accepts("b".repeat(149)));
+		assertFalse(nfa.accepts("b".repeat(150)));
+		assertFalse(nfa.accepts("ab2"));
+		System.out.println("chain engine done");
+	}
+
+	@Test
+	public void test4_2() {
+		NFA nfa = nfa2();
+		NFAEngine engine = nfa.engine();
+		// cached until the NFA changes
+		assertSame(engine, nfa.engine());
+		NFAEngine fork = engine.fork();
+		assertTrue(fork.accepts("1111"));
+		assertEquals(4, fork.maxCopies("0001100"));
+
+		assertTrue(nfa.addTransition("q4", Set.of("q3"), '1'));
+		assertNotSame(engine, nfa.engine());
+		assertTrue(nfa.accepts("1101"));
+		assertFalse(engine.accepts("1101"));
+		System.out.println("nfa2 engine done");
+	}
+
+	@Test
+	public void test4_3() {
+		NFA nfa = new NFA();
+		nfa.addSigma('0');
+		assertTrue(nfa.addState("a"));
+		assertTrue(nfa.addState("b"));
+		assertTrue(nfa.addState("c"));
+		assertTrue(nfa.setStart("a"));
+		// a and b form an epsilon cycle that leads to c
+		assertTrue(nfa.addTransition("a", Set.of("b"), 'e'));
+		assertTrue(nfa.addTransition("b", Set.of("a", "c"), 'e'));
+		NFAState a = nfa.getState("a");
+		NFAState b = nfa.getState("b");
+		NFAState c = nfa.getState("c");
+		assertEquals(Set.of(a, b, c), nfa.eClosure(a));
+		assertEquals(Set.of(a, b, c), nfa.eClosure(b));
+		assertEquals(Set.of(c), nfa.eClosure(c));
+
+		// states added later close to themselves
+		assertTrue(nfa.addState("d"));
+		assertTrue(nfa.setFinal("d"));
+		NFAState d = nfa.getState("d");
+		assertEquals(Set.of(d), nfa.eClosure(d));
+		assertEquals(Set.of(c, d), nfa.setEClosure(Set.of(c, d)));
+		assertFalse(nfa.accepts(""));
+
+		// a new epsilon edge is seen by every closure
+		assertTrue(nfa.addTransition("c", Set.of("d"), 'e'));
+		assertEquals(Set.of(a, b, c, d), nfa.eClosure(a));
+		assertTrue(nfa.accepts(""));
+		assertEquals(4, nfa.maxCopies(""));
+		System.out.println("epsilon cycle closure done");
+	}
+
+	// ------------------- subset construction tests ----------------------//
+	/**
+	 * Checks that an automaton and an NFA agree on every string over the NFA's
+	 * alphabet up to the given length
+	 */
+	private void assertSameLanguage(NFA nfa, FAInterface fa, int maxLength) {
+		List<String> level = List.of("");
+		for (int len = 0; len <= maxLength; len++) {
+			List<String> longer = new ArrayList<>();
+			for (String w : level) {
+				assertEquals(w, nfa.accepts(w), fa.accepts(w));
+				for (char c : nfa.getSigma()) {
+					longer.add(w + c);
+				}
+			}
+			level = longer;
+		}
+	}
+
+	@Test
+	public void test5_1() {
+		NFA nfa = nfa2();
+		DFA dfa = nfa.toDFA();
+		assertEquals(nfa.getSigma(), dfa.getSigma());
+		assertTrue(dfa.isStart("{q0}"));
+		assertSameLanguage(nfa, dfa, 8);
+		assertSameLanguage(nfa1(), nfa1().toDFA(), 8);
+		assertSameLanguage(nfa3(), nfa3().toDFA(), 6);
+		System.out.println("nfa toDFA done");
+	}
+
+	@Test
+	public void test5_3() {
+		// b has no transitions, so the empty subset is reached
+		NFA nfa = new NFA();
+		nfa.addSigma('0');
+		nfa.addSigma('1');
+		nfa.addState("a");
+		nfa.addState("b");
+		nfa.setStart("a");
+		nfa.setFinal("b");
+		nfa.addTransition("a", Set.of("a"), '0');
+		nfa.addTransition("a", Set.of("b"), '1');
+		DFA dfa = nfa.toDFA();
+		assertTrue(dfa.isFinal("{b}"));
+		assertFalse(dfa.isFinal("{}"));
+		String text = dfa.toString();
+		assertTrue(text, text.contains("\n{b}\t{}\t{}\t"));
+		assertTrue(text, text.contains("\n{}\t{}\t{}\t"));
+		assertSameLanguage(nfa, dfa, 6);
+		// the trap state is a real state now and survives minimizing
+		DFA minimal = dfa.minimize();
+		text = minimal.toString();
+		assertTrue(text, text.contains("\n{}\t{}\t{}\t"));
+		assertSameLanguage(nfa, minimal, 6);
+
+		// a partial DFA prints its missing transitions as -
+		DFA partial = new DFA();
+		partial.addSigma('0');
+		partial.addSigma('1');
+		partial.addState("p");
+		partial.addState("q");
+		partial.setStart("p");
+		partial.setFinal("q");
+		partial.addTransition("p", "q", '1');
+		text = partial.toString();
+		assertTrue(text, text.contains("\np\t-\tq\t"));
+		assertTrue(text, text.contains("\nq\t-\t-\t"));
+		text = partial.intersect(partial).toString();
+		assertTrue(text, text.contains("-\t"));
+		System.out.println("nfa toDFA trap state done");
+	}
+
+	@Test
+	public void test5_4() throws IOException {
+		// subset names print without whitespace, so the table parses again
+		for (NFA nfa : List.of(nfa1(), nfa2(), nfa3())) {
+			DFA dfa = nfa.toDFA();
+			String text = dfa.toString();
+			DFA parsed = DFA.from(AutomatonParser.parseTable(new StringReader(text)));
+			assertEquals(text, parsed.toString());
+			assertSameLanguage(nfa, parsed, 6);
+			// minimizing keeps subset names, as a CompileCache entry does
+			text = dfa.minimize().toString();
+			parsed = DFA.from(AutomatonParser.parseTable(new StringReader(text)));
+			assertEquals(text, parsed.toString());
+			assertSameLanguage(nfa, parsed, 6);
+		}
+
+		// the state "a,b" alone and the states a and b together name the same
+		NFA nfa = new NFA();
+		nfa.addSigma('0');
+		nfa.addSigma('1');
+		nfa.addState("s");
+		nfa.addState("a");
+		nfa.addState("b");
+		nfa.addState("a,b");
+		nfa.setStart("s");
+		nfa.setFinal("a,b");
+		nfa.addTransition("s", Set.of("a", "b"), '0');
+		nfa.addTransition("s", Set.of("a,b"), '1');
+		DFA dfa = nfa.toDFA();
+		assertTrue(dfa.isFinal("{a,b}'"));
+		assertFalse(dfa.isFinal("{a,b}"));
+		DFA parsed = DFA.from(AutomatonParser.parseTable(new StringReader(dfa.toString())));
+		assertEquals(dfa.toString(), parsed.toString());
+		assertSameLanguage(nfa, parsed, 4);
+		System.out.println("nfa toDFA round trip done");
+	}
+
+	@Test
+	public void test5_2() {
+		// the n-th symbol from the end is a 1, which needs 2^n DFA states
+		NFA nfa = new NFA();
+		nfa.addSigma('0');
+		nfa.addSigma('1');
+		int n = 10;
+		for (int i = 0; i <= n; i++) {
+			assertTrue(nfa.addState("p" + i));
+		}
+		assertTrue(nfa.setStart("p0"));
+		assertTrue(nfa.setFinal("p" + n));
+		assertTrue(nfa.addTransition("p0", Set.of("p0"), '0'));
+		assertTrue(nfa.addTransition("p0", Set.of("p0", "p1"), '1'));
+		for (int i = 1; i < n; i++) {
+			assertTrue(nfa.addTransition("p" + i, Set.of("p" + (i + 1)), '0'));
+			assertTrue(nfa.addTransition("p" + i, Set.of("p" + (i + 1)), '1'));
+		}
+		assertNotNull(nfa.toDFA(1 << n));
+		assertThrows(IllegalStateException.class, () -> nfa.toDFA(100));
+		System.out.println("nfa toDFA cap done");
+	}
+
+	// ------------------- lazy determinization tests ----------------------//
+	@Test
+	public void test6_1() {
+		NFA nfa = nfa2();
+		assertNull(nfa.lazyDFA());
+		nfa.setLazyDeterminization(1 << 20);
+		LazyDFA lazy = nfa.lazyDFA();
+		assertNotNull(lazy);
+		assertTrue(nfa.accepts("1111"));
+		assertFalse(nfa.accepts("0001100"));
+		assertTrue(nfa.accepts("010011"));
+		assertFalse(nfa.accepts("0101"));
+		assertTrue(lazy.getMisses() > 0);
+		long misses = lazy.getMisses();
+		// the same input again is answered from the cache
+		assertTrue(nfa.accepts("010011"));
+		assertEquals(misses, lazy.getMisses());
+		assertTrue(lazy.getHits() >= 6);
+		assertEquals(0, lazy.getFlushes());
+		assertSameLanguage(nfa2(), nfa, 8);
+		System.out.println("nfa2 lazy dfa done");
+	}
+
+	@Test
+	public void test6_2() {
+		NFA nfa = nfa2();
+		// room for only two cached states forces flushes and fallbacks
+		nfa.setLazyDeterminization(1);
+		LazyDFA lazy = nfa.lazyDFA();
+		assertEquals(2, lazy.getCapacity());
+		assertSameLanguage(nfa2(), nfa, 8);
+		String longInput = "0110100110010110".repeat(4) + "011";
+		assertEquals(nfa2().accepts(longInput), nfa.accepts(longInput));
+		assertTrue(lazy.getFlushes() > 0);
+		assertTrue(lazy.getFallbacks() > 0);
+		assertTrue(lazy.getCachedStates() <= 2);
+		System.out.println("nfa2 lazy dfa flush done");
+	}
+
+	@Test
+	public void test6_3() {
+		// 2^12 subsets do not fit, the cache must stay within its budget
+		NFA nfa = nthFromEnd(12);
+		long budget = 1 << 14;
+		nfa.setLazyDeterminization(budget);
+		LazyDFA lazy = nfa.lazyDFA();
+		Random random = new Random(5);
+		for (int i = 0; i < 200; i++) {
+			StringBuilder sb = new StringBuilder();
+			for (int j = 0; j < 200; j++) {
+				sb.append(random.nextBoolean() ? '1' : '0');
+			}
+			String s = sb.toString();
+			assertEquals(s.charAt(s.length() - 12) == '1', nfa.accepts(s));
+			assertTrue(lazy.getMemory() + " > " + budget, lazy.getMemory() <= budget);
+		}
+		assertTrue(lazy.getFlushes() > 0);
+		System.out.println("lazy dfa budget done");
+	}
+
+	// ------------------- large automaton tests ----------------------//
+	@Test(timeout = 20000)
+	public void test7_1() {
+		// a 50k state chain with repeated transitions on the same symbol
+		int n = 50000;
+		NFA nfa = new NFA();
+		nfa.addSigma('0');
+		nfa.addSigma('1');
+		for (int i = 0; i < n; i++) {
+			assertTrue(nfa.addState("s" + i));
+		}
+		assertTrue(nfa.setStart("s0"));
+		assertTrue(nfa.setFinal("s" + (n - 1)));
+		for (int i = 0; i + 1 < n; i++) {
+			assertTrue(nfa.addTransition("s" + i, Set.of("s" + (i + 1)), '1'));
+			assertTrue(nfa.addTransition("s0", Set.of("s" + (i + 1)), '0'));
+		}
+		assertEquals(n - 1, nfa.getToState(nfa.getState("s0"), '0').size());
+		assertTrue(nfa.accepts("1".repeat(n - 1)));
+		assertTrue(nfa.accepts("0"));
+		assertFalse(nfa.accepts("00"));
+		assertEquals(n - 1, nfa.maxCopies("0"));
+		assertFalse(nfa.accepts("1".repeat(n)));
+		System.out.println("large nfa done");
+	}
+
+	@Test(timeout = 20000)
+	public void test7_2() {
+		// dense closure rows would take n * n / 64 longs, over 300 MB
+		int n = 50000;
+		NFA nfa = new NFA();
+		nfa.addSigma('1');
+		for (int i = 0; i < n; i++) {
+			assertTrue(nfa.addState("s" + i));
+		}
+		assertTrue(nfa.setStart("s0"));
+		assertTrue(nfa.setFinal("s" + (n - 1)));
+		for (int i = 0; i + 1 < n; i += 2) {
+			assertTrue(nfa.addTransition("s" + i, Set.of("s" + (i + 1)), 'e'));
+			if (i + 2 < n) {
+				assertTrue(nfa.addTransition("s" + (i + 1), Set.of("s" + (i + 2)), '1'));
+			}
+		}
+		// a cycle makes the last pair one component
+		assertTrue(nfa.addTransition("s" + (n - 1), Set.of("s" + (n - 2)), 'e'));
+		assertTrue(nfa.accepts("1".repeat(n / 2 - 1)));
+		assertFalse(nfa.accepts("1".repeat(n / 2 - 2)));
+		assertEquals(2, nfa.maxCopies("1".repeat(10)));
+		FrozenNFA frozen = nfa.freeze();
+		assertArrayEquals(new int[] { 0, 1 }, frozen.eClosure(0));
+		assertArrayEquals(new int[] { n - 2, n - 1 }, frozen.eClosure(n - 1));
+		assertArrayEquals(new int[] { 1 }, frozen.eClosure(1));
+		System.out.println("large epsilon nfa done");
+	}
+
+	// ------------------- compact transition tests ----------------------//
+	@Test
+	public void test8_1() {
+		NFA nfa = nfa3();
+		NFA expected = nfa3();
+		nfa.compact();
+		NFAState i = nfa.getState("I");
+		Set<NFAState> onOne = nfa.getToState(i, '1');
+		assertEquals(Set.of(i, nfa.getState("N")), onOne);
+		assertTrue(onOne.contains(nfa.getState("N")));
+		assertFalse(onOne.contains(nfa.getState("W")));
+		assertNull(i.getTransitions('0'));
+		assertThrows(UnsupportedOperationException.class, () -> onOne.add(nfa.getState("W")));
+		assertEquals(nfa.eClosure(nfa.getState("W")), Set.of(nfa.getState("W"), nfa.getState("L"), i));
+		assertSameLanguage(expected, nfa, 6);
+
+		// a new transition makes the state modifiable again
+		assertTrue(nfa.addTransition("I", Set.of("W"), '0'));
+		assertEquals(Set.of(nfa.getState("W")), i.getTransitions('0'));
+		assertEquals(Set.of(i, nfa.getState("N")), i.getTransitions('1'));
+		System.out.println("nfa3 compact done");
+	}
+
+	@Test
+	public void test8_2() {
+		NFA nfa = new NFA();
+		nfa.addSigma('0');
+		assertTrue(nfa.addState("a"));
+		assertTrue(nfa.addState("b"));
+		Set<NFAState> targets = new HashSet<>(Set.of(nfa.getState("a")));
+		nfa.getState("a").addTransitions('0', targets);
+		nfa.getState("a").addTransitions('0', Set.of(nfa.getState("b")));
+		// the caller's set is copied, not merged into or kept
+		assertEquals(Set.of(nfa.getState("a")), targets);
+		assertEquals(Set.of(nfa.getState("a"), nfa.getState("b")), nfa.getState("a").getTransitions('0'));
+		System.out.println("addTransitions copy done");
+	}
+
+	// ------------------- streaming matcher tests ----------------------//
+	@Test
+	public void test9_1() {
+		NFA nfa = nfa3();
+		NFAMatcher m = nfa.matcher();
+		assertEquals(3, m.copies());
+		// "01#11##" in uneven chunks
+		m.feed("0").feed("1#1".toCharArray(), 0, 3).feed("1#").feed("#");
+		assertTrue(m.isAccepting());
+
+		m.reset();
+		m.feed("#01000").feed("###");
+		assertFalse(m.isAccepting());
+
+		m.reset();
+		m.feed("2");
+		assertTrue(m.isDead());
+		assertEquals(0, m.copies());
+		m.feed("###");
+		assertFalse(m.isAccepting());
+
+		// the matcher keeps running its snapshot after the NFA changes
+		m.reset();
+		assertTrue(nfa.addTransition("I", Set.of("N"), '0'));
+		assertFalse(m.feed("10").isAccepting());
+		assertTrue(nfa.matcher().feed("10").isAccepting());
+		System.out.println("nfa3 matcher done");
+	}
+
+	// ------------------- batch tests ----------------------//
+	@Test
+	public void test10_1() {
+		NFA nfa = nfa2();
+		Random random = new Random(361);
+		List<String> inputs = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			StringBuilder sb = new StringBuilder();
+			int length = random.nextInt(20);
+			for (int j = 0; j < length; j++) {
+				sb.append(random.nextBoolean() ? '0' : '1');
+			}
+			inputs.add(sb.toString());
+		}
+		BitSet accepted = nfa.acceptsAll(inputs);
+		int[] copies = nfa.maxCopiesAll(inputs);
+		for (int i = 0; i < inputs.size(); i++) {
+			assertEquals(inputs.get(i), nfa.accepts(inputs.get(i)), accepted.get(i));
+			assertEquals(inputs.get(i), nfa.maxCopies(inputs.get(i)), copies[i]);
+		}
+		assertEquals(accepted, nfa.acceptsAll(inputs.stream()));
+		System.out.println("nfa2 batch done");
+	}
+
+	// ------------------- freeze tests ----------------------//
+	@Test
+	public void test11_1() throws Exception {
+		NFA nfa = nfa3();
+		FrozenNFA frozen = nfa.freeze();
+		List<String> inputs = new ArrayList<>();
+		Random random = new Random(97);
+		for (int i = 0; i < 2000; i++) {
+			StringBuilder sb = new StringBuilder();
+			int length = random.nextInt(20);
+			for (int j = 0; j < length; j++) {
+				sb.append(random.nextBoolean() ? '0' : '1');
+			}
+			inputs.add(sb.toString());
+		}
+		// many threads share one snapshot
+		ExecutorService threads = Executors.newFixedThreadPool(8);
+		List<Future<int[]>> results = new ArrayList<>();
+		for (String input : inputs) {
+			results.add(threads.submit(() -> new int[] { frozen.accepts(input) ? 1 : 0, frozen.maxCopies(input) }));
+		}
+		for (int i = 0; i < inputs.size(); i++) {
+			int[] result = results.get(i).get();
+			assertEquals(inputs.get(i), nfa.accepts(inputs.get(i)), result[0] == 1);
+			assertEquals(inputs.get(i), nfa.maxCopies(inputs.get(i)), result[1]);
+		}
+		threads.shutdown();
+		assertEquals(nfa.acceptsAll(inputs), frozen.acceptsAll(inputs));
+
+		for (NFAState state : nfa.eClosure(nfa.getState("W"))) {
+			assertTrue(frozen.eClosure("W").contains(state.getName()));
+		}
+		assertEquals(nfa.eClosure(nfa.getState("W")).size(), frozen.eClosure("W").size());
+		assertTrue(frozen.eClosure("nope").isEmpty());
+
+		// the snapshot does not see later changes
+		assertTrue(nfa.addTransition("N", Set.of("N"), '0'));
+		assertTrue(nfa.accepts("#0"));
+		assertFalse(frozen.accepts("#0"));
+		System.out.println("nfa3 freeze done");
+	}
+
+	@Test
+	public void test11_2() {
+		NFA nfa = nfa1();
+		// toString does not accumulate across calls
+		assertEquals(nfa.toString(), nfa.toString());
+		System.out.println("nfa1 toString done");
+	}
+
+	// ------------------- copy profile tests ----------------------//
+	@Test
+	public void test12_1() {
+		NFA nfa = nfa3();
+		String input = "0011#0#1x0";
+		int[] counts = new int[input.length() + 1];
+		CopyProfile profile = nfa.copyProfile(input, counts);
+		long total = 0;
+		for (int i = 0; i <= input.length(); i++) {
+			NFAMatcher m = nfa.matcher();
+			m.feed(input.substring(0, i));
+			assertEquals("position " + i, m.copies(), counts[i]);
+			total += counts[i];
+		}
+		assertEquals(input.length() + 1, profile.getPositions());
+		assertEquals(nfa.maxCopies(input), profile.getMax());
+		assertEquals(profile.getMax(), counts[profile.getMaxPosition()]);
+		for (int i = 0; i < profile.getMaxPosition(); i++) {
+			assertTrue(counts[i] < profile.getMax());
+		}
+		assertEquals((double) total / counts.length, profile.getMean(), 1e-9);
+
+		// the streamed counts are the same
+		List<Integer> streamed = new ArrayList<>();
+		CopyProfile again = nfa.copyProfile(input, streamed::add);
+		assertEquals(counts.length, streamed.size());
+		for (int i = 0; i < counts.length; i++) {
+			assertEquals(counts[i], (int) streamed.get(i));
+		}
+		assertEquals(profile.getMaxPosition(), again.getMaxPosition());
+		assertThrows(IllegalArgumentException.class, () -> nfa.copyProfile(input, new int[input.length()]));
+		System.out.println("nfa3 copy profile done");
+	}
+
+	@Test
+	public void test12_2() {
+		NFA nfa = chain(200);
+		// a long input, the profile keeps going after the copies die out
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1_000_000; i++) {
+			sb.append(i % 7 == 0 ? 'b' : 'a');
+		}
+		String input = sb.toString();
+		int[] counts = new int[input.length() + 1];
+		CopyProfile profile = nfa.copyProfile(input, counts);
+		assertEquals(nfa.maxCopies(input), profile.getMax());
+		assertEquals(profile.getMax(), nfa.freeze().copyProfile(input, new int[counts.length]).getMax());
+		assertEquals(0, counts[counts.length - 1]);
+		System.out.println("chain copy profile done");
+	}
+
+	// ------------------- binary format tests ----------------------//
+	@Test
+	public void test13_1() throws IOException {
+		NFA nfa = nfa3();
+		Path file = Files.createTempFile("nfa3", ".fa");
+		try {
+			NFAFormat.write(nfa, file);
+			FrozenNFA loaded = NFAFormat.load(file);
+			assertEquals(nfa.getState("N").getId(), loaded.idOf("N"));
+			assertEquals(nfa.eClosure(nfa.getState("W")).size(), loaded.eClosure("W").size());
+			Random random = new Random(16);
+			for (int i = 0; i < 2000; i++) {
+				StringBuilder sb = new StringBuilder();
+				int length = random.nextInt(12);
+				for (int j = 0; j < length; j++) {
+					sb.append("#01".charAt(random.nextInt(3)));
+				}
+				String s = sb.toString();
+				assertEquals(s, nfa.accepts(s), loaded.accepts(s));
+				assertEquals(s, nfa.maxCopies(s), loaded.maxCopies(s));
+			}
+			// a DFA file is not an NFA file
+			DFAFormat.write(nfa.toDFA(), file);
+			assertThrows(IOException.class, () -> NFAFormat.load(file));
+		} finally {
+			Files.delete(file);
+		}
+		System.out.println("nfa3 binary format done");
+	}
+
+	@Test
+	public void test13_2() throws IOException {
+		// large enough for the sparse engine tables
+		NFA nfa = chain(12000);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		NFAFormat.write(nfa, out);
+		FrozenNFA loaded = NFAFormat.read(ByteBuffer.wrap(out.toByteArray()));
+		String input = "abaab";
+		assertEquals(nfa.accepts(input), loaded.accepts(input));
+		assertEquals(nfa.maxCopies(input), loaded.maxCopies(input));
+		System.out.println("chain binary format done");
+	}
+
+	// ------------------- compile cache tests ----------------------//
+	@Test
+	public void test14_1() throws IOException {
+		Path dir = Files.createTempDirectory("fa-cache");
+		try {
+			assertEquals(CompileCache.hash(nfa3()), CompileCache.hash(nfa3()));
+			assertNotEquals(CompileCache.hash(nfa2()), CompileCache.hash(nfa3()));
+
+			CompileCache cache = new CompileCache(dir, 1 << 20);
+			FrozenDFA first = cache.compile(nfa3());
+			assertEquals(1, cache.getMisses());
+			assertSameLanguage(nfa3(), first);
+
+			// a new cache on the same directory, as after a restart
+			CompileCache warm = new CompileCache(dir, 1 << 20);
+			FrozenDFA second = warm.compile(nfa3());
+			assertEquals(1, warm.getHits());
+			assertEquals(0, warm.getMisses());
+			assertSameLanguage(nfa3(), second);
+
+			// a damaged entry is dropped and compiled again
+			Path entry = dir.resolve(CompileCache.hash(nfa3()) + ".fa");
+			byte[] bytes = Files.readAllBytes(entry);
+			bytes[bytes.length / 2] ^= 1;
+			Files.write(entry, bytes);
+			FrozenDFA third = warm.compile(nfa3());
+			assertEquals(1, warm.getCorrupt());
+			assertSameLanguage(nfa3(), third);
+			// and the rewritten entry is good again
+			CompileCache again = new CompileCache(dir, 1 << 20);
+			again.compile(nfa3());
+			assertEquals(1, again.getHits());
+		} finally {
+			deleteTree(dir);
+		}
+		System.out.println("nfa3 compile cache done");
+	}
+
+	@Test
+	public void test14_2() throws IOException {
+		Path dir = Files.createTempDirectory("fa-cache");
+		try {
+			// room for about one entry
+			CompileCache cache = new CompileCache(dir, 1);
+			cache.compile(nfa1());
+			cache.compile(nfa2());
+			cache.compile(nfa3());
+			assertEquals(2, cache.getEvictions());
+			try (Stream<Path> files = Files.list(dir)) {
+				assertEquals(1, files.count());
+			}
+			assertTrue(Files.exists(dir.resolve(CompileCache.hash(nfa3()) + ".fa")));
+		} finally {
+			deleteTree(dir);
+		}
+		System.out.println("compile cache eviction done");
+	}
+
+	private void assertSameLanguage(NFA nfa, FrozenDFA dfa) {
+		Random random = new Random(17);
+		String symbols = "";
+		for (char c : nfa.getSigma()) {
+			symbols += c;
+		}
+		for (int i = 0; i < 1000; i++) {
+			StringBuilder sb = new StringBuilder();
+			int length = random.nextInt(10);
+			for (int j = 0; j < length; j++) {
+				sb.append(symbols.charAt(random.nextInt(symbols.length())));
+			}
+			assertEquals(sb.toString(), nfa.accepts(sb.toString()), dfa.accepts(sb));
+		}
+	}
+
+	private static void deleteTree(Path dir) throws IOException {
+		try (Stream<Path> files = Files.walk(dir)) {
+			for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(p);
+			}
+		}
+	}
+
+	// ------------------- parser tests ----------------------//
+	@Test
+	public void test15_1() throws IOException {
+		NFA nfa = nfa3();
+		// the toString layout, with blank cells, reads back into the same NFA
+		NFA parsed = NFA.from(AutomatonParser.parseTable(new StringReader(nfa.toString())));
+		assertEquals(nfa.getSigma(), parsed.getSigma());
+		for (NFAState state : nfa.eClosure(nfa.getState("W"))) {
+			assertTrue(parsed.isFinal(state.getName()) == state.getFinalState());
+		}
+		assertEquals(nfa.eClosure(nfa.getState("W")).size(), parsed.eClosure(parsed.getState("W")).size());
+		assertSameLanguage(nfa, parsed, 8);
+		System.out.println("nfa3 table parser done");
+	}
+
+	@Test
+	public void test15_2() throws IOException {
+		// a large random edge list against the same NFA built call by call
+		Random random = new Random(18);
+		int n = 2000;
+		StringBuilder text = new StringBuilder("sigma: 0 1\nstart: s0\nfinal: s7 s1999\n");
+		NFA expected = new NFA();
+		expected.addSigma('0');
+		expected.addSigma('1');
+		for (int q = 0; q < n; q++) {
+			expected.addState("s" + q);
+		}
+		text.append("states:");
+		for (int q = 0; q < n; q++) {
+			text.append(" s").append(q);
+		}
+		text.append('\n');
+		expected.setStart("s0");
+		expected.setFinal("s7");
+		expected.setFinal("s1999");
+		for (int i = 0; i < 100_000; i++) {
+			int from = random.nextInt(n);
+			int to = random.nextInt(n);
+			char c = random.nextInt(20) == 0 ? 'e' : random.nextBoolean() ? '0' : '1';
+			text.append('s').append(from).append(' ').append(c).append(" s").append(to).append('\n');
+			assertTrue(expected.addTransition("s" + from, Set.of("s" + to), c));
+		}
+		NFA parsed = NFA.from(AutomatonParser.parseEdges(new StringReader(text.toString())));
+		for (int q = 0; q < n; q += 97) {
+			for (char c : new char[] { '0', '1', 'e' }) {
+				Set<NFAState> want = expected.getToState(expected.getState("s" + q), c);
+				Set<NFAState> got = parsed.getToState(parsed.getState("s" + q), c);
+				assertEquals(want.size(), got.size());
+				for (NFAState t : want) {
+					assertTrue(got.contains(parsed.getState(t.getName())));
+				}
+			}
+		}
+		for (int i = 0; i < 200; i++) {
+			StringBuilder sb = new StringBuilder();
+			int length = random.nextInt(8);
+			for (int j = 0; j < length; j++) {
+				sb.append(random.nextBoolean() ? '0' : '1');
+			}
+			assertEquals(sb.toString(), expected.accepts(sb.toString()), parsed.accepts(sb.toString()));
+		}
+		// parsed NFAs still take new transitions
+		assertTrue(parsed.addTransition("s0", Set.of("s7"), '0'));
+		assertTrue(parsed.accepts("0"));
+		System.out.println("large edge list parser done");
+	}
+
+	@Test
+	public void test15_3() throws IOException {
+		// without a sigma line the alphabet comes from the edges, e excluded
+		String edges = "start: a\n"
+				+ "final: c\n"
+				+ "a 0 b\n"
+				+ "b e c\n"
+				+ "c 1 c\n";
+		AutomatonBuilder builder = AutomatonParser.parseEdges(new StringReader(edges));
+		assertArrayEquals(new char[] { '0', '1' }, builder.getSymbols());
+		NFA parsed = NFA.from(builder);
+		assertEquals(Set.of('0', '1'), parsed.getSigma());
+		assertTrue(parsed.accepts("0"));
+		assertTrue(parsed.accepts("011"));
+		assertFalse(parsed.accepts("e"));
+		System.out.println("inferred sigma parser done");
+	}
+
+	// ------------------- alphabet class tests ----------------------//
+	@Test
+	public void test16_1() throws IOException {
+		NFA nfa = new NFA();
+		for (char c : "abcd".toCharArray()) {
+			nfa.addSigma(c);
+		}
+		assertTrue(nfa.addState("p"));
+		assertTrue(nfa.addState("q"));
+		assertTrue(nfa.setStart("p"));
+		assertTrue(nfa.setFinal("q"));
+		assertTrue(nfa.addTransition("p", Set.of("p"), 'a'));
+		assertTrue(nfa.addTransition("p", Set.of("p", "q"), 'c'));
+		assertTrue(nfa.addTransition("p", Set.of("q", "p"), 'd'));
+		assertTrue(nfa.addTransition("q", Set.of("p"), 'e'));
+		// c and d have the same targets, b has none anywhere
+		FrozenNFA frozen = nfa.freeze();
+		assertEquals(3, frozen.getClassCount());
+		assertTrue(frozen.accepts("ac"));
+		assertTrue(frozen.accepts("dad"));
+		assertFalse(frozen.accepts("cb"));
+		assertFalse(frozen.accepts("cz"));
+		assertSameLanguage(nfa, nfa.toDFA(), 6);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		NFAFormat.write(nfa, out);
+		FrozenNFA loaded = NFAFormat.read(ByteBuffer.wrap(out.toByteArray()));
+		assertEquals(3, loaded.getClassCount());
+		assertTrue(loaded.accepts("aad"));
+
+		// a new transition splits c from d again
+		assertTrue(nfa.addTransition("q", Set.of("q"), 'd'));
+		assertEquals(4, nfa.freeze().getClassCount());
+		assertTrue(nfa.accepts("cdd"));
+		System.out.println("nfa alphabet classes done");
+	}
+
+	@Test
+	public void test16_2() {
+		// 200 symbols in 5 groups, every symbol of a group behaves the same,
+		// checked against an NFA over one symbol per group
+		Random random = new Random(19);
+		int n = 40;
+		int groups = 5;
+		NFA wide = new NFA();
+		NFA narrow = new NFA();
+		char[] symbols = new char[200];
+		for (int i = 0; i < symbols.length; i++) {
+			symbols[i] = (char) (0x100 + i);
+			wide.addSigma(symbols[i]);
+		}
+		for (int g = 0; g < groups; g++) {
+			narrow.addSigma(symbols[g]);
+		}
+		for (int q = 0; q < n; q++) {
+			wide.addState("s" + q);
+			narrow.addState("s" + q);
+		}
+		wide.setStart("s0");
+		narrow.setStart("s0");
+		wide.setFinal("s1");
+		narrow.setFinal("s1");
+		for (int q = 0; q < n; q++) {
+			for (int g = 0; g < groups; g++) {
+				Set<String> to = Set.of("s" + random.nextInt(n / 2), "s" + (n / 2 + random.nextInt(n / 2)));
+				assertTrue(narrow.addTransition("s" + q, to, symbols[g]));
+				for (int i = g; i < symbols.length; i += groups) {
+					assertTrue(wide.addTransition("s" + q, to, symbols[i]));
+				}
+			}
+		}
+		assertEquals(groups, wide.freeze().getClassCount());
+		DFA dfa = wide.toDFA();
+		assertEquals(groups, dfa.freeze().getClassCount());
+		wide.setLazyDeterminization(1 << 20);
+		for (int i = 0; i < 300; i++) {
+			StringBuilder sb = new StringBuilder();
+			StringBuilder mapped = new StringBuilder();
+			int length = random.nextInt(12);
+			for (int j = 0; j < length; j++) {
+				int k = random.nextInt(symbols.length);
+				sb.append(symbols[k]);
+				mapped.append(symbols[k % groups]);
+			}
+			boolean expected = narrow.accepts(mapped.toString());
+			assertEquals(expected, wide.accepts(sb.toString()));
+			assertEquals(expected, dfa.accepts(sb.toString()));
+		}
+		System.out.println("wide alphabet classes done");
+	}
+
+	// ------------------- parallel run tests ----------------------//
+	private NFA randomNFA(Random random, int n) {
+		NFA nfa = new NFA();
+		nfa.addSigma('0');
+		nfa.addSigma('1');
+		for (int q = 0; q < n; q++) {
+			nfa.addState("s" + q);
+		}
+		nfa.setStart("s0");
+		nfa.setFinal("s1");
+		nfa.setFinal("s2");
+		for (int q = 0; q < n; q++) {
+			for (char c : new char[] { '0', '1' }) {
+				int to = random.nextInt(n);
+				nfa.addTransition("s" + q, Set.of("s" + to, "s" + ((to + 1 + random.nextInt(n - 1)) % n)), c);
+			}
+			if (random.nextInt(8) == 0) {
+				nfa.addTransition("s" + q, Set.of("s" + random.nextInt(n)), 'e');
+			}
+		}
+		return nfa;
+	}
+
+	@Test
+	public void test17_1() {
+		Random random = new Random(21);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 50_000; i++) {
+			sb.append(random.nextBoolean() ? '0' : '1');
+		}
+		String input = sb.toString();
+		for (int n : new int[] { 3, 60, 130 }) {
+			NFA nfa = randomNFA(random, n);
+			NFAEngine engine = nfa.engine();
+			for (int minChunk : new int[] { 1, 500, 1 << 20 }) {
+				ParallelNFARunner runner = new ParallelNFARunner(engine, pool, minChunk);
+				for (int from : new int[] { 0, 1, 7, 4999 }) {
+					String part = input.substring(from);
+					ParallelRun run = runner.run(part, true);
+					assertEquals(engine.accepts(part), run.isAccepted());
+					assertEquals(engine.maxCopies(part), run.getMaxCopies());
+					assertEquals(engine.accepts(part), runner.accepts(part));
+				}
+			}
+		}
+		// symbols outside the alphabet and an empty input
+		NFA nfa = nfa3();
+		ParallelNFARunner runner = new ParallelNFARunner(nfa.engine(), pool, 2);
+		for (String s : new String[] { "", "x", "0".repeat(50) + "x" + "1".repeat(50) }) {
+			assertEquals(nfa.accepts(s), runner.accepts(s));
+			assertEquals(nfa.maxCopies(s), runner.maxCopies(s));
+		}
+		pool.shutdown();
+		System.out.println("random nfa parallel run done");
+	}
+
+	@Test
+	public void test17_2() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		String input = "01".repeat(20_000);
+		// every state goes back to the start on 0, so rows merge at once
+		NFA reset = new NFA();
+		reset.addSigma('0');
+		reset.addSigma('1');
+		int n = 300;
+		for (int q = 0; q < n; q++) {
+			reset.addState("s" + q);
+		}
+		reset.setStart("s0");
+		reset.setFinal("s1");
+		for (int q = 0; q < n; q++) {
+			reset.addTransition("s" + q, Set.of("s0"), '0');
+			reset.addTransition("s" + q, Set.of("s" + (q + 1) % n), '1');
+		}
+		ParallelRun run = new ParallelNFARunner(reset.engine(), pool, 1000).run(input, false);
+		assertTrue(run.isAccepted());
+		assertTrue(run.getChunks() > 1);
+		assertFalse(run.toString(), run.isSlowerThanSequential());
+		assertEquals(-1, run.getMaxCopies());
+
+		// a cycle on both symbols never merges rows, every chunk steps all of them
+		NFA cycle = new NFA();
+		cycle.addSigma('0');
+		cycle.addSigma('1');
+		for (int q = 0; q < n; q++) {
+			cycle.addState("s" + q);
+		}
+		cycle.setStart("s0");
+		cycle.setFinal("s" + input.length() % n);
+		for (int q = 0; q < n; q++) {
+			cycle.addTransition("s" + q, Set.of("s" + (q + 1) % n), '0');
+			cycle.addTransition("s" + q, Set.of("s" + (q + 1) % n), '1');
+		}
+		run = new ParallelNFARunner(cycle.engine(), pool, 1000).run(input, true);
+		assertTrue(run.isAccepted());
+		assertEquals(1, run.getMaxCopies());
+		assertTrue(run.toString(), run.isSlowerThanSequential());
+		assertTrue(run.getOverhead() > 4);
+		assertTrue(cycle.runParallel(input).isAccepted());
+		assertEquals(1, cycle.maxCopiesParallel(input).getMaxCopies());
+		pool.shutdown();
+		System.out.println("parallel run report done");
+	}
+
+	// ------------------- antichain tests ----------------------//
+	/**
+	 * The n-th symbol from the end is a 1, the subset construction needs 2^n
+	 * states for it
+	 */
+	private NFA nthFromEnd(int n) {
+		NFA nfa = new NFA();
+		nfa.addSigma('0');
+		nfa.addSigma('1');
+		for (int i = 0; i <= n; i++) {
+			nfa.addState("p" + i);
+		}
+		nfa.setStart("p0");
+		nfa.setFinal("p" + n);
+		nfa.addTransition("p0", Set.of("p0"), '0');
+		nfa.addTransition("p0", Set.of("p0", "p1"), '1');
+		for (int i = 1; i < n; i++) {
+			nfa.addTransition("p" + i, Set.of("p" + (i + 1)), '0');
+			nfa.addTransition("p" + i, Set.of("p" + (i + 1)), '1');
+		}
+		return nfa;
+	}
+
+	@Test
+	public void test18_1() {
+		Random random = new Random(24);
+		DFA all = new DFA();
+		all.addSigma('0');
+		all.addSigma('1');
+		all.addState("u");
+		all.setStart("u");
+		all.setFinal("u");
+		all.addTransition("u", "u", '0');
+		all.addTransition("u", "u", '1');
+		for (int i = 0; i < 60; i++) {
+			NFA a = randomNFA(random, 2 + random.nextInt(5));
+			NFA b = randomNFA(random, 2 + random.nextInt(5));
+			LanguageCheck check = a.subsetOf(b);
+			assertEquals(check.toString(), a.toDFA().subsetOf(b.toDFA()).holds(), check.holds());
+			if (!check.holds()) {
+				assertTrue(a.accepts(check.getCounterexample()));
+				assertFalse(b.accepts(check.getCounterexample()));
+			}
+			assertTrue(a.subsetOf(a).holds());
+			check = a.universal();
+			assertEquals(check.toString(), all.subsetOf(a.toDFA()).holds(), check.holds());
+			if (!check.holds()) {
+				assertFalse(a.accepts(check.getCounterexample()));
+			}
+		}
+		System.out.println("random nfa antichain done");
+	}
+
+	@Test(timeout = 20000)
+	public void test18_2() {
+		// determinizing would take 2^20 subsets
+		NFA a = nthFromEnd(20);
+		NFA b = nthFromEnd(20);
+		b.addTransition("p0", Set.of("p20"), 'e');
+		LanguageCheck check = a.subsetOf(b);
+		assertTrue(check.toString(), check.holds());
+		assertTrue(check.toString(), check.getExplored() < 10_000);
+		assertTrue(check.getPruned() > 0);
+		// b also accepts the empty string, found at once
+		check = b.subsetOf(a);
+		assertEquals("", check.getCounterexample());
+		assertTrue(check.getExplored() <= 2);
+
+		// 1 must be 19th from the end too, so a 1 followed by 19 symbols fails
+		NFA c = nthFromEnd(19);
+		check = a.subsetOf(c);
+		assertFalse(check.holds());
+		assertTrue(a.accepts(check.getCounterexample()));
+		assertFalse(c.accepts(check.getCounterexample()));
+
+		NFA u = new NFA();
+		u.addSigma('0');
+		u.addSigma('1');
+		u.addState("s");
+		u.addState("a");
+		u.addState("b");
+		u.setStart("s");
+		u.setFinal("a");
+		u.setFinal("b");
+		u.addTransition("s", Set.of("s", "a"), '0');
+		u.addTransition("s", Set.of("b"), '1');
+		assertEquals("", u.universal().getCounterexample());
+		u.setFinal("s");
+		// b has no transitions, so a 1 followed by anything is rejected
+		check = u.universal();
+		assertEquals(2, check.getCounterexample().length());
+		assertFalse(u.accepts(check.getCounterexample()));
+		u.addTransition("b", Set.of("s"), '0');
+		u.addTransition("b", Set.of("s"), '1');
+		check = u.universal();
+		assertTrue(check.toString(), check.holds());
+		System.out.println("antichain inclusion done");
+	}
+
+	// ------------------- substring search tests ----------------------//
+	/**
+	 * Finds the matches by testing every substring
+	 */
+	private static List<String> naiveSearch(FAInterface fa, String text, boolean overlapping) {
+		List<String> spans = new ArrayList<>();
+		int i = 0;
+		while (i <= text.length()) {
+			int end = -1;
+			for (int j = i; j <= text.length(); j++) {
+				if (fa.accepts(text.substring(i, j))) {
+					end = j;
+				}
+			}
+			if (end < 0) {
+				i++;
+				continue;
+			}
+			spans.add(i + "-" + end);
+			i = overlapping || end == i ? i + 1 : end;
+		}
+		return spans;
+	}
+
+	private static List<String> search(FAInterface fa, String text, boolean overlapping) {
+		List<String> spans = new ArrayList<>();
+		int count = fa.search(text, overlapping, (start, end) -> spans.add(start + "-" + end));
+		assertEquals(spans.size(), count);
+		return spans;
+	}
+
+	@Test
+	public void test19_1() {
+		Random random = new Random(25);
+		for (int round = 0; round < 40; round++) {
+			NFA nfa = randomNFA(random, 2 + random.nextInt(8));
+			StringBuilder sb = new StringBuilder();
+			for (int i = random.nextInt(60); i > 0; i--) {
+				// x is not in the alphabet and cuts every match
+				sb.append("01x".charAt(random.nextInt(3)));
+			}
+			String text = sb.toString();
+			for (boolean overlapping : new boolean[] { false, true }) {
+				List<String> expected = naiveSearch(nfa, text, overlapping);
+				assertEquals(text, expected, search(nfa, text, overlapping));
+				assertEquals(text, expected, search(nfa.toDFA(), text, overlapping));
+			}
+		}
+		System.out.println("random nfa substring search done");
+	}
+
+	@Test
+	public void test19_2() {
+		// 1(0|e)1
+		NFA nfa = new NFA();
+		nfa.addSigma('0');
+		nfa.addSigma('1');
+		nfa.addState("a");
+		nfa.addState("b");
+		nfa.addState("c");
+		nfa.addState("d");
+		nfa.setStart("a");
+		nfa.setFinal("d");
+		nfa.addTransition("a", Set.of("b"), '1');
+		nfa.addTransition("b", Set.of("c"), '0');
+		nfa.addTransition("b", Set.of("c"), 'e');
+		nfa.addTransition("c", Set.of("d"), '1');
+		assertEquals(List.of("0-2"), search(nfa, "1101", false));
+		assertEquals(List.of("0-2", "1-4"), search(nfa, "1101", true));
+		assertEquals(List.of("5-7"), search(nfa, "1x01x11", false));
+
+		// the reversed automaton of 1 followed by 11 symbols stays small
+		NFA far = nthFromEnd(12);
+		Random random = new Random(26);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 20_000; i++) {
+			sb.append(random.nextInt(10) == 0 ? '1' : '0');
+		}
+		String text = sb.toString();
+		for (boolean overlapping : new boolean[] { false, true }) {
+			assertEquals(search(far.toDFA(), text, overlapping), search(far, text, overlapping));
+		}
+
+		// a cache of two states is flushed all the time and gives the same spans
+		text = text.substring(0, 300);
+		NFASearcher small = new NFASearcher(far.engine(), 0);
+		for (boolean overlapping : new boolean[] { false, true }) {
+			List<String> spans = new ArrayList<>();
+			small.search(text, overlapping, (start, end) -> spans.add(start + "-" + end));
+			assertEquals(naiveSearch(far, text, overlapping), spans);
+		}
+		assertTrue(small.getFlushes() > 0);
+		System.out.println("nfa substring search done");
+	}
 }